@@ -0,0 +1,142 @@
+package org.jlab.jaws;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.jlab.jaws.entity.*;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Compares the ActivationRule joiners with the builder based joiners they replaced, for a monolog
+ * joined first with its activation and then with its overrides. Run with the GC profiler to compare
+ * the bytes allocated per join (gc.alloc.rate.norm).
+ *
+ * <p>Run with: gradlew jmh -Pjmh.includes=ActivationJoinerBenchmark -Pjmh.profilers=gc
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ActivationJoinerBenchmark {
+
+  private final ActivationRule.RegisteredAndActiveJoiner activeJoiner =
+      new ActivationRule.RegisteredAndActiveJoiner();
+  private final ActivationRule.OverrideJoiner overrideJoiner = new ActivationRule.OverrideJoiner();
+
+  private IntermediateMonolog registered;
+  private AlarmActivationUnion activation;
+  private AlarmOverrideSet overrides;
+  private OverrideList overrideList;
+
+  @Setup
+  public void setup() {
+    registered = MonologSerdeBenchmark.monolog();
+    activation = registered.getNotification().getActivation();
+
+    List<AlarmOverrideUnion> list = new ArrayList<>();
+    list.add(new AlarmOverrideUnion(new LatchedOverride()));
+    list.add(new AlarmOverrideUnion(new ShelvedOverride(false, 1000L, ShelvedReason.Other, null)));
+
+    overrideList = new OverrideList(list);
+
+    overrides = new AlarmOverrideSet();
+
+    ActivationRule.addOverride(overrides, OverriddenAlarmType.Latched, list.get(0));
+    ActivationRule.addOverride(overrides, OverriddenAlarmType.Shelved, list.get(1));
+  }
+
+  @Benchmark
+  public IntermediateMonolog join() {
+    return overrideJoiner.apply(activeJoiner.apply(registered, activation), overrides);
+  }
+
+  @Benchmark
+  public IntermediateMonolog joinWithBuilders() {
+    return Builders.overrideJoin(Builders.activeJoin(registered, activation), overrideList);
+  }
+
+  /**
+   * The joiners as they were before, building and copying the monolog with builders and joining
+   * with the list of overrides that preceded the override set.
+   */
+  static final class Builders {
+    static IntermediateMonolog activeJoin(
+        IntermediateMonolog registered, AlarmActivationUnion active) {
+      EffectiveRegistration effectiveReg =
+          EffectiveRegistration.newBuilder().setAction(null).setAlarm(null).build();
+
+      EffectiveNotification effectiveNot =
+          EffectiveNotification.newBuilder()
+              .setActivation(active)
+              .setOverrides(new AlarmOverrideSet())
+              .setState(AlarmState.Normal)
+              .build();
+
+      IntermediateMonolog result =
+          IntermediateMonolog.newBuilder()
+              .setRegistration(effectiveReg)
+              .setNotification(effectiveNot)
+              .setTransitions(new ProcessorTransitions())
+              .build();
+
+      if (registered != null) {
+        result.getRegistration().setAlarm(registered.getRegistration().getAlarm());
+        result.getRegistration().setAction(registered.getRegistration().getAction());
+      }
+
+      return result;
+    }
+
+    static IntermediateMonolog overrideJoin(
+        IntermediateMonolog registeredAndActive, OverrideList overrideList) {
+      AlarmOverrideSet overrides =
+          AlarmOverrideSet.newBuilder()
+              .setDisabled(null)
+              .setFiltered(null)
+              .setLatched(null)
+              .setMasked(null)
+              .setOffdelayed(null)
+              .setOndelayed(null)
+              .setShelved(null)
+              .build();
+
+      for (AlarmOverrideUnion over : overrideList.getOverrides()) {
+        if (over.getUnion() instanceof DisabledOverride) {
+          overrides.setDisabled((DisabledOverride) over.getUnion());
+        }
+
+        if (over.getUnion() instanceof FilteredOverride) {
+          overrides.setFiltered((FilteredOverride) over.getUnion());
+        }
+
+        if (over.getUnion() instanceof LatchedOverride) {
+          overrides.setLatched((LatchedOverride) over.getUnion());
+        }
+
+        if (over.getUnion() instanceof MaskedOverride) {
+          overrides.setMasked((MaskedOverride) over.getUnion());
+        }
+
+        if (over.getUnion() instanceof OnDelayedOverride) {
+          overrides.setOndelayed((OnDelayedOverride) over.getUnion());
+        }
+
+        if (over.getUnion() instanceof OffDelayedOverride) {
+          overrides.setOffdelayed((OffDelayedOverride) over.getUnion());
+        }
+
+        if (over.getUnion() instanceof ShelvedOverride) {
+          overrides.setShelved((ShelvedOverride) over.getUnion());
+        }
+      }
+
+      IntermediateMonolog result = IntermediateMonolog.newBuilder(registeredAndActive).build();
+
+      result.getNotification().setOverrides(overrides);
+
+      return result;
+    }
+  }
+}
@@ -0,0 +1,121 @@
+package org.jlab.jaws;
+
+import static io.confluent.kafka.serializers.AbstractKafkaSchemaSerDeConfig.SCHEMA_REGISTRY_URL_CONFIG;
+
+import io.confluent.kafka.streams.serdes.avro.SpecificAvroSerde;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.jlab.jaws.entity.*;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Compares the Confluent Avro serde with the compact MonologSerde for IntermediateMonolog records,
+ * and with the projected read of a {@link LazyMonolog}. Time per record is the benchmark score;
+ * bytes per record are printed during setup.
+ *
+ * <p>Run with: gradlew jmh -Pjmh.includes=MonologSerdeBenchmark
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class MonologSerdeBenchmark {
+  private static final String TOPIC = "intermediate-activation";
+
+  private SpecificAvroSerde<IntermediateMonolog> confluent;
+  private MonologSerde compact;
+
+  private IntermediateMonolog monolog;
+  private byte[] confluentBytes;
+  private byte[] compactBytes;
+
+  @Setup
+  public void setup() {
+    Map<String, String> config = Map.of(SCHEMA_REGISTRY_URL_CONFIG, "mock://benchmark");
+
+    confluent = new SpecificAvroSerde<>();
+    confluent.configure(config, false);
+
+    compact = new MonologSerde();
+    compact.configure(config, false);
+
+    monolog = monolog();
+
+    confluentBytes = confluent.serializer().serialize(TOPIC, monolog);
+    compactBytes = compact.serializer().serialize(TOPIC, monolog);
+
+    System.out.println();
+    System.out.println("Confluent bytes per record: " + confluentBytes.length);
+    System.out.println("Compact bytes per record: " + compactBytes.length);
+  }
+
+  @Benchmark
+  public byte[] serializeConfluent() {
+    return confluent.serializer().serialize(TOPIC, monolog);
+  }
+
+  @Benchmark
+  public byte[] serializeCompact() {
+    return compact.serializer().serialize(TOPIC, monolog);
+  }
+
+  @Benchmark
+  public IntermediateMonolog deserializeConfluent() {
+    return confluent.deserializer().deserialize(TOPIC, confluentBytes);
+  }
+
+  @Benchmark
+  public IntermediateMonolog deserializeCompact() {
+    return compact.deserializer().deserialize(TOPIC, compactBytes);
+  }
+
+  /** Read the fields the latch, on-delay, and one-shot rules decide on without full decoding. */
+  @Benchmark
+  public boolean deserializeLazy() {
+    LazyMonolog lazy = LazyMonolog.wrap(compactBytes);
+
+    return lazy.isLatchable()
+        && lazy.getOndelayseconds() > 0
+        && lazy.isLatched()
+        && !lazy.isOndelayed()
+        && !lazy.isOneshotShelved()
+        && !lazy.isTransitionToActive();
+  }
+
+  static IntermediateMonolog monolog() {
+    Alarm alarm = new Alarm();
+    alarm.setAction("base");
+    alarm.setSource(new Source());
+    alarm.setLocation(Arrays.asList("NL", "INJ"));
+
+    AlarmAction action = new AlarmAction();
+    action.setLatchable(true);
+    action.setSystem("CAMAC");
+    action.setFilterable(true);
+    action.setCorrectiveaction("fix it");
+    action.setPriority(AlarmPriority.P3_MINOR);
+    action.setRationale("because");
+    action.setOndelayseconds(5l);
+
+    AlarmActivationUnion activation = new AlarmActivationUnion();
+    activation.setUnion(new Activation());
+
+    AlarmOverrideSet overrides = new AlarmOverrideSet();
+    overrides.setLatched(new LatchedOverride());
+
+    return IntermediateMonolog.newBuilder()
+        .setRegistration(
+            EffectiveRegistration.newBuilder().setAction(action).setAlarm(alarm).build())
+        .setNotification(
+            EffectiveNotification.newBuilder()
+                .setActivation(activation)
+                .setOverrides(overrides)
+                .setState(AlarmState.ActiveLatched)
+                .build())
+        .setTransitions(new ProcessorTransitions())
+        .build();
+  }
+}
@@ -0,0 +1,269 @@
+package org.jlab.jaws;
+
+import static io.confluent.kafka.serializers.AbstractKafkaSchemaSerDeConfig.SCHEMA_REGISTRY_URL_CONFIG;
+
+import java.nio.file.Files;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.apache.kafka.common.serialization.ByteArrayDeserializer;
+import org.apache.kafka.streams.StreamsConfig;
+import org.apache.kafka.streams.TestInputTopic;
+import org.apache.kafka.streams.TestOutputTopic;
+import org.apache.kafka.streams.TopologyTestDriver;
+import org.jlab.jaws.clients.*;
+import org.jlab.jaws.entity.*;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Measures the whole rule chain of the {@link EffectiveProcessor}, run in-process without a broker
+ * in a TopologyTestDriver, under a synthetic alarm workload. The throughput benchmark reports the
+ * sustained alarm updates per second, and the latency benchmark the p50 and p99 latency of an
+ * update, from its input to its effective alarm including the override round trips it causes. The
+ * heap in use with all alarms registered, and again at the end of the trial, is printed.
+ *
+ * <p>The trial registers {@link #alarms} alarms of {@link #CLASSES} classes, of which {@link
+ * #latchablePercent} percent are latchable and {@link #ondelayPercent} percent on-delayed. Each
+ * operation is then one update of a random alarm drawn with a fixed seed: {@link #shelvePercent}
+ * percent are one-shot shelves, {@link #classChangePercent} percent are a change of a class, which
+ * updates every alarm of the class, and the rest flip the activation of an alarm. The wall clock of
+ * the driver advances one second per {@link #rate} updates, such that on-delays and shelves expire
+ * as they would at that rate.
+ *
+ * <p>Parameters can be changed with the JMH -p option, such as -p alarms=200000 to plan for a
+ * larger deployment. Run with: gradlew jmh -Pjmh.includes=PipelineBenchmark
+ */
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 10)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@State(Scope.Thread)
+public class PipelineBenchmark {
+  private static final int CLASSES = 100;
+  private static final long SEED = 42;
+  private static final long ONDELAY_SECONDS = 5;
+  private static final Duration SHELVE_DURATION = Duration.ofMinutes(10);
+
+  @Param({"10000", "100000"})
+  public int alarms;
+
+  @Param({"true", "false"})
+  public boolean fused;
+
+  /** Updates per second of simulated time. */
+  @Param("1000")
+  public int rate;
+
+  @Param("20")
+  public int latchablePercent;
+
+  @Param("10")
+  public int ondelayPercent;
+
+  @Param("5")
+  public int shelvePercent;
+
+  @Param("1")
+  public int classChangePercent;
+
+  private TopologyTestDriver driver;
+  private TestInputTopic<String, AlarmAction> classes;
+  private TestInputTopic<String, Alarm> instances;
+  private TestInputTopic<String, AlarmActivationUnion> activations;
+  private TestInputTopic<AlarmOverrideKey, AlarmOverrideUnion> overrides;
+  private final Map<String, TestOutputTopic<byte[], byte[]>> outputs = new HashMap<>();
+
+  private AlarmAction[] actions;
+  private String[] names;
+  private boolean[] active;
+  private Random random;
+  private Instant now;
+  private long updates;
+
+  @Setup(Level.Trial)
+  public void setup() throws Exception {
+    SharedRuntimeRule rule = new SharedRuntimeRule(EffectiveProcessor.rules(fused));
+
+    Properties props = rule.constructProperties();
+    props.put(SCHEMA_REGISTRY_URL_CONFIG, "mock://benchmark");
+    props.put(
+        StreamsConfig.STATE_DIR_CONFIG,
+        Files.createTempDirectory("jaws-pipeline-benchmark").toString());
+
+    now = Instant.now();
+
+    driver = new TopologyTestDriver(rule.constructTopology(props), props, now);
+
+    classes =
+        driver.createInputTopic(
+            ActionProducer.TOPIC,
+            RegistrationRule.INPUT_KEY_CLASSES_SERDE.serializer(),
+            RegistrationRule.INPUT_VALUE_CLASSES_SERDE.serializer());
+    instances =
+        driver.createInputTopic(
+            AlarmProducer.TOPIC,
+            RegistrationRule.INPUT_KEY_INSTANCES_SERDE.serializer(),
+            RegistrationRule.INPUT_VALUE_INSTANCES_SERDE.serializer());
+    activations =
+        driver.createInputTopic(
+            ActivationProducer.TOPIC,
+            ActivationRule.ACTIVE_KEY_SERDE.serializer(),
+            ActivationRule.ACTIVE_VALUE_SERDE.serializer());
+    overrides =
+        driver.createInputTopic(
+            OverrideProducer.TOPIC,
+            ActivationRule.OVERRIDE_KEY_SERDE.serializer(),
+            ActivationRule.OVERRIDE_VALUE_SERDE.serializer());
+
+    actions = new AlarmAction[CLASSES];
+
+    for (int i = 0; i < CLASSES; i++) {
+      actions[i] = action(i);
+      classes.pipeInput("class" + i, actions[i], now);
+    }
+
+    names = new String[alarms];
+    active = new boolean[alarms];
+
+    for (int i = 0; i < alarms; i++) {
+      names[i] = "alarm" + i;
+      instances.pipeInput(names[i], instance(i), now);
+
+      if (i % 1000 == 0) {
+        drain();
+      }
+    }
+
+    drain();
+
+    random = new Random(SEED);
+
+    System.out.println();
+    System.out.println("Heap MB in use with " + alarms + " alarms registered: " + heapMegabytes());
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    System.out.println();
+    System.out.println("Heap MB in use after " + updates + " updates: " + heapMegabytes());
+
+    driver.close();
+  }
+
+  @Benchmark
+  @BenchmarkMode(Mode.Throughput)
+  @OutputTimeUnit(TimeUnit.SECONDS)
+  public int throughput() {
+    return update();
+  }
+
+  @Benchmark
+  @BenchmarkMode(Mode.SampleTime)
+  @OutputTimeUnit(TimeUnit.MICROSECONDS)
+  public int latency() {
+    return update();
+  }
+
+  private int update() {
+    int alarm = random.nextInt(alarms);
+    int kind = random.nextInt(100);
+
+    if (kind < shelvePercent) {
+      ShelvedOverride shelved =
+          new ShelvedOverride(
+              true, now.plus(SHELVE_DURATION).toEpochMilli(), ShelvedReason.Other, null);
+
+      overrides.pipeInput(
+          new AlarmOverrideKey(names[alarm], OverriddenAlarmType.Shelved),
+          new AlarmOverrideUnion(shelved),
+          now);
+    } else if (kind < shelvePercent + classChangePercent) {
+      int i = alarm % CLASSES;
+
+      AlarmAction action = actions[i];
+
+      action.setPriority(
+          (action.getPriority() == AlarmPriority.P3_MINOR)
+              ? AlarmPriority.P2_MAJOR
+              : AlarmPriority.P3_MINOR);
+
+      classes.pipeInput("class" + i, action, now);
+    } else {
+      active[alarm] = !active[alarm];
+
+      Object union = active[alarm] ? new Activation() : new NoActivation();
+
+      activations.pipeInput(names[alarm], new AlarmActivationUnion(union), now);
+    }
+
+    if (++updates % rate == 0) {
+      now = now.plusSeconds(1);
+      driver.advanceWallClockTime(Duration.ofSeconds(1));
+    }
+
+    return drain();
+  }
+
+  /**
+   * Read the records of every output and intermediate topic such that the driver does not keep
+   * them, and return the number of effective alarms.
+   */
+  private int drain() {
+    int effective = 0;
+
+    for (String topic : driver.producedTopicNames()) {
+      int count =
+          outputs
+              .computeIfAbsent(
+                  topic,
+                  t ->
+                      driver.createOutputTopic(
+                          t, new ByteArrayDeserializer(), new ByteArrayDeserializer()))
+              .readRecordsToList()
+              .size();
+
+      if (EffectiveAlarmProducer.TOPIC.equals(topic)) {
+        effective = count;
+      }
+    }
+
+    return effective;
+  }
+
+  private AlarmAction action(int i) {
+    AlarmAction action = new AlarmAction();
+    action.setSystem("CAMAC");
+    action.setLatchable(i < CLASSES * latchablePercent / 100);
+    action.setFilterable(true);
+    action.setCorrectiveaction("fix it");
+    action.setPriority(AlarmPriority.P3_MINOR);
+    action.setRationale("because");
+
+    if (i >= CLASSES - CLASSES * ondelayPercent / 100) {
+      action.setOndelayseconds(ONDELAY_SECONDS);
+    }
+
+    return action;
+  }
+
+  private static Alarm instance(int i) {
+    Alarm alarm = new Alarm();
+    alarm.setAction("class" + (i % CLASSES));
+    alarm.setSource(new Source());
+    alarm.setLocation(Arrays.asList("NL", "INJ"));
+
+    return alarm;
+  }
+
+  private static long heapMegabytes() {
+    Runtime runtime = Runtime.getRuntime();
+
+    System.gc();
+
+    return (runtime.totalMemory() - runtime.freeMemory()) / (1024 * 1024);
+  }
+}
@@ -0,0 +1,271 @@
+package org.jlab.jaws;
+
+import static io.confluent.kafka.serializers.AbstractKafkaSchemaSerDeConfig.SCHEMA_REGISTRY_URL_CONFIG;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.apache.kafka.common.serialization.Serde;
+import org.apache.kafka.common.serialization.Serdes;
+import org.apache.kafka.streams.processor.api.MockProcessorContext;
+import org.apache.kafka.streams.processor.api.Processor;
+import org.apache.kafka.streams.processor.api.Record;
+import org.apache.kafka.streams.state.KeyValueStore;
+import org.apache.kafka.streams.state.Stores;
+import org.jlab.jaws.entity.*;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Measures the throughput of the transition processors of the rules, each driven directly with a
+ * mock processor context: the ActivationRule join of an activation update with the stored
+ * registration and overrides, the latch, on-delay, and one-shot processors, and the
+ * EffectiveStateRule state computation. Run with the GC profiler to report the bytes allocated per
+ * record (gc.alloc.rate.norm).
+ *
+ * <p>Updates cycle over a set of alarms, and each alarm cycles through the phases of an alarm that
+ * becomes active, is latched, on-delayed, and shelved one-shot, and returns to normal, such that
+ * the processors take each of their branches and set and clear their transition flags. The latch,
+ * on-delay, and one-shot processors are given monologs in serialized form, as read from an
+ * intermediate topic. Stores are in memory with the serdes of the rules, so the score excludes
+ * RocksDB, which the TuningProfileBenchmark covers.
+ *
+ * <p>Run with: gradlew jmh -Pjmh.includes=RuleProcessorBenchmark -Pjmh.profilers=gc
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class RuleProcessorBenchmark {
+  private static final int ALARMS = 1000;
+
+  /** The number of updates after which every alarm has been through every phase and activation. */
+  private static final int CYCLE = ALARMS * 10;
+
+  private static final String TOPIC = "intermediate-benchmark";
+
+  private String[] names;
+  private IntermediateMonolog[] phases;
+  private byte[][] serializedPhases;
+  private AlarmActivationUnion[] activations;
+
+  private MockProcessorContext<String, IntermediateMonolog> activationContext;
+  private Processor<String, AlarmActivationUnion, String, IntermediateMonolog> activation;
+
+  private MockProcessorContext<String, LazyMonolog> latchContext;
+  private Processor<String, LazyMonolog, String, LazyMonolog> latch;
+
+  private MockProcessorContext<String, LazyMonolog> ondelayContext;
+  private Processor<String, LazyMonolog, String, LazyMonolog> ondelay;
+
+  private MockProcessorContext<String, LazyMonolog> oneshotContext;
+  private Processor<String, LazyMonolog, String, LazyMonolog> oneshot;
+
+  private MockProcessorContext<String, IntermediateMonolog> effectiveContext;
+  private Processor<String, IntermediateMonolog, String, IntermediateMonolog> effective;
+
+  private int next;
+
+  @Setup
+  public void setup() {
+    Map<String, String> config = Map.of(SCHEMA_REGISTRY_URL_CONFIG, "mock://benchmark");
+
+    ActivationRule.ACTIVE_VALUE_SERDE.configure(config, false);
+    ActivationRule.MONOLOG_VALUE_SERDE.configure(config, false);
+    ActivationRule.OVERRIDE_SET_VALUE_SERDE.configure(config, false);
+
+    MonologSerde serde = new MonologSerde();
+    serde.configure(config, false);
+
+    names = new String[ALARMS];
+
+    for (int i = 0; i < ALARMS; i++) {
+      names[i] = "alarm" + i;
+    }
+
+    phases = phases();
+    serializedPhases = new byte[phases.length][];
+
+    for (int i = 0; i < phases.length; i++) {
+      serializedPhases[i] = serde.serializer().serialize(TOPIC, phases[i]);
+    }
+
+    activations =
+        new AlarmActivationUnion[] {
+          new AlarmActivationUnion(new Activation()), new AlarmActivationUnion(new NoActivation())
+        };
+
+    activationContext = new MockProcessorContext<>();
+
+    KeyValueStore<String, IntermediateMonolog> registered =
+        addStore(
+            activationContext,
+            ActivationRule.REGISTERED_STORE,
+            ActivationRule.MONOLOG_KEY_SERDE,
+            ActivationRule.MONOLOG_VALUE_SERDE);
+    addStore(
+        activationContext,
+        ActivationRule.ACTIVE_STORE,
+        ActivationRule.ACTIVE_KEY_SERDE,
+        ActivationRule.ACTIVE_VALUE_SERDE);
+    addStore(
+        activationContext,
+        ActivationRule.OVERRIDE_SET_STORE,
+        Serdes.String(),
+        ActivationRule.OVERRIDE_SET_VALUE_SERDE);
+
+    IntermediateMonolog registration = MonologSerdeBenchmark.monolog();
+    registration.getNotification().setActivation(null);
+    registration.getNotification().setOverrides(new AlarmOverrideSet());
+
+    for (String name : names) {
+      registered.put(name, registration);
+    }
+
+    activation =
+        new ActivationRule.ActiveProcessor(
+            Duration.ZERO, Metrics.forRule("RuleProcessorBenchmark"));
+    activation.init(activationContext);
+
+    latchContext = transitionContext();
+    latch = new LatchRule.MyProcessorSupplier(TransitionFlags.STORE_NAME).get();
+    latch.init(latchContext);
+
+    ondelayContext = transitionContext();
+    ondelay = new OnDelayRule.MyProcessorSupplier(TransitionFlags.STORE_NAME).get();
+    ondelay.init(ondelayContext);
+
+    oneshotContext = transitionContext();
+    oneshot = new OneShotRule.MyProcessorSupplier(TransitionFlags.STORE_NAME).get();
+    oneshot.init(oneshotContext);
+
+    effectiveContext = new MockProcessorContext<>();
+    effective =
+        new EffectiveStateRule.MyProcessorSupplier(Metrics.forRule("RuleProcessorBenchmark"))
+            .get();
+    effective.init(effectiveContext);
+  }
+
+  @Benchmark
+  public Object activationJoin() {
+    int i = next();
+
+    activation.process(
+        new Record<>(names[i % ALARMS], activations[(i / ALARMS) % activations.length], 0));
+
+    return forwarded(activationContext);
+  }
+
+  @Benchmark
+  public Object latch() {
+    latch.process(lazyRecord(next()));
+
+    return forwarded(latchContext);
+  }
+
+  @Benchmark
+  public Object ondelay() {
+    ondelay.process(lazyRecord(next()));
+
+    return forwarded(ondelayContext);
+  }
+
+  @Benchmark
+  public Object oneshot() {
+    oneshot.process(lazyRecord(next()));
+
+    return forwarded(oneshotContext);
+  }
+
+  @Benchmark
+  public Object effectiveState() {
+    int i = next();
+
+    effective.process(new Record<>(names[i % ALARMS], phases[(i / ALARMS) % phases.length], 0));
+
+    return forwarded(effectiveContext);
+  }
+
+  private int next() {
+    int i = next;
+
+    next = (i + 1) % CYCLE;
+
+    return i;
+  }
+
+  private Record<String, LazyMonolog> lazyRecord(int i) {
+    byte[] bytes = serializedPhases[(i / ALARMS) % serializedPhases.length];
+
+    return new Record<>(names[i % ALARMS], LazyMonolog.wrap(bytes), 0);
+  }
+
+  /** Return the record forwarded by the last process() call, if any, and forget it. */
+  private static Object forwarded(MockProcessorContext<?, ?> context) {
+    Object record = context.forwarded().isEmpty() ? null : context.forwarded().get(0).record();
+
+    context.resetForwards();
+
+    return record;
+  }
+
+  private static MockProcessorContext<String, LazyMonolog> transitionContext() {
+    MockProcessorContext<String, LazyMonolog> context = new MockProcessorContext<>();
+
+    addStore(context, TransitionFlags.STORE_NAME, Serdes.String(), TransitionFlags.SERDE);
+
+    return context;
+  }
+
+  private static <V> KeyValueStore<String, V> addStore(
+      MockProcessorContext<?, ?> context,
+      String name,
+      Serde<String> keySerde,
+      Serde<V> valueSerde) {
+    KeyValueStore<String, V> store =
+        Stores.keyValueStoreBuilder(Stores.inMemoryKeyValueStore(name), keySerde, valueSerde)
+            .withLoggingDisabled()
+            .build();
+
+    store.init(context.getStateStoreContext(), store);
+    context.addStateStore(store);
+
+    return store;
+  }
+
+  /**
+   * Return the monologs of the phases of an alarm: it becomes active, is latched while the latch
+   * and on-delay overrides are written, is latched and on-delayed, is shelved one-shot and returns
+   * to normal, and is normal.
+   */
+  private static IntermediateMonolog[] phases() {
+    IntermediateMonolog becomesActive = MonologSerdeBenchmark.monolog();
+    becomesActive.getNotification().setOverrides(new AlarmOverrideSet());
+    becomesActive.getNotification().setState(AlarmState.Active);
+    becomesActive.getTransitions().setTransitionToActive(true);
+
+    IntermediateMonolog latching = IntermediateMonolog.newBuilder(becomesActive).build();
+    latching.getTransitions().setLatching(true);
+    latching.getTransitions().setOndelaying(true);
+
+    IntermediateMonolog latched = MonologSerdeBenchmark.monolog();
+    latched.getNotification().getOverrides().setOndelayed(new OnDelayedOverride(1000L));
+
+    IntermediateMonolog unshelving = MonologSerdeBenchmark.monolog();
+    unshelving.getNotification().setActivation(new AlarmActivationUnion(new NoActivation()));
+    unshelving
+        .getNotification()
+        .getOverrides()
+        .setShelved(new ShelvedOverride(true, 1000L, ShelvedReason.Other, null));
+    unshelving.getNotification().getOverrides().setLatched(null);
+    unshelving.getTransitions().setTransitionToNormal(true);
+
+    IntermediateMonolog normal = MonologSerdeBenchmark.monolog();
+    normal.getNotification().setActivation(new AlarmActivationUnion(new NoActivation()));
+    normal.getNotification().setOverrides(new AlarmOverrideSet());
+    normal.getNotification().setState(AlarmState.Normal);
+
+    return new IntermediateMonolog[] {becomesActive, latching, latched, unshelving, normal};
+  }
+}
@@ -0,0 +1,281 @@
+package org.jlab.jaws;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.KafkaConsumer;
+import org.apache.kafka.clients.producer.KafkaProducer;
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.PartitionInfo;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
+import org.apache.kafka.common.serialization.Serde;
+import org.apache.kafka.common.serialization.StringDeserializer;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.apache.kafka.streams.KafkaStreams;
+import org.apache.kafka.streams.StreamsConfig;
+import org.apache.kafka.streams.Topology;
+import org.jlab.jaws.clients.*;
+import org.jlab.jaws.entity.*;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Compares the time from a cold start, with a fresh state directory, to the first correct effective
+ * alarm of the rule chain of the {@link EffectiveProcessor} with a preloaded alarm set, with and
+ * without a {@link StateSnapshot}.
+ *
+ * <p>The trial registers {@link #ALARMS} alarms of one class, flips the activation of each alarm
+ * {@link #UPDATES} times ending active, waits for the effective alarms, and writes a snapshot of
+ * the local state of the rules. Each invocation deletes the state directory, restores the snapshot
+ * if enabled, starts the rules, flips the activation of one alarm, and waits for its effective
+ * alarm with both its registration and the new state, which is only correct once the registration
+ * and activation stores are rebuilt. Without a snapshot the stores are rebuilt from their whole
+ * changelogs.
+ *
+ * <p>Each trial is a new application with its own alarms, so the topics of earlier runs only add to
+ * the records consumed at the first start. Requires a Kafka broker at BOOTSTRAP_SERVERS and a
+ * schema registry at SCHEMA_REGISTRY with the JAWS topics, such as those of deps.yaml with
+ * BOOTSTRAP_SERVERS=localhost:9094. Run with: gradlew jmh -Pjmh.includes=StartupBenchmark
+ */
+@Warmup(iterations = 1)
+@Measurement(iterations = 5)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@State(Scope.Benchmark)
+public class StartupBenchmark {
+  private static final int ALARMS = 10000;
+  private static final int UPDATES = 10;
+  private static final Duration TIMEOUT = Duration.ofMinutes(5);
+
+  @Param({"false", "true"})
+  public boolean snapshot;
+
+  @Param({"true", "false"})
+  public boolean fused;
+
+  private Properties props;
+  private Path stateDir;
+  private Path snapshotFile;
+  private KafkaStreams streams;
+  private KafkaProducer<String, byte[]> producer;
+  private KafkaConsumer<String, EffectiveAlarm> consumer;
+  private AlarmAction action;
+  private Alarm instance;
+  private String[] names;
+  private boolean active;
+
+  @Setup(Level.Trial)
+  public void setup() throws Exception {
+    String id =
+        "jaws-startup-benchmark-" + fused + "-" + snapshot + "-" + System.currentTimeMillis();
+
+    if (!fused) {
+      IntermediateTopics.create(
+          ProcessingRule.bootstrapServers(),
+          ActivationProducer.TOPIC,
+          EffectiveProcessor.INTERMEDIATE_TOPICS);
+    }
+
+    Path root = Files.createTempDirectory(id);
+
+    SharedRuntimeRule rule = new SharedRuntimeRule(EffectiveProcessor.rules(fused));
+
+    props = rule.constructProperties();
+    props.put(StreamsConfig.APPLICATION_ID_CONFIG, id);
+    props.put(StreamsConfig.STATE_DIR_CONFIG, root.resolve("state").toString());
+    TuningProfile.LOW_LATENCY.apply(props);
+
+    stateDir = root.resolve("state").resolve(id);
+    snapshotFile = StateSnapshot.file(root.resolve("snapshots"), id);
+
+    // Configures the serdes of the rules, which the clients share
+    start();
+
+    producer =
+        new KafkaProducer<>(clientProps(), new StringSerializer(), new ByteArraySerializer());
+
+    Properties consumerProps = clientProps();
+    consumerProps.put(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, false);
+
+    consumer =
+        new KafkaConsumer<>(
+            consumerProps,
+            new StringDeserializer(),
+            EffectiveStateRule.EFFECTIVE_ALARM_VALUE_SERDE.deserializer());
+
+    List<TopicPartition> partitions = new ArrayList<>();
+
+    for (PartitionInfo info : consumer.partitionsFor(EffectiveAlarmProducer.TOPIC)) {
+      partitions.add(new TopicPartition(info.topic(), info.partition()));
+    }
+
+    consumer.assign(partitions);
+    consumer.seekToEnd(partitions);
+
+    action = new AlarmAction();
+    action.setSystem("CAMAC");
+    action.setLatchable(false);
+    action.setFilterable(true);
+    action.setCorrectiveaction("fix it");
+    action.setPriority(AlarmPriority.P3_MINOR);
+    action.setRationale("because");
+
+    send(ActionProducer.TOPIC, id, RegistrationRule.INPUT_VALUE_CLASSES_SERDE, action);
+
+    instance = new Alarm();
+    instance.setAction(id);
+    instance.setSource(new Source());
+    instance.setLocation(Arrays.asList("NL", "INJ"));
+
+    names = new String[ALARMS];
+
+    for (int i = 0; i < ALARMS; i++) {
+      names[i] = id + "-alarm" + i;
+
+      send(AlarmProducer.TOPIC, names[i], RegistrationRule.INPUT_VALUE_INSTANCES_SERDE, instance);
+    }
+
+    // Registrations first, so the class and instances are joined before any activation
+    await(Arrays.asList(names), AlarmState.Normal, 1);
+
+    for (int j = 0; j < UPDATES; j++) {
+      for (String name : names) {
+        send(ActivationProducer.TOPIC, name, ActivationRule.ACTIVE_VALUE_SERDE, activation(j));
+      }
+    }
+
+    active = true;
+
+    await(Arrays.asList(names), AlarmState.Active, UPDATES / 2);
+
+    streams.close();
+
+    StateSnapshot.write(stateDir, snapshotFile);
+  }
+
+  @Setup(Level.Invocation)
+  public void coldStart() throws Exception {
+    delete(stateDir);
+
+    consumer.seekToEnd(consumer.assignment());
+  }
+
+  @TearDown(Level.Invocation)
+  public void stop() {
+    streams.close();
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws Exception {
+    consumer.close();
+    producer.close();
+
+    delete(stateDir);
+  }
+
+  @Benchmark
+  public boolean firstOutput() {
+    if (snapshot) {
+      StateSnapshot.restore(snapshotFile, stateDir);
+    }
+
+    start();
+
+    active = !active;
+
+    send(
+        ActivationProducer.TOPIC,
+        names[0],
+        ActivationRule.ACTIVE_VALUE_SERDE,
+        activation(active ? 1 : 0));
+
+    await(List.of(names[0]), active ? AlarmState.Active : AlarmState.Normal, 1);
+
+    return active;
+  }
+
+  private void start() {
+    SharedRuntimeRule rule = new SharedRuntimeRule(EffectiveProcessor.rules(fused));
+
+    Topology topology = rule.constructTopology(props);
+
+    streams = new KafkaStreams(topology, props);
+    streams.start();
+  }
+
+  /** Return the activation of update j of an alarm, which alternates from normal to active. */
+  private static AlarmActivationUnion activation(int j) {
+    return new AlarmActivationUnion((j % 2 == 0) ? new NoActivation() : new Activation());
+  }
+
+  private <V> void send(String topic, String key, Serde<V> serde, V value) {
+    producer.send(new ProducerRecord<>(topic, key, serde.serializer().serialize(topic, value)));
+  }
+
+  /**
+   * Wait until each of the given alarms has had the given number of correct effective alarms in the
+   * given state, with the registered class and instance.
+   */
+  private void await(Collection<String> alarms, AlarmState state, int times) {
+    Map<String, Integer> remaining = new HashMap<>();
+
+    for (String name : alarms) {
+      remaining.put(name, times);
+    }
+
+    long deadline = System.nanoTime() + TIMEOUT.toNanos();
+
+    while (!remaining.isEmpty()) {
+      if (System.nanoTime() > deadline) {
+        throw new IllegalStateException(remaining.size() + " alarms not " + state);
+      }
+
+      for (ConsumerRecord<String, EffectiveAlarm> record : consumer.poll(Duration.ofMillis(1))) {
+        if (correct(record.value(), state)) {
+          remaining.computeIfPresent(record.key(), (name, n) -> (n > 1) ? n - 1 : null);
+        }
+      }
+    }
+  }
+
+  private boolean correct(EffectiveAlarm alarm, AlarmState state) {
+    return alarm != null
+        && state == alarm.getNotification().getState()
+        && action.equals(alarm.getRegistration().getAction())
+        && instance.equals(alarm.getRegistration().getAlarm());
+  }
+
+  private static void delete(Path dir) throws Exception {
+    if (!Files.exists(dir)) {
+      return;
+    }
+
+    try (Stream<Path> paths = Files.walk(dir)) {
+      for (Path path : paths.sorted(Comparator.reverseOrder()).collect(Collectors.toList())) {
+        Files.delete(path);
+      }
+    }
+  }
+
+  private static Properties clientProps() {
+    Properties props = new Properties();
+    props.put(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, ProcessingRule.bootstrapServers());
+
+    return props;
+  }
+}
@@ -0,0 +1,197 @@
+package org.jlab.jaws;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import org.apache.kafka.clients.admin.Admin;
+import org.apache.kafka.clients.admin.AdminClientConfig;
+import org.apache.kafka.clients.admin.NewTopic;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.KafkaConsumer;
+import org.apache.kafka.clients.producer.KafkaProducer;
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.serialization.ByteArrayDeserializer;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
+import org.apache.kafka.common.serialization.Serdes;
+import org.apache.kafka.common.serialization.StringDeserializer;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.apache.kafka.common.utils.Bytes;
+import org.apache.kafka.streams.KafkaStreams;
+import org.apache.kafka.streams.StreamsBuilder;
+import org.apache.kafka.streams.StreamsConfig;
+import org.apache.kafka.streams.kstream.Consumed;
+import org.apache.kafka.streams.kstream.Materialized;
+import org.apache.kafka.streams.kstream.Produced;
+import org.apache.kafka.streams.state.KeyValueStore;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Compares the latency of a single hop during quiet operation with the throughput of a hop during
+ * an alarm flood for each {@link TuningProfile}.
+ *
+ * <p>A hop is a Kafka Streams application that reads a topic as a table, like the rules read their
+ * input, and writes its updates to another topic. The hop benchmark sends one record and waits for
+ * it to come out of the hop. The flood benchmark sends a burst of records that cycle over a set of
+ * alarms and waits for the last one; the score is records per second. Records carry only a sequence
+ * number padded to the size of a compact monolog, so the score is of the transport and store alone.
+ *
+ * <p>Requires a Kafka broker at BOOTSTRAP_SERVERS, such as the one of deps.yaml with
+ * BOOTSTRAP_SERVERS=localhost:9094. Run with: gradlew jmh -Pjmh.includes=TuningProfileBenchmark
+ */
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 10)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TuningProfileBenchmark {
+  private static final int FLOOD = 10000;
+  private static final int ALARMS = 1000;
+  private static final int VALUE_BYTES = 200;
+  private static final Duration TIMEOUT = Duration.ofSeconds(60);
+
+  @Param({"LOW_LATENCY", "HIGH_THROUGHPUT"})
+  public TuningProfile profile;
+
+  private String inputTopic;
+  private String outputTopic;
+  private KafkaStreams streams;
+  private KafkaProducer<String, byte[]> producer;
+  private KafkaConsumer<String, byte[]> consumer;
+  private long sequence;
+
+  @Setup(Level.Trial)
+  public void setup() throws Exception {
+    String id = "jaws-tuning-benchmark-" + profile + "-" + System.currentTimeMillis();
+
+    inputTopic = id + "-input";
+    outputTopic = id + "-output";
+
+    List<NewTopic> topics =
+        List.of(new NewTopic(inputTopic, 1, (short) 1), new NewTopic(outputTopic, 1, (short) 1));
+
+    try (Admin admin = Admin.create(adminProps())) {
+      admin.createTopics(topics).all().get();
+    }
+
+    Properties props = new Properties();
+    props.put(StreamsConfig.APPLICATION_ID_CONFIG, id);
+    props.put(StreamsConfig.BOOTSTRAP_SERVERS_CONFIG, ProcessingRule.bootstrapServers());
+    props.put(
+        StreamsConfig.STATE_DIR_CONFIG, Files.createTempDirectory(id).toAbsolutePath().toString());
+    props.put(StreamsConfig.ROCKSDB_CONFIG_SETTER_CLASS_CONFIG, BoundedRocksDBConfig.class);
+    props.put(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, "earliest");
+    profile.apply(props);
+
+    StreamsBuilder builder = new StreamsBuilder();
+
+    builder
+        .table(
+            inputTopic,
+            Consumed.with(Serdes.String(), Serdes.ByteArray()),
+            Materialized.<String, byte[], KeyValueStore<Bytes, byte[]>>as("Hop-Table"))
+        .toStream()
+        .to(outputTopic, Produced.with(Serdes.String(), Serdes.ByteArray()));
+
+    streams = new KafkaStreams(builder.build(), props);
+    streams.start();
+
+    producer =
+        new KafkaProducer<>(
+            clientProps(StreamsConfig.PRODUCER_PREFIX),
+            new StringSerializer(),
+            new ByteArraySerializer());
+
+    Properties consumerProps = clientProps(StreamsConfig.CONSUMER_PREFIX);
+    consumerProps.put(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, false);
+    consumerProps.put(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, "earliest");
+
+    consumer =
+        new KafkaConsumer<>(consumerProps, new StringDeserializer(), new ByteArrayDeserializer());
+    consumer.assign(Collections.singletonList(new TopicPartition(outputTopic, 0)));
+
+    // A first hop waits for the application to be assigned its task and restore its store
+    hop();
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws Exception {
+    consumer.close();
+    producer.close();
+    streams.close();
+    streams.cleanUp();
+
+    try (Admin admin = Admin.create(adminProps())) {
+      admin.deleteTopics(List.of(inputTopic, outputTopic)).all().get();
+    }
+  }
+
+  @Benchmark
+  @BenchmarkMode(Mode.SampleTime)
+  @OutputTimeUnit(TimeUnit.MILLISECONDS)
+  public long hop() {
+    send("alarm0");
+
+    return await(sequence);
+  }
+
+  @Benchmark
+  @BenchmarkMode(Mode.Throughput)
+  @OutputTimeUnit(TimeUnit.SECONDS)
+  @OperationsPerInvocation(FLOOD)
+  public long flood() {
+    for (int i = 0; i < FLOOD; i++) {
+      send("alarm" + (i % ALARMS));
+    }
+
+    return await(sequence);
+  }
+
+  private void send(String name) {
+    byte[] value = ByteBuffer.allocate(VALUE_BYTES).putLong(++sequence).array();
+
+    producer.send(new ProducerRecord<>(inputTopic, name, value));
+  }
+
+  /** Wait for the record with the given sequence number, or a later one, to come out of the hop. */
+  private long await(long last) {
+    long deadline = System.nanoTime() + TIMEOUT.toNanos();
+
+    while (System.nanoTime() < deadline) {
+      for (ConsumerRecord<String, byte[]> record : consumer.poll(Duration.ofMillis(1))) {
+        if (ByteBuffer.wrap(record.value()).getLong() >= last) {
+          return last;
+        }
+      }
+    }
+
+    throw new IllegalStateException("Record " + last + " not received within " + TIMEOUT);
+  }
+
+  /** Return the client properties of the profile with the given prefix, without the prefix. */
+  private Properties clientProps(String prefix) {
+    Properties props = new Properties();
+    props.put(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, ProcessingRule.bootstrapServers());
+
+    for (Map.Entry<String, Object> entry : profile.settings().entrySet()) {
+      if (entry.getKey().startsWith(prefix)) {
+        props.put(entry.getKey().substring(prefix.length()), entry.getValue());
+      }
+    }
+
+    return props;
+  }
+
+  private static Properties adminProps() {
+    Properties props = new Properties();
+    props.put(AdminClientConfig.BOOTSTRAP_SERVERS_CONFIG, ProcessingRule.bootstrapServers());
+
+    return props;
+  }
+}
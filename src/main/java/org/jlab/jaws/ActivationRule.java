@@ -2,55 +2,112 @@ package org.jlab.jaws;
 
 import static io.confluent.kafka.serializers.AbstractKafkaSchemaSerDeConfig.SCHEMA_REGISTRY_URL_CONFIG;
 
-import io.confluent.kafka.streams.serdes.avro.SpecificAvroSerde;
+import java.time.Duration;
 import java.util.*;
+import java.util.function.BiConsumer;
 import org.apache.kafka.common.serialization.Serdes;
 import org.apache.kafka.streams.KeyValue;
-import org.apache.kafka.streams.StreamsBuilder;
 import org.apache.kafka.streams.StreamsConfig;
-import org.apache.kafka.streams.Topology;
 import org.apache.kafka.streams.kstream.*;
+import org.apache.kafka.streams.processor.PunctuationType;
 import org.apache.kafka.streams.processor.api.Processor;
 import org.apache.kafka.streams.processor.api.ProcessorContext;
-import org.apache.kafka.streams.processor.api.ProcessorSupplier;
 import org.apache.kafka.streams.processor.api.Record;
+import org.apache.kafka.streams.processor.api.RecordMetadata;
+import org.apache.kafka.streams.state.KeyValueIterator;
 import org.apache.kafka.streams.state.KeyValueStore;
-import org.apache.kafka.streams.state.StoreBuilder;
 import org.apache.kafka.streams.state.Stores;
+import org.apache.kafka.streams.state.TimestampedKeyValueStore;
+import org.apache.kafka.streams.state.ValueAndTimestamp;
 import org.jlab.jaws.entity.*;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
- * Streams rule to join the activation and override topics into a single topic that is ordered
- * (single partition) such that processing can be done.
+ * Streams rule to join the activation and override topics into a single topic keyed by alarm name
+ * such that processing can be done. The topic may have many partitions as records of the same alarm
+ * are always in the same partition and therefore ordered.
  *
- * <p>A store of the previous active record for each alarm is used to determine transitions from
- * active to normal and back.
+ * <p>The registration, activation, and overrides of each alarm are joined in a single pass by one
+ * processor per input sharing three stores keyed by alarm name, instead of two chained table joins
+ * each materialized into a store. An input updates its own store, reads the other two, and yields
+ * one joined monolog. The overrides of each alarm are updated directly from the overrides topic
+ * instead of re-keying the topic through a repartition topic. This requires the overrides topic to
+ * be co-partitioned with the activations topic, see {@link AlarmNamePartitioner}.
+ *
+ * <p>The activation store doubles as the store of the previous active record for each alarm, which
+ * is used to determine transitions from active to normal and back.
+ *
+ * <p>Activations of an alarm that flaps can be coalesced, see {@link ActiveProcessor}.
  */
 public class ActivationRule extends ProcessingRule {
 
   private static final Logger log = LoggerFactory.getLogger(ActivationRule.class);
 
+  private static final HeaderProvider HEADERS =
+      HeaderProvider.intermediate("jaws-effective-processor-activation");
+
+  private static final Trace TRACE = Metrics.trace("activation");
+
   String inputTopicRegisteredMonolog;
   String inputTopicActive;
   String inputTopicOverridden;
+  Duration coalesceWindow = COALESCE_WINDOW;
 
   public static final Serdes.StringSerde ACTIVE_KEY_SERDE = new Serdes.StringSerde();
-  public static final SpecificAvroSerde<AlarmActivationUnion> ACTIVE_VALUE_SERDE =
-      new SpecificAvroSerde<>();
+  public static final CachingAvroSerde<AlarmActivationUnion> ACTIVE_VALUE_SERDE =
+      new CachingAvroSerde<>(AlarmActivationUnion.class);
 
-  public static final SpecificAvroSerde<AlarmOverrideKey> OVERRIDE_KEY_SERDE =
-      new SpecificAvroSerde<>();
-  public static final SpecificAvroSerde<AlarmOverrideUnion> OVERRIDE_VALUE_SERDE =
-      new SpecificAvroSerde<>();
+  public static final CachingAvroSerde<AlarmOverrideKey> OVERRIDE_KEY_SERDE =
+      new CachingAvroSerde<>(AlarmOverrideKey.class);
+  public static final CachingAvroSerde<AlarmOverrideUnion> OVERRIDE_VALUE_SERDE =
+      new CachingAvroSerde<>(AlarmOverrideUnion.class);
 
   public static final Serdes.StringSerde MONOLOG_KEY_SERDE = new Serdes.StringSerde();
-  public static final SpecificAvroSerde<IntermediateMonolog> MONOLOG_VALUE_SERDE =
-      new SpecificAvroSerde<>();
-
-  public static final SpecificAvroSerde<OverrideList> OVERRIDE_LIST_VALUE_SERDE =
-      new SpecificAvroSerde<>();
+  public static final MonologSerde MONOLOG_VALUE_SERDE = new MonologSerde();
+
+  public static final CachingAvroSerde<AlarmOverrideSet> OVERRIDE_SET_VALUE_SERDE =
+      new CachingAvroSerde<>(AlarmOverrideSet.class);
+
+  static final String REGISTERED_STORE = "Registered-Store";
+  static final String ACTIVE_STORE = "Active-Store";
+  static final String OVERRIDE_SET_STORE = "Override-Set-Store";
+  static final String COALESCE_STORE = "Coalesce-Store";
+
+  /**
+   * The interval within which the activation updates of an alarm are coalesced, configured in
+   * milliseconds with the ACTIVATION_COALESCE_MS environment variable; zero disables coalescing.
+   */
+  static final Duration COALESCE_WINDOW = Duration.ofMillis(coalesceMillis());
+
+  /**
+   * The partition count of the overrides topic, with which each override is checked to be consumed
+   * from the partition of its alarm, set at startup once the overrides topic is checked to be
+   * co-partitioned with the activations topic; zero skips the check.
+   */
+  static volatile int overridePartitions;
+
+  private static final AlarmOverrideSet EMPTY = new AlarmOverrideSet();
+
+  /** The setter of the slot of each override type in an AlarmOverrideSet. */
+  private static final Map<OverriddenAlarmType, BiConsumer<AlarmOverrideSet, Object>>
+      OVERRIDE_SETTERS = new EnumMap<>(OverriddenAlarmType.class);
+
+  static {
+    OVERRIDE_SETTERS.put(
+        OverriddenAlarmType.Disabled, (set, o) -> set.setDisabled((DisabledOverride) o));
+    OVERRIDE_SETTERS.put(
+        OverriddenAlarmType.Filtered, (set, o) -> set.setFiltered((FilteredOverride) o));
+    OVERRIDE_SETTERS.put(
+        OverriddenAlarmType.Latched, (set, o) -> set.setLatched((LatchedOverride) o));
+    OVERRIDE_SETTERS.put(OverriddenAlarmType.Masked, (set, o) -> set.setMasked((MaskedOverride) o));
+    OVERRIDE_SETTERS.put(
+        OverriddenAlarmType.OnDelayed, (set, o) -> set.setOndelayed((OnDelayedOverride) o));
+    OVERRIDE_SETTERS.put(
+        OverriddenAlarmType.OffDelayed, (set, o) -> set.setOffdelayed((OffDelayedOverride) o));
+    OVERRIDE_SETTERS.put(
+        OverriddenAlarmType.Shelved, (set, o) -> set.setShelved((ShelvedOverride) o));
+  }
 
   public ActivationRule(
       String inputTopicRegisteredMonolog,
@@ -73,9 +130,23 @@ public class ActivationRule extends ProcessingRule {
   }
 
   @Override
-  public Topology constructTopology(Properties props) {
-    final StreamsBuilder builder = new StreamsBuilder();
+  void addTopology(TopologySources sources, Properties props) {
+
+    configureSerdes(props);
+
+    final KStream<String, IntermediateMonolog> registeredMonologs =
+        sources.stream(
+            inputTopicRegisteredMonolog,
+            Consumed.as("Registered-Stream").with(MONOLOG_KEY_SERDE, MONOLOG_VALUE_SERDE));
+
+    final KStream<String, IntermediateMonolog> withTransitionState =
+        addProcessing(sources, registeredMonologs);
+
+    withTransitionState.to(
+        outputTopic, Produced.as("Monolog").with(MONOLOG_KEY_SERDE, MONOLOG_VALUE_SERDE));
+  }
 
+  void configureSerdes(Properties props) {
     // If you get an unhelpful NullPointerException in the depths of the AVRO deserializer it's
     // likely because you didn't set registry config
     Map<String, String> config = new HashMap<>();
@@ -87,105 +158,111 @@ public class ActivationRule extends ProcessingRule {
     OVERRIDE_VALUE_SERDE.configure(config, false);
 
     MONOLOG_VALUE_SERDE.configure(config, false);
-    OVERRIDE_LIST_VALUE_SERDE.configure(config, false);
+    OVERRIDE_SET_VALUE_SERDE.configure(config, false);
+  }
 
-    final KTable<String, IntermediateMonolog> registeredMonologTable =
-        builder.table(
-            inputTopicRegisteredMonolog,
-            Consumed.as("Registered-Table").with(MONOLOG_KEY_SERDE, MONOLOG_VALUE_SERDE));
-    final KTable<String, AlarmActivationUnion> activeTable =
-        builder.table(
+  /**
+   * Add the registration, activation, and override join with transition state to the topology.
+   *
+   * @param sources The topology sources
+   * @param registeredMonologs The stream of registered monolog updates, with tombstones
+   * @return The stream of monologs with transition state
+   */
+  KStream<String, IntermediateMonolog> addProcessing(
+      TopologySources sources, KStream<String, IntermediateMonolog> registeredMonologs) {
+    sources
+        .builder()
+        .addStateStore(
+            Stores.keyValueStoreBuilder(
+                    Stores.persistentKeyValueStore(REGISTERED_STORE),
+                    MONOLOG_KEY_SERDE,
+                    MONOLOG_VALUE_SERDE)
+                .withCachingEnabled());
+
+    sources
+        .builder()
+        .addStateStore(
+            Stores.keyValueStoreBuilder(
+                    Stores.persistentKeyValueStore(ACTIVE_STORE),
+                    ACTIVE_KEY_SERDE,
+                    ACTIVE_VALUE_SERDE)
+                .withCachingEnabled());
+
+    sources
+        .builder()
+        .addStateStore(
+            Stores.keyValueStoreBuilder(
+                    Stores.persistentKeyValueStore(OVERRIDE_SET_STORE),
+                    Serdes.String(),
+                    OVERRIDE_SET_VALUE_SERDE)
+                .withCachingEnabled());
+
+    final KStream<String, AlarmActivationUnion> activations =
+        sources.stream(
             inputTopicActive,
-            Consumed.as("Active-Table").with(ACTIVE_KEY_SERDE, ACTIVE_VALUE_SERDE));
-
-    KTable<String, IntermediateMonolog> registeredAndActive =
-        registeredMonologTable
-            .outerJoin(
-                activeTable,
-                new RegisteredAndActiveJoiner(),
-                Materialized.with(Serdes.String(), MONOLOG_VALUE_SERDE))
-            .filter(
-                new Predicate<String, IntermediateMonolog>() {
-                  @Override
-                  public boolean test(String key, IntermediateMonolog value) {
-                    log.debug(
-                        "CLASS-ACTIVE JOIN RESULT: key: "
-                            + key
-                            + "\n\tregistered: "
-                            + value.getRegistration()
-                            + ", \n\tnotification: "
-                            + value.getNotification());
-                    return true;
-                  }
-                });
-
-    KTable<String, OverrideList> overriddenItems = getOverriddenViaGroupBy(builder);
-
-    KTable<String, IntermediateMonolog> plusOverrides =
-        registeredAndActive
-            .outerJoin(overriddenItems, new OverrideJoiner())
-            .filter(
-                new Predicate<String, IntermediateMonolog>() {
-                  @Override
-                  public boolean test(String key, IntermediateMonolog value) {
-                    log.debug(
-                        "ACTIVE-OVERRIDE JOIN RESULT: key: "
-                            + key
-                            + "\n\tregistered: "
-                            + value.getRegistration()
-                            + ", \n\tnotification: "
-                            + value.getNotification());
-                    return true;
-                  }
-                });
-
-    final StoreBuilder<KeyValueStore<String, AlarmActivationUnion>> storeBuilder =
-        Stores.keyValueStoreBuilder(
-                Stores.persistentKeyValueStore("PreviousActiveStateStore"),
-                ACTIVE_KEY_SERDE,
-                ACTIVE_VALUE_SERDE)
-            .withCachingEnabled();
-
-    builder.addStateStore(storeBuilder);
-
-    // Ensure we always return non-null Alarm record and populate it with transition state
-    final KStream<String, IntermediateMonolog> withTransitionState =
-        plusOverrides
-            .toStream()
-            .process(
-                new MyProcessorSupplier(storeBuilder.name()),
-                Named.as("ActiveTransitionStateProcessor"),
-                storeBuilder.name());
+            Consumed.as("Active-Stream").with(ACTIVE_KEY_SERDE, ACTIVE_VALUE_SERDE));
 
-    withTransitionState.to(
-        outputTopic, Produced.as("Monolog").with(MONOLOG_KEY_SERDE, MONOLOG_VALUE_SERDE));
+    final KStream<AlarmOverrideKey, AlarmOverrideUnion> overridden =
+        sources.stream(
+            inputTopicOverridden,
+            Consumed.as("Overridden-Stream").with(OVERRIDE_KEY_SERDE, OVERRIDE_VALUE_SERDE));
 
-    return builder.build();
-  }
+    final RuleMetrics metrics = metrics();
 
-  private final class RegisteredAndActiveJoiner
-      implements ValueJoiner<IntermediateMonolog, AlarmActivationUnion, IntermediateMonolog> {
+    final Duration window = coalesceWindow;
 
-    public IntermediateMonolog apply(IntermediateMonolog registered, AlarmActivationUnion active) {
+    String[] activeStores = JoinProcessor.STORES;
+
+    if (!window.isZero()) {
+      sources
+          .builder()
+          .addStateStore(
+              Stores.timestampedKeyValueStoreBuilder(
+                      Stores.persistentTimestampedKeyValueStore(COALESCE_STORE),
+                      ACTIVE_KEY_SERDE,
+                      ACTIVE_VALUE_SERDE)
+                  .withCachingEnabled());
 
-      // System.err.println("active joiner: " + active + ", registered: " + registered);
+      activeStores = Arrays.copyOf(JoinProcessor.STORES, JoinProcessor.STORES.length + 1);
+      activeStores[JoinProcessor.STORES.length] = COALESCE_STORE;
+    }
+
+    final KStream<String, IntermediateMonolog> registeredJoined =
+        registeredMonologs.process(
+            metrics.timed("Registered-Join", RegisteredProcessor::new),
+            Named.as("Registered-Join"),
+            JoinProcessor.STORES);
+
+    final KStream<String, IntermediateMonolog> activeJoined =
+        activations.process(
+            metrics.timed("Active-Join", () -> new ActiveProcessor(window, metrics)),
+            Named.as("Active-Join"),
+            activeStores);
+
+    final KStream<String, IntermediateMonolog> overrideJoined =
+        overridden.process(
+            metrics.timed(
+                "Override-Join", () -> new OverrideProcessor(overridePartitions, metrics)),
+            Named.as("Override-Join"),
+            JoinProcessor.STORES);
+
+    return registeredJoined
+        .merge(activeJoined, Named.as("Registered-Active-Merge"))
+        .merge(overrideJoined, Named.as("Registered-Active-Override-Merge"));
+  }
 
-      EffectiveRegistration effectiveReg =
-          EffectiveRegistration.newBuilder().setAction(null).setAlarm(null).build();
+  /**
+   * Joins registrations with activations into a new monolog. The monolog is built with constructors
+   * and setters instead of builders, which would deep copy the default value of every unset field,
+   * and shares the alarm, action, and activation with the inputs, which are never modified.
+   */
+  static final class RegisteredAndActiveJoiner
+      implements ValueJoiner<IntermediateMonolog, AlarmActivationUnion, IntermediateMonolog> {
 
-      EffectiveNotification effectiveNot =
-          EffectiveNotification.newBuilder()
-              .setActivation(active)
-              .setOverrides(new AlarmOverrideSet())
-              .setState(AlarmState.Normal)
-              .build();
+    public IntermediateMonolog apply(IntermediateMonolog registered, AlarmActivationUnion active) {
+      IntermediateMonolog result = newMonolog();
 
-      IntermediateMonolog result =
-          IntermediateMonolog.newBuilder()
-              .setRegistration(effectiveReg)
-              .setNotification(effectiveNot)
-              .setTransitions(new ProcessorTransitions())
-              .build();
+      result.getNotification().setActivation(active);
 
       if (registered != null) {
         result.getRegistration().setAlarm(registered.getRegistration().getAlarm());
@@ -196,235 +273,368 @@ public class ActivationRule extends ProcessingRule {
     }
   }
 
-  private final class OverrideJoiner
-      implements ValueJoiner<IntermediateMonolog, OverrideList, IntermediateMonolog> {
+  /**
+   * Joins registered and active monologs with the set of overrides by setting the overrides in
+   * place.
+   *
+   * <p>{@link JoinProcessor#forward} always passes the result of the RegisteredAndActiveJoiner,
+   * which is a new monolog that is neither stored nor shared, so it is owned by this join alone and
+   * the overrides can be set in place without a copy. This relies on no caller passing a monolog
+   * that is also referenced elsewhere, such as one read from or written to a store. The override
+   * set is just read from, or updated and written to, the override set store, which serializes it
+   * on write, so it needs no copy either. Only the monolog of an alarm with overrides but neither
+   * registration nor activation would be absent, and is then created here.
+   */
+  static final class OverrideJoiner
+      implements ValueJoiner<IntermediateMonolog, AlarmOverrideSet, IntermediateMonolog> {
 
     public IntermediateMonolog apply(
-        IntermediateMonolog registeredAndActive, OverrideList overrideList) {
-
-      // System.err.println("override joiner: " + registeredAndActive);
-
-      AlarmOverrideSet overrides =
-          AlarmOverrideSet.newBuilder()
-              .setDisabled(null)
-              .setFiltered(null)
-              .setLatched(null)
-              .setMasked(null)
-              .setOffdelayed(null)
-              .setOndelayed(null)
-              .setShelved(null)
-              .build();
-
-      if (overrideList != null) {
-        for (AlarmOverrideUnion over : overrideList.getOverrides()) {
-          if (over.getUnion() instanceof DisabledOverride) {
-            overrides.setDisabled((DisabledOverride) over.getUnion());
-          }
-
-          if (over.getUnion() instanceof FilteredOverride) {
-            overrides.setFiltered((FilteredOverride) over.getUnion());
-          }
-
-          if (over.getUnion() instanceof LatchedOverride) {
-            overrides.setLatched((LatchedOverride) over.getUnion());
-          }
-
-          if (over.getUnion() instanceof MaskedOverride) {
-            overrides.setMasked((MaskedOverride) over.getUnion());
-          }
-
-          if (over.getUnion() instanceof OnDelayedOverride) {
-            overrides.setOndelayed((OnDelayedOverride) over.getUnion());
-          }
-
-          if (over.getUnion() instanceof OffDelayedOverride) {
-            overrides.setOffdelayed((OffDelayedOverride) over.getUnion());
-          }
-
-          if (over.getUnion() instanceof ShelvedOverride) {
-            overrides.setShelved((ShelvedOverride) over.getUnion());
-          }
-        }
-      }
+        IntermediateMonolog registeredAndActive, AlarmOverrideSet overrides) {
+      IntermediateMonolog result = registeredAndActive;
 
-      IntermediateMonolog result;
-
-      if (registeredAndActive != null) {
-        result = IntermediateMonolog.newBuilder(registeredAndActive).build();
+      if (result == null) {
+        result = newMonolog();
+      }
 
+      if (overrides != null) {
         result.getNotification().setOverrides(overrides);
-      } else {
-        EffectiveRegistration effectiveReg = EffectiveRegistration.newBuilder().build();
-
-        EffectiveNotification effectiveNot =
-            EffectiveNotification.newBuilder()
-                .setOverrides(overrides)
-                .setState(AlarmState.Normal)
-                .build();
-
-        result =
-            IntermediateMonolog.newBuilder()
-                .setRegistration(effectiveReg)
-                .setNotification(effectiveNot)
-                .setTransitions(new ProcessorTransitions())
-                .build();
       }
 
       return result;
     }
   }
 
-  private KTable<String, OverrideList> getOverriddenViaGroupBy(StreamsBuilder builder) {
-    final KTable<AlarmOverrideKey, AlarmOverrideUnion> overriddenTable =
-        builder.table(
-            inputTopicOverridden,
-            Consumed.as("Overridden-Table").with(OVERRIDE_KEY_SERDE, OVERRIDE_VALUE_SERDE));
-
-    final KTable<String, OverrideList> groupTable =
-        overriddenTable
-            .groupBy(
-                (key, value) -> groupOverride(key, value),
-                Grouped.as("Grouped-Overrides").with(Serdes.String(), OVERRIDE_LIST_VALUE_SERDE))
-            .aggregate(
-                () -> new OverrideList(new ArrayList<>()),
-                (key, newValue, aggregate) -> {
-                  // System.err.println("add: " + key + ", " + newValue + ", " + aggregate);
-                  if (newValue.getOverrides() != null
-                      && aggregate != null
-                      && aggregate.getOverrides() != null) {
-                    aggregate.getOverrides().addAll(newValue.getOverrides());
-                  }
-
-                  return aggregate;
-                },
-                (key, oldValue, aggregate) -> {
-                  // System.err.println("subtract: " + key + ", " + oldValue + ", " + aggregate);
-
-                  ArrayList<AlarmOverrideUnion> tmp = new ArrayList<>(aggregate.getOverrides());
-
-                  for (AlarmOverrideUnion oav : oldValue.getOverrides()) {
-                    tmp.remove(oav);
-                  }
-                  return new OverrideList(tmp);
-                },
-                Materialized.as("Override-Criteria-Table")
-                    .with(Serdes.String(), OVERRIDE_LIST_VALUE_SERDE));
-
-    return groupTable;
+  /**
+   * Return a new monolog with neither registration, activation, nor overrides.
+   *
+   * @return The monolog
+   */
+  static IntermediateMonolog newMonolog() {
+    EffectiveRegistration effectiveReg = new EffectiveRegistration();
+
+    EffectiveNotification effectiveNot = new EffectiveNotification();
+    effectiveNot.setOverrides(new AlarmOverrideSet());
+    effectiveNot.setState(AlarmState.Normal);
+
+    return new IntermediateMonolog(effectiveReg, effectiveNot, new ProcessorTransitions());
+  }
+
+  /**
+   * Set the slot of an override in an override set.
+   *
+   * @param overrides The override set
+   * @param type The override type
+   * @param override The override
+   * @return The override set
+   */
+  static AlarmOverrideSet addOverride(
+      AlarmOverrideSet overrides, OverriddenAlarmType type, AlarmOverrideUnion override) {
+    OVERRIDE_SETTERS.get(type).accept(overrides, override.getUnion());
+
+    return overrides;
+  }
+
+  /**
+   * Clear the slot of an override in an override set.
+   *
+   * @param overrides The override set
+   * @param type The override type
+   * @return The override set
+   */
+  static AlarmOverrideSet subtractOverride(AlarmOverrideSet overrides, OverriddenAlarmType type) {
+    OVERRIDE_SETTERS.get(type).accept(overrides, null);
+
+    return overrides;
   }
 
-  private static KeyValue<String, OverrideList> groupOverride(
-      AlarmOverrideKey key, AlarmOverrideUnion value) {
-    List<AlarmOverrideUnion> list = new ArrayList<>();
-    list.add(value);
-    return new KeyValue<>(key.getName(), new OverrideList(list));
+  private static long coalesceMillis() {
+    String millis = System.getenv("ACTIVATION_COALESCE_MS");
+    return (millis == null) ? 0 : Long.parseLong(millis);
   }
 
-  private static final class MyProcessorSupplier
-      implements ProcessorSupplier<String, IntermediateMonolog, String, IntermediateMonolog> {
+  /**
+   * Joins the registration, activation, and overrides of an alarm on an update of one of them, and
+   * sets the transition state. Each input has its own subclass, which updates the store of its
+   * input only and then reads the other two, such that an update costs one store write and at most
+   * three reads.
+   *
+   * <p>Always forwards a non-null monolog, even if the registration, activation, and overrides are
+   * all absent, but fields inside may be null.
+   *
+   * @param <KIn> The input key type
+   * @param <VIn> The input value type
+   */
+  abstract static class JoinProcessor<KIn, VIn>
+      implements Processor<KIn, VIn, String, IntermediateMonolog> {
+    static final String[] STORES = {REGISTERED_STORE, ACTIVE_STORE, OVERRIDE_SET_STORE};
+
+    private final RegisteredAndActiveJoiner activeJoiner = new RegisteredAndActiveJoiner();
+    private final OverrideJoiner overrideJoiner = new OverrideJoiner();
+
+    KeyValueStore<String, IntermediateMonolog> registeredStore;
+    KeyValueStore<String, AlarmActivationUnion> activeStore;
+    KeyValueStore<String, AlarmOverrideSet> overrideStore;
+    ProcessorContext<String, IntermediateMonolog> context;
 
-    private final String storeName;
+    @Override
+    public void init(ProcessorContext<String, IntermediateMonolog> context) {
+      this.context = context;
+      this.registeredStore = context.getStateStore(REGISTERED_STORE);
+      this.activeStore = context.getStateStore(ACTIVE_STORE);
+      this.overrideStore = context.getStateStore(OVERRIDE_SET_STORE);
+    }
 
     /**
-     * Create a new ProcessorSupplier.
+     * Forward the join of the stored registration, activation, and overrides of an alarm.
      *
-     * @param storeName The state store name
+     * @param input The input record, which is traced
+     * @param name The alarm name
+     * @param registered The registered monolog, if already read, else null to read it
+     * @param previous The activation before the update, which is the stored one unless the update
+     *     is of the activation
+     * @param next The activation after the update
+     * @param overrides The override set, if already read, else null to read it
      */
-    public MyProcessorSupplier(String storeName) {
-      this.storeName = storeName;
+    void forward(
+        Record<?, ?> input,
+        String name,
+        IntermediateMonolog registered,
+        AlarmActivationUnion previous,
+        AlarmActivationUnion next,
+        AlarmOverrideSet overrides) {
+      if (registered == null) {
+        registered = registeredStore.get(name);
+      }
+
+      if (overrides == null) {
+        overrides = overrideStore.get(name);
+      }
+
+      IntermediateMonolog joined =
+          overrideJoiner.apply(activeJoiner.apply(registered, next), overrides);
+
+      log.debug(
+          "JOIN RESULT: key: {}\n\tregistered: {}, \n\tnotification: {}",
+          name,
+          joined.getRegistration(),
+          joined.getNotification());
+
+      // We substitute null for NoActivation to ensure non-null means real activation
+      boolean wasActive = previous != null && !(previous.getUnion() instanceof NoActivation);
+      boolean isActive = next != null && !(next.getUnion() instanceof NoActivation);
+
+      joined.getTransitions().setTransitionToActive(!wasActive && isActive);
+      joined.getTransitions().setTransitionToNormal(wasActive && !isActive);
+
+      Record<String, IntermediateMonolog> output =
+          new Record<>(name, joined, System.currentTimeMillis());
+
+      HEADERS.populate(output);
+      TRACE.hop(input, output);
+
+      log.trace("Joined: {} -> {}", name, output);
+
+      context.forward(output);
+    }
+  }
+
+  /** Joins each registered monolog update with the stored activation and overrides. */
+  static final class RegisteredProcessor
+      extends JoinProcessor<String, IntermediateMonolog> {
+    @Override
+    public void process(Record<String, IntermediateMonolog> input) {
+      registeredStore.put(input.key(), input.value());
+
+      AlarmActivationUnion active = activeStore.get(input.key());
+
+      forward(input, input.key(), input.value(), active, active, null);
     }
+  }
+
+  /**
+   * Joins each activation update with the stored registration and overrides.
+   *
+   * <p>With a coalescing window, an update of an alarm that was not forwarded within the window is
+   * joined at once, so a quiet alarm sees no added latency. Further updates within the window are
+   * held in the coalesce store, each replacing the one before, and the latest is joined when a
+   * punctuator flushes the held updates once per window. An alarm that flaps faster than the window
+   * therefore yields at most about two monologs per window, and a flap that returns to the
+   * forwarded activation before the flush yields no transition. The active store keeps the
+   * activation last joined, so registration and override updates do not see held activations.
+   * Tombstones are never held, and discard the held update. A held update keeps its record
+   * timestamp, which is joined as the timestamp of the update, such that the trace of a coalesced
+   * update starts at its origin rather than at the flush.
+   */
+  static final class ActiveProcessor extends JoinProcessor<String, AlarmActivationUnion> {
+    private final Duration window;
+    private final RuleMetrics metrics;
+    private final Map<String, Long> lastForwarded = new HashMap<>();
+    private TimestampedKeyValueStore<String, AlarmActivationUnion> coalesceStore;
 
     /**
-     * Return a new {@link Processor} instance.
+     * Create a new ActiveProcessor.
      *
-     * @return a new {@link Processor} instance
+     * @param window The coalescing window, zero to join every update at once
+     * @param metrics The metrics of the rule, which count superseded held updates as dropped
      */
+    ActiveProcessor(Duration window, RuleMetrics metrics) {
+      this.window = window;
+      this.metrics = metrics;
+    }
+
+    @Override
+    public void init(ProcessorContext<String, IntermediateMonolog> context) {
+      super.init(context);
+
+      if (!window.isZero()) {
+        coalesceStore = context.getStateStore(COALESCE_STORE);
+
+        context.schedule(window, PunctuationType.WALL_CLOCK_TIME, this::flush);
+      }
+    }
+
     @Override
-    public Processor<String, IntermediateMonolog, String, IntermediateMonolog> get() {
-      return new Processor<>() {
-        private KeyValueStore<String, AlarmActivationUnion> store;
-        private ProcessorContext<String, IntermediateMonolog> context;
-
-        @Override
-        public void init(ProcessorContext<String, IntermediateMonolog> context) {
-          this.context = context;
-          this.store = context.getStateStore(storeName);
+    public void process(Record<String, AlarmActivationUnion> input) {
+      if (coalesceStore != null && hold(input)) {
+        return;
+      }
+
+      join(input);
+    }
+
+    private boolean hold(Record<String, AlarmActivationUnion> input) {
+      String name = input.key();
+
+      if (input.value() == null) {
+        // The tombstone supersedes the held update
+        if (coalesceStore.delete(name) != null) {
+          metrics.dropped();
         }
 
-        @Override
-        public void process(Record<String, IntermediateMonolog> input) {
+        return false;
+      }
+
+      long now = context.currentSystemTimeMs();
+
+      boolean held = coalesceStore.get(name) != null;
+
+      if (held) {
+        metrics.dropped();
+      } else {
+        Long last = lastForwarded.get(name);
+
+        held = last != null && now - last < window.toMillis();
+      }
+
+      if (held) {
+        coalesceStore.put(name, ValueAndTimestamp.make(input.value(), input.timestamp()));
+      } else {
+        lastForwarded.put(name, now);
+      }
+
+      return held;
+    }
+
+    private void join(Record<String, AlarmActivationUnion> input) {
+      AlarmActivationUnion previous = activeStore.get(input.key());
+
+      activeStore.put(input.key(), input.value());
+
+      forward(input, input.key(), null, previous, input.value(), null);
+    }
+
+    private void flush(long timestamp) {
+      List<KeyValue<String, ValueAndTimestamp<AlarmActivationUnion>>> held = new ArrayList<>();
 
-          long timestamp = System.currentTimeMillis();
+      try (KeyValueIterator<String, ValueAndTimestamp<AlarmActivationUnion>> iterator =
+          coalesceStore.all()) {
+        iterator.forEachRemaining(held::add);
+      }
 
-          Record<String, IntermediateMonolog> output;
+      for (KeyValue<String, ValueAndTimestamp<AlarmActivationUnion>> entry : held) {
+        coalesceStore.delete(entry.key);
+        lastForwarded.put(entry.key, timestamp);
 
-          // Handle Scenario where only one of Registration or Activation and it just got
-          // tombstoned!
-          // Instead of forwarding IntermediateMonolog = null we always forward non-null
-          // IntermediateMonolog,
-          // but fields inside may be null
-          if (input.value() == null) {
-            EffectiveRegistration effectiveReg = EffectiveRegistration.newBuilder().build();
+        join(new Record<>(entry.key, entry.value.value(), entry.value.timestamp()));
+      }
+
+      lastForwarded.values().removeIf(last -> timestamp - last >= window.toMillis());
+    }
+  }
 
-            EffectiveNotification effectiveNot =
-                EffectiveNotification.newBuilder()
-                    .setOverrides(new AlarmOverrideSet())
-                    .setState(AlarmState.Normal)
-                    .build();
+  /**
+   * Updates the stored override set of an alarm with each override record and joins it with the
+   * stored registration and activation. The override set is stored only while it has an override.
+   *
+   * <p>An override written by a producer without the {@link AlarmNamePartitioner} may be in a
+   * partition other than that of the activation of its alarm, and is then joined by a task that
+   * does not have the activation. Such overrides are logged and counted as partition mismatches,
+   * and still processed, since the task that has the activation never receives them.
+   */
+  static final class OverrideProcessor
+      extends JoinProcessor<AlarmOverrideKey, AlarmOverrideUnion> {
+    private final int partitions;
+    private final RuleMetrics metrics;
 
-            IntermediateMonolog emptyMono =
-                IntermediateMonolog.newBuilder()
-                    .setRegistration(effectiveReg)
-                    .setNotification(effectiveNot)
-                    .setTransitions(new ProcessorTransitions())
-                    .build();
+    /**
+     * Create an override processor.
+     *
+     * @param partitions The partition count of the overrides topic; zero skips the check
+     * @param metrics The metrics of the rule, which count partition mismatches
+     */
+    OverrideProcessor(int partitions, RuleMetrics metrics) {
+      this.partitions = partitions;
+      this.metrics = metrics;
+    }
 
-            output = new Record<>(input.key(), emptyMono, timestamp);
-          } else {
-            output = new Record<>(input.key(), input.value(), timestamp);
-          }
+    @Override
+    public void process(Record<AlarmOverrideKey, AlarmOverrideUnion> input) {
+      String name = input.key().getName();
 
-          AlarmActivationUnion previous = store.get(input.key());
-          AlarmActivationUnion next = null;
+      if (partitions > 0) {
+        checkPartition(name);
+      }
 
-          next = output.value().getNotification().getActivation();
+      AlarmOverrideSet overrides = overrideStore.get(name);
 
-          // We substitute null for NoActivation to ensure non-null means real activation
-          if (next != null && next.getUnion() instanceof NoActivation) {
-            next = null;
-          }
+      if (overrides == null) {
+        overrides = new AlarmOverrideSet();
+      }
 
-          // System.err.println("previous: " + previous);
-          // System.err.println("next: " + (value == null ? null : value.getActive()));
+      if (input.value() == null) {
+        subtractOverride(overrides, input.key().getType());
+      } else {
+        addOverride(overrides, input.key().getType(), input.value());
+      }
 
-          boolean transitionToActive = false;
-          boolean transitionToNormal = false;
+      overrideStore.put(name, EMPTY.equals(overrides) ? null : overrides);
 
-          if (previous == null && next != null) {
-            // System.err.println("TRANSITION TO ACTIVE!");
-            transitionToActive = true;
-          } else if (previous != null && next == null) {
-            // System.err.println("TRANSITION TO NORMAL!");
-            transitionToNormal = true;
-          }
+      AlarmActivationUnion active = activeStore.get(name);
 
-          store.put(input.key(), next);
+      forward(input, name, null, active, active, overrides);
+    }
 
-          output.value().getTransitions().setTransitionToActive(transitionToActive);
-          output.value().getTransitions().setTransitionToNormal(transitionToNormal);
+    private void checkPartition(String name) {
+      Optional<RecordMetadata> metadata = context.recordMetadata();
 
-          populateHeaders(output);
+      if (metadata.isEmpty()) {
+        return;
+      }
 
-          log.trace("Transformed: {}={} -> {}", input.key(), input.value(), output);
+      int expected = AlarmNamePartitioner.partition(name, partitions);
 
-          context.forward(output);
-        }
+      if (metadata.get().partition() != expected) {
+        metrics.partitionMismatch();
 
-        @Override
-        public void close() {
-          // Nothing to do
-        }
-      };
+        log.error(
+            "Override of alarm {} consumed from {}-{} at offset {}, but its alarm is in partition"
+                + " {}; the producer must use the AlarmNamePartitioner",
+            name,
+            metadata.get().topic(),
+            metadata.get().partition(),
+            metadata.get().offset(),
+            expected);
+      }
     }
   }
 }
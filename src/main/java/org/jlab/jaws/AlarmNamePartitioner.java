@@ -0,0 +1,56 @@
+package org.jlab.jaws;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import org.apache.kafka.clients.producer.Partitioner;
+import org.apache.kafka.common.Cluster;
+import org.apache.kafka.common.utils.Utils;
+import org.apache.kafka.streams.processor.StreamPartitioner;
+import org.jlab.jaws.entity.AlarmOverrideKey;
+
+/**
+ * Partitions alarm override records by alarm name alone, into the same partition the default
+ * partitioner assigns to a record keyed by the alarm name string such as an activation.
+ *
+ * <p>The overrides topic is then co-partitioned with the activations topic, and all overrides of an
+ * alarm are consumed by the same task as its activation, which lets the activation rule keep the
+ * overrides of each alarm without repartitioning them by name. Every producer of the overrides
+ * topic must use this partitioner when the topic has more than one partition: the rules of this
+ * processor as a StreamPartitioner, and other clients with the partitioner.class producer config.
+ */
+public class AlarmNamePartitioner
+    implements StreamPartitioner<AlarmOverrideKey, Object>, Partitioner {
+
+  /**
+   * Return the partition of an alarm.
+   *
+   * @param name The alarm name
+   * @param numPartitions The number of partitions
+   * @return The partition
+   */
+  public static int partition(String name, int numPartitions) {
+    return Utils.toPositive(Utils.murmur2(name.getBytes(StandardCharsets.UTF_8))) % numPartitions;
+  }
+
+  @Override
+  public Integer partition(String topic, AlarmOverrideKey key, Object value, int numPartitions) {
+    return partition(key.getName(), numPartitions);
+  }
+
+  @Override
+  public int partition(
+      String topic, Object key, byte[] keyBytes, Object value, byte[] valueBytes, Cluster cluster) {
+    return partition(
+        ((AlarmOverrideKey) key).getName(), cluster.partitionCountForTopic(topic).intValue());
+  }
+
+  @Override
+  public void configure(Map<String, ?> configs) {
+    // Nothing to configure
+  }
+
+  @Override
+  public void close() {
+    // Nothing to do
+  }
+}
@@ -0,0 +1,165 @@
+package org.jlab.jaws;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import javax.management.JMException;
+import javax.management.ObjectName;
+import org.apache.kafka.streams.state.RocksDBConfigSetter;
+import org.rocksdb.BlockBasedTableConfig;
+import org.rocksdb.BloomFilter;
+import org.rocksdb.Cache;
+import org.rocksdb.LRUCache;
+import org.rocksdb.Options;
+import org.rocksdb.WriteBufferManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Bounds the off-heap memory of all RocksDB stores of the process, regardless of how many rules and
+ * stores there are, instead of each store having its own block cache and memtables.
+ *
+ * <p>All stores of all Kafka Streams instances in the process share one block cache, to which the
+ * memtables, index, and filter blocks are charged as well, so the cache capacity is the memory
+ * budget. The budget is configured with the ROCKSDB_MEMORY_MB environment variable, of which
+ * ROCKSDB_WRITE_BUFFER_MB is for memtables; a store flushes its memtable once the memtables of all
+ * stores exceed it. Each store gets a bloom filter with ROCKSDB_BLOOM_BITS bits per key, so a
+ * lookup of an alarm without an entry, the common case for the transition flags, rarely reads a
+ * block; 0 disables the filter.
+ *
+ * <p>The memory usage is published as the JMX MXBean {@value #OBJECT_NAME}.
+ */
+public class BoundedRocksDBConfig implements RocksDBConfigSetter {
+
+  private static final Logger log = LoggerFactory.getLogger(BoundedRocksDBConfig.class);
+
+  /** The JMX object name of the memory usage. */
+  public static final String OBJECT_NAME = "org.jlab.jaws:type=rocksdb-memory";
+
+  private static final long MB = 1024 * 1024;
+
+  /** The fraction of the cache reserved for index and filter blocks. */
+  private static final double HIGH_PRIORITY_POOL_RATIO = 0.1;
+
+  private static final long MEMORY_BYTES = env("ROCKSDB_MEMORY_MB", 64) * MB;
+  private static final long WRITE_BUFFER_BYTES = env("ROCKSDB_WRITE_BUFFER_MB", 16) * MB;
+  private static final int BLOOM_BITS = (int) env("ROCKSDB_BLOOM_BITS", 10);
+
+  private static final Cache CACHE =
+      new LRUCache(MEMORY_BYTES, -1, false, HIGH_PRIORITY_POOL_RATIO);
+
+  private static final WriteBufferManager WRITE_BUFFER_MANAGER =
+      new WriteBufferManager(WRITE_BUFFER_BYTES, CACHE);
+
+  private static final Memory MEMORY = new Memory();
+
+  static {
+    try {
+      ManagementFactory.getPlatformMBeanServer().registerMBean(MEMORY, new ObjectName(OBJECT_NAME));
+    } catch (JMException e) {
+      log.warn("Unable to register RocksDB memory MXBean", e);
+    }
+
+    log.info(
+        "RocksDB memory bounded to {} MB with {} MB of write buffers",
+        MEMORY_BYTES / MB,
+        WRITE_BUFFER_BYTES / MB);
+  }
+
+  private BloomFilter filter;
+
+  @Override
+  public void setConfig(String storeName, Options options, Map<String, Object> configs) {
+    BlockBasedTableConfig tableConfig = (BlockBasedTableConfig) options.tableFormatConfig();
+
+    tableConfig.setBlockCache(CACHE);
+    tableConfig.setCacheIndexAndFilterBlocks(true);
+    tableConfig.setCacheIndexAndFilterBlocksWithHighPriority(true);
+    tableConfig.setPinTopLevelIndexAndFilter(true);
+
+    if (BLOOM_BITS > 0) {
+      filter = new BloomFilter(BLOOM_BITS);
+      tableConfig.setFilterPolicy(filter);
+    }
+
+    options.setTableFormatConfig(tableConfig);
+    options.setWriteBufferManager(WRITE_BUFFER_MANAGER);
+    options.setWriteBufferSize(Math.min(options.writeBufferSize(), WRITE_BUFFER_BYTES));
+  }
+
+  @Override
+  public void close(String storeName, Options options) {
+    // The cache and write buffer manager are shared by all stores and live as long as the process
+    if (filter != null) {
+      filter.close();
+    }
+  }
+
+  /**
+   * Return the memory usage of all stores.
+   *
+   * @return The memory usage
+   */
+  public static MemoryMXBean memory() {
+    return MEMORY;
+  }
+
+  private static long env(String name, long defaultValue) {
+    String value = System.getenv(name);
+
+    return (value == null) ? defaultValue : Long.parseLong(value);
+  }
+
+  /** The memory usage of all RocksDB stores of the process. */
+  public interface MemoryMXBean {
+
+    /**
+     * Return the memory budget, which is the capacity of the shared cache.
+     *
+     * @return The capacity in bytes
+     */
+    long getBlockCacheCapacity();
+
+    /**
+     * Return the memory in use by blocks, index and filter blocks, and memtables.
+     *
+     * @return The usage in bytes
+     */
+    long getBlockCacheUsage();
+
+    /**
+     * Return the memory in use by entries that can not be evicted since they are being read.
+     *
+     * @return The pinned usage in bytes
+     */
+    long getBlockCachePinnedUsage();
+
+    /**
+     * Return the part of the budget for memtables.
+     *
+     * @return The capacity in bytes
+     */
+    long getWriteBufferCapacity();
+  }
+
+  private static final class Memory implements MemoryMXBean {
+    @Override
+    public long getBlockCacheCapacity() {
+      return MEMORY_BYTES;
+    }
+
+    @Override
+    public long getBlockCacheUsage() {
+      return CACHE.getUsage();
+    }
+
+    @Override
+    public long getBlockCachePinnedUsage() {
+      return CACHE.getPinnedUsage();
+    }
+
+    @Override
+    public long getWriteBufferCapacity() {
+      return WRITE_BUFFER_BYTES;
+    }
+  }
+}
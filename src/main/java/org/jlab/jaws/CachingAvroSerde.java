@@ -0,0 +1,177 @@
+package org.jlab.jaws;
+
+import static io.confluent.kafka.serializers.AbstractKafkaSchemaSerDeConfig.SCHEMA_REGISTRY_URL_CONFIG;
+
+import io.confluent.kafka.schemaregistry.client.rest.exceptions.RestClientException;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+import org.apache.avro.Schema;
+import org.apache.avro.io.BinaryDecoder;
+import org.apache.avro.io.BinaryEncoder;
+import org.apache.avro.io.DecoderFactory;
+import org.apache.avro.io.EncoderFactory;
+import org.apache.avro.specific.SpecificData;
+import org.apache.avro.specific.SpecificDatumReader;
+import org.apache.avro.specific.SpecificDatumWriter;
+import org.apache.avro.specific.SpecificRecord;
+import org.apache.kafka.common.errors.SerializationException;
+import org.apache.kafka.common.serialization.Deserializer;
+import org.apache.kafka.common.serialization.Serde;
+import org.apache.kafka.common.serialization.Serializer;
+
+/**
+ * Avro serde for the generated jaws-libj entity classes that reads and writes the Confluent wire
+ * format (magic byte, schema id, Avro binary) with schema ids resolved through the {@link
+ * SchemaCache} instead of the schema registry.
+ *
+ * <p>The writer schema and its fingerprint are taken from the generated class once, so serializing
+ * only needs the id of that schema, which the cache keeps per subject. Records are registered under
+ * the topic name subject, {@code <topic>-key} or {@code <topic>-value}, like the Confluent serde
+ * with its defaults, so the two are interchangeable on any topic.
+ *
+ * @param <T> The generated entity class
+ */
+public class CachingAvroSerde<T extends SpecificRecord> implements Serde<T> {
+
+  /** The first byte of every record. */
+  static final byte MAGIC_BYTE = 0;
+
+  private static final int HEADER_LENGTH = 5;
+
+  private final Class<T> type;
+  private final SpecificData data;
+  private final Schema schema;
+  private final long fingerprint;
+
+  private final ThreadLocal<Codec<T>> codec;
+
+  private SchemaCache cache;
+  private String subjectSuffix = "-value";
+
+  private final Serializer<T> serializer = new CachingSerializer();
+  private final Deserializer<T> deserializer = new CachingDeserializer();
+
+  /**
+   * Create a new CachingAvroSerde.
+   *
+   * @param type The generated entity class
+   */
+  public CachingAvroSerde(Class<T> type) {
+    this.type = type;
+    this.data = SpecificData.getForClass(type);
+    this.schema = data.getSchema(type);
+    this.fingerprint = SchemaCache.fingerprint(schema);
+    this.codec = ThreadLocal.withInitial(() -> new Codec<>(schema, data));
+  }
+
+  @Override
+  public void configure(Map<String, ?> configs, boolean isKey) {
+    Object url = configs.get(SCHEMA_REGISTRY_URL_CONFIG);
+
+    if (url == null) {
+      throw new IllegalArgumentException(SCHEMA_REGISTRY_URL_CONFIG + " is required");
+    }
+
+    cache = SchemaCache.forRegistry(url.toString(), configs);
+    subjectSuffix = isKey ? "-key" : "-value";
+  }
+
+  @Override
+  public Serializer<T> serializer() {
+    return serializer;
+  }
+
+  @Override
+  public Deserializer<T> deserializer() {
+    return deserializer;
+  }
+
+  /** The per thread, reusable encoding state. */
+  private static final class Codec<T> {
+    final SpecificDatumWriter<T> writer;
+    final Map<Integer, SpecificDatumReader<T>> readers = new HashMap<>();
+    final ByteArrayOutputStream buffer = new ByteArrayOutputStream(1024);
+    final ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+    BinaryEncoder encoder;
+    BinaryDecoder decoder;
+
+    Codec(Schema schema, SpecificData data) {
+      writer = new SpecificDatumWriter<>(schema, data);
+    }
+  }
+
+  private void checkConfigured() {
+    if (cache == null) {
+      throw new SerializationException(type.getSimpleName() + " serde not configured");
+    }
+  }
+
+  private final class CachingSerializer implements Serializer<T> {
+    @Override
+    public byte[] serialize(String topic, T record) {
+      if (record == null) {
+        return null;
+      }
+
+      checkConfigured();
+
+      Codec<T> c = codec.get();
+
+      try {
+        int id = cache.id(topic + subjectSuffix, schema, fingerprint);
+
+        c.buffer.reset();
+        c.header.clear();
+        c.header.put(MAGIC_BYTE).putInt(id);
+        c.buffer.write(c.header.array(), 0, HEADER_LENGTH);
+
+        c.encoder = EncoderFactory.get().directBinaryEncoder(c.buffer, c.encoder);
+        c.writer.write(record, c.encoder);
+      } catch (IOException | RestClientException e) {
+        throw new SerializationException("Unable to serialize " + type.getSimpleName(), e);
+      }
+
+      return c.buffer.toByteArray();
+    }
+  }
+
+  private final class CachingDeserializer implements Deserializer<T> {
+    @Override
+    public T deserialize(String topic, byte[] bytes) {
+      if (bytes == null) {
+        return null;
+      }
+
+      checkConfigured();
+
+      if (bytes.length < HEADER_LENGTH || bytes[0] != MAGIC_BYTE) {
+        throw new SerializationException("Unknown magic byte reading " + type.getSimpleName());
+      }
+
+      int id = ByteBuffer.wrap(bytes, 1, 4).getInt();
+
+      Codec<T> c = codec.get();
+
+      try {
+        SpecificDatumReader<T> reader = c.readers.get(id);
+
+        if (reader == null) {
+          reader = new SpecificDatumReader<>(cache.schema(id), schema, data);
+          c.readers.put(id, reader);
+        }
+
+        c.decoder =
+            DecoderFactory.get()
+                .binaryDecoder(bytes, HEADER_LENGTH, bytes.length - HEADER_LENGTH, c.decoder);
+
+        return reader.read(null, c.decoder);
+      } catch (IOException | RestClientException e) {
+        throw new SerializationException(
+            "Unable to deserialize " + type.getSimpleName() + " with schema id " + id, e);
+      }
+    }
+  }
+}
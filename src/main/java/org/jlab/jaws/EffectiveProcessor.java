@@ -1,6 +1,10 @@
 package org.jlab.jaws;
 
-import java.util.HashSet;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Set;
 import java.util.concurrent.*;
 import org.jlab.jaws.clients.*;
@@ -9,7 +13,67 @@ import org.slf4j.LoggerFactory;
 
 public class EffectiveProcessor {
   private static final Logger log = LoggerFactory.getLogger(EffectiveProcessor.class);
-  private static final Set<ProcessingRule> rules = new HashSet<>();
+  private static final Set<ProcessingRule> rules = new LinkedHashSet<>();
+
+  static final List<String> INTERMEDIATE_TOPICS =
+      Arrays.asList(
+          "intermediate-registration",
+          "intermediate-activation",
+          "intermediate-latch",
+          "intermediate-ondelay",
+          "intermediate-oneshot");
+
+  /**
+   * Return the rules of the processor, in the order they are started.
+   *
+   * @param fused true to chain the rules of the pipeline in a single topology, false to connect
+   *     them with intermediate topics
+   * @return The rules
+   */
+  static List<ProcessingRule> rules(boolean fused) {
+    List<ProcessingRule> all = new ArrayList<>();
+
+    if (fused) {
+      all.add(
+          new FusedPipelineRule(
+              ActionProducer.TOPIC,
+              AlarmProducer.TOPIC,
+              ActivationProducer.TOPIC,
+              OverrideProducer.TOPIC,
+              EffectiveRegistrationProducer.TOPIC,
+              EffectiveNotificationProducer.TOPIC,
+              EffectiveAlarmProducer.TOPIC));
+    } else {
+      all.add(
+          new RegistrationRule(
+              ActionProducer.TOPIC,
+              AlarmProducer.TOPIC,
+              EffectiveRegistrationProducer.TOPIC,
+              "intermediate-registration"));
+      all.add(
+          new ActivationRule(
+              "intermediate-registration",
+              ActivationProducer.TOPIC,
+              OverrideProducer.TOPIC,
+              "intermediate-activation"));
+      all.add(
+          new LatchRule("intermediate-activation", "intermediate-latch", OverrideProducer.TOPIC));
+      all.add(
+          new OnDelayRule("intermediate-latch", "intermediate-ondelay", OverrideProducer.TOPIC));
+      all.add(
+          new OneShotRule("intermediate-ondelay", "intermediate-oneshot", OverrideProducer.TOPIC));
+      all.add(
+          new EffectiveStateRule(
+              "intermediate-oneshot",
+              EffectiveNotificationProducer.TOPIC,
+              EffectiveAlarmProducer.TOPIC));
+    }
+
+    // async; expires the overrides the pipeline reads
+    all.add(new OverrideExpirationRule(OverrideProducer.TOPIC, OverrideProducer.TOPIC));
+
+    return all;
+  }
 
   /**
    * Entrypoint of the application.
@@ -17,35 +81,27 @@ public class EffectiveProcessor {
    * @param args The command line arguments
    */
   public static void main(String[] args) {
+    String fused = System.getenv("FUSED_PIPELINE");
+    String shared = System.getenv("SHARED_RUNTIME");
+
+    // overrides are kept per alarm by the activation rule without repartitioning
+    ActivationRule.overridePartitions =
+        IntermediateTopics.checkCoPartitioned(
+            ProcessingRule.bootstrapServers(), ActivationProducer.TOPIC, OverrideProducer.TOPIC);
 
-    // async
-    rules.add(new ShelveExpirationRule(OverrideProducer.TOPIC, OverrideProducer.TOPIC));
-    rules.add(new OnDelayExpirationRule(OverrideProducer.TOPIC, OverrideProducer.TOPIC));
-
-    // pipelined
-    rules.add(
-        new RegistrationRule(
-            ActionProducer.TOPIC,
-            AlarmProducer.TOPIC,
-            EffectiveRegistrationProducer.TOPIC,
-            "intermediate-registration"));
-    rules.add(
-        new ActivationRule(
-            "intermediate-registration",
-            ActivationProducer.TOPIC,
-            OverrideProducer.TOPIC,
-            "intermediate-activation"));
-    rules.add(
-        new LatchRule("intermediate-activation", "intermediate-latch", OverrideProducer.TOPIC));
-    rules.add(
-        new OnDelayRule("intermediate-latch", "intermediate-ondelay", OverrideProducer.TOPIC));
-    rules.add(
-        new OneShotRule("intermediate-ondelay", "intermediate-oneshot", OverrideProducer.TOPIC));
-    rules.add(
-        new EffectiveStateRule(
-            "intermediate-oneshot",
-            EffectiveNotificationProducer.TOPIC,
-            EffectiveAlarmProducer.TOPIC));
+    if (!Boolean.parseBoolean(fused)) {
+      // intermediate topics are keyed by alarm name and co-partitioned with activations
+      IntermediateTopics.create(
+          ProcessingRule.bootstrapServers(), ActivationProducer.TOPIC, INTERMEDIATE_TOPICS);
+    }
+
+    List<ProcessingRule> all = rules(Boolean.parseBoolean(fused));
+
+    if (Boolean.parseBoolean(shared)) {
+      rules.add(new SharedRuntimeRule(all));
+    } else {
+      rules.addAll(all);
+    }
 
     final CountDownLatch latch = new CountDownLatch(1);
 
@@ -66,6 +122,12 @@ public class EffectiveProcessor {
               }
             });
 
+    try {
+      Metrics.start();
+    } catch (IOException e) {
+      log.warn("Unable to serve metrics", e);
+    }
+
     try {
       for (ProcessingRule rule : rules) {
         rule.start();
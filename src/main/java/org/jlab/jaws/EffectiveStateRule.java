@@ -2,14 +2,11 @@ package org.jlab.jaws;
 
 import static io.confluent.kafka.serializers.AbstractKafkaSchemaSerDeConfig.SCHEMA_REGISTRY_URL_CONFIG;
 
-import io.confluent.kafka.streams.serdes.avro.SpecificAvroSerde;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Properties;
 import org.apache.kafka.common.serialization.Serdes;
-import org.apache.kafka.streams.StreamsBuilder;
 import org.apache.kafka.streams.StreamsConfig;
-import org.apache.kafka.streams.Topology;
 import org.apache.kafka.streams.kstream.*;
 import org.apache.kafka.streams.processor.api.Processor;
 import org.apache.kafka.streams.processor.api.ProcessorContext;
@@ -27,18 +24,22 @@ public class EffectiveStateRule extends ProcessingRule {
 
   private static final Logger log = LoggerFactory.getLogger(EffectiveStateRule.class);
 
+  private static final HeaderProvider HEADERS =
+      new HeaderProvider("jaws-effective-processor-state");
+
+  private static final Trace TRACE = Metrics.trace("state");
+
   public static final Serdes.StringSerde MONOLOG_KEY_SERDE = new Serdes.StringSerde();
-  public static final SpecificAvroSerde<IntermediateMonolog> MONOLOG_VALUE_SERDE =
-      new SpecificAvroSerde<>();
+  public static final MonologSerde MONOLOG_VALUE_SERDE = new MonologSerde();
 
   public static final Serdes.StringSerde EFFECTIVE_ALARM_KEY_SERDE = new Serdes.StringSerde();
-  public static final SpecificAvroSerde<EffectiveAlarm> EFFECTIVE_ALARM_VALUE_SERDE =
-      new SpecificAvroSerde<>();
+  public static final CachingAvroSerde<EffectiveAlarm> EFFECTIVE_ALARM_VALUE_SERDE =
+      new CachingAvroSerde<>(EffectiveAlarm.class);
 
   public static final Serdes.StringSerde EFFECTIVE_NOTIFICATION_KEY_SERDE =
       new Serdes.StringSerde();
-  public static final SpecificAvroSerde<EffectiveNotification> EFFECTIVE_NOTIFICATION_VALUE_SERDE =
-      new SpecificAvroSerde<>();
+  public static final CachingAvroSerde<EffectiveNotification> EFFECTIVE_NOTIFICATION_VALUE_SERDE =
+      new CachingAvroSerde<>(EffectiveNotification.class);
 
   public EffectiveStateRule(
       String inputTopic, String EffectiveNotificationTopic, String effectiveAlarmTopic) {
@@ -58,9 +59,20 @@ public class EffectiveStateRule extends ProcessingRule {
   }
 
   @Override
-  public Topology constructTopology(Properties props) {
-    final StreamsBuilder builder = new StreamsBuilder();
+  void addTopology(TopologySources sources, Properties props) {
+
+    configureSerdes(props);
+
+    final KTable<String, IntermediateMonolog> monologTable =
+        sources.table(
+            inputTopic,
+            Consumed.as("EffectiveState-Monolog-Table")
+                .with(MONOLOG_KEY_SERDE, MONOLOG_VALUE_SERDE));
+
+    addProcessing(monologTable.toStream());
+  }
 
+  void configureSerdes(Properties props) {
     // If you get an unhelpful NullPointerException in the depths of the AVRO deserializer it's
     // likely because you didn't set registry config
     Map<String, String> config = new HashMap<>();
@@ -69,16 +81,21 @@ public class EffectiveStateRule extends ProcessingRule {
     MONOLOG_VALUE_SERDE.configure(config, false);
     EFFECTIVE_ALARM_VALUE_SERDE.configure(config, false);
     EFFECTIVE_NOTIFICATION_VALUE_SERDE.configure(config, false);
+  }
 
-    final KTable<String, IntermediateMonolog> monologTable =
-        builder.table(
-            inputTopic, Consumed.as("Monolog-Table").with(MONOLOG_KEY_SERDE, MONOLOG_VALUE_SERDE));
-
-    final KStream<String, IntermediateMonolog> monologStream = monologTable.toStream();
+  /**
+   * Add the effective state processor and the effective alarm and notification outputs to the
+   * builder.
+   *
+   * @param monologStream The input stream of monologs
+   */
+  void addProcessing(KStream<String, IntermediateMonolog> monologStream) {
+    final RuleMetrics metrics = metrics();
 
     final KStream<String, IntermediateMonolog> calculated =
         monologStream.process(
-            new MyProcessorSupplier(), Named.as("EffectiveStateTransitionProcessor"));
+            metrics.timed("EffectiveStateTransitionProcessor", new MyProcessorSupplier(metrics)),
+            Named.as("EffectiveStateTransitionProcessor"));
 
     final KStream<String, EffectiveAlarm> effectiveAlarms =
         calculated.mapValues(
@@ -110,15 +127,21 @@ public class EffectiveStateRule extends ProcessingRule {
         EffectiveNotificationTopic,
         Produced.as("EFFECTIVE-NOTIFICATIONS-OUTPUT")
             .with(EFFECTIVE_NOTIFICATION_KEY_SERDE, EFFECTIVE_NOTIFICATION_VALUE_SERDE));
-
-    return builder.build();
   }
 
-  private static final class MyProcessorSupplier
+  static final class MyProcessorSupplier
       implements ProcessorSupplier<String, IntermediateMonolog, String, IntermediateMonolog> {
 
-    /** Create a new ProcessorSupplier. */
-    public MyProcessorSupplier() {}
+    private final RuleMetrics metrics;
+
+    /**
+     * Create a new ProcessorSupplier.
+     *
+     * @param metrics The metrics of the rule
+     */
+    public MyProcessorSupplier(RuleMetrics metrics) {
+      this.metrics = metrics;
+    }
 
     /**
      * Return a new {@link Transformer} instance.
@@ -168,6 +191,7 @@ public class EffectiveStateRule extends ProcessingRule {
               || input.value().getTransitions().getUnmasking()) {
 
             // Forward nothing (null output)
+            metrics.dropped();
           } else {
 
             long timestamp = System.currentTimeMillis();
@@ -222,7 +246,8 @@ public class EffectiveStateRule extends ProcessingRule {
 
             output.value().getNotification().setState(state);
 
-            populateHeaders(output);
+            HEADERS.populate(output);
+            TRACE.hop(input, output);
 
             context.forward(output);
           }
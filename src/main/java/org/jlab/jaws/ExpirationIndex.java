@@ -0,0 +1,127 @@
+package org.jlab.jaws;
+
+import java.time.Duration;
+import java.util.*;
+import org.apache.kafka.streams.KeyValue;
+import org.apache.kafka.streams.state.KeyValueIterator;
+import org.apache.kafka.streams.state.KeyValueStore;
+
+/**
+ * Index of pending expirations ordered by expiration time, kept in a persistent key-value store.
+ *
+ * <p>Replaces one repeating punctuator per pending expiration with a single punctuator that polls
+ * this index. The store is backed by a changelog so pending expirations survive restarts and
+ * rebalances; the first poll after either expires everything that came due while the task was not
+ * running.
+ *
+ * <p>The store holds two key families:
+ *
+ * <ul>
+ *   <li>{@code t:<expiration>:<id>} maps to the id of what expires, such as an alarm override. The
+ *       expiration is zero-padded so the byte order of keys is expiration order and due entries are
+ *       found with a range scan.
+ *   <li>{@code n:<id>} maps to the expiration, used to find the entry to cancel or replace.
+ * </ul>
+ *
+ * <p>Scheduling and cancelling are a constant number of store operations and polling scans only the
+ * due entries, so a poll is independent of the number of expirations still pending.
+ */
+public class ExpirationIndex {
+
+  /**
+   * The interval at which the index is polled, configured in milliseconds with the
+   * EXPIRATION_RESOLUTION_MS environment variable. Expirations fire at most this late.
+   */
+  public static final Duration RESOLUTION = Duration.ofMillis(resolutionMillis());
+
+  private static final String BY_TIME = "t:";
+  private static final String BY_ID = "n:";
+
+  private final KeyValueStore<String, String> store;
+
+  /**
+   * Create a new ExpirationIndex.
+   *
+   * @param store The backing store
+   */
+  public ExpirationIndex(KeyValueStore<String, String> store) {
+    this.store = store;
+  }
+
+  /**
+   * Schedule the expiration with the given id, replacing any expiration already scheduled.
+   *
+   * @param id The id
+   * @param expiration The expiration time in milliseconds since the epoch
+   */
+  public void schedule(String id, long expiration) {
+    cancel(id);
+
+    store.putAll(
+        Arrays.asList(
+            KeyValue.pair(BY_ID + id, String.valueOf(expiration)),
+            KeyValue.pair(timeKey(expiration, id), id)));
+  }
+
+  /**
+   * Cancel the expiration with the given id, if any.
+   *
+   * @param id The id
+   * @return true if an expiration was cancelled
+   */
+  public boolean cancel(String id) {
+    String expiration = store.get(BY_ID + id);
+
+    if (expiration != null) {
+      store.putAll(
+          Arrays.asList(
+              KeyValue.pair(BY_ID + id, null),
+              KeyValue.pair(timeKey(Long.parseLong(expiration), id), null)));
+    }
+
+    return expiration != null;
+  }
+
+  /**
+   * Remove and return the ids of all expirations at or before the given time, in expiration order.
+   * The due entries are removed from the store in one batch.
+   *
+   * @param time The time in milliseconds since the epoch
+   * @return The due ids; empty if none
+   */
+  public List<String> pollDue(long time) {
+    List<String> due = new ArrayList<>();
+    List<KeyValue<String, String>> tombstones = new ArrayList<>();
+
+    // ';' follows ':' so the inclusive upper bound includes every id expiring at time
+    try (KeyValueIterator<String, String> iterator =
+        store.range(BY_TIME, BY_TIME + pad(time) + ";")) {
+      while (iterator.hasNext()) {
+        KeyValue<String, String> entry = iterator.next();
+
+        due.add(entry.value);
+        tombstones.add(KeyValue.pair(entry.key, null));
+        tombstones.add(KeyValue.pair(BY_ID + entry.value, null));
+      }
+    }
+
+    if (!tombstones.isEmpty()) {
+      store.putAll(tombstones);
+    }
+
+    return due;
+  }
+
+  private static long resolutionMillis() {
+    String resolution = System.getenv("EXPIRATION_RESOLUTION_MS");
+    return (resolution == null) ? 100 : Long.parseLong(resolution);
+  }
+
+  private static String timeKey(long expiration, String id) {
+    return BY_TIME + pad(expiration) + ":" + id;
+  }
+
+  private static String pad(long time) {
+    return String.format("%019d", time);
+  }
+}
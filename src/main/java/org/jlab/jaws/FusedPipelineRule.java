@@ -0,0 +1,89 @@
+package org.jlab.jaws;
+
+import java.util.Properties;
+import org.apache.kafka.streams.StreamsConfig;
+import org.apache.kafka.streams.kstream.KStream;
+import org.apache.kafka.streams.kstream.KTable;
+import org.apache.kafka.streams.kstream.Named;
+import org.jlab.jaws.entity.IntermediateMonolog;
+
+/**
+ * Streams rule that chains the registration, activation, latch, on-delay, one-shot, and effective
+ * state rules as processors inside a single topology.
+ *
+ * <p>The intermediate monolog is handed from one rule to the next in-memory instead of being
+ * serialized to and from an intermediate topic at every hop. Overrides produced by the latch,
+ * on-delay, and one-shot rules are still written to the overrides topic, which the activation rule
+ * consumes.
+ */
+public class FusedPipelineRule extends ProcessingRule {
+
+  final RegistrationRule registration;
+  final ActivationRule activation;
+  final LatchRule latch;
+  final OnDelayRule ondelay;
+  final OneShotRule oneshot;
+  final EffectiveStateRule effective;
+
+  public FusedPipelineRule(
+      String inputTopicClasses,
+      String inputTopicInstances,
+      String inputTopicActive,
+      String overridesTopic,
+      String outputTopicEffectiveRegistration,
+      String outputTopicEffectiveNotification,
+      String outputTopicEffectiveAlarm) {
+    super(null, null);
+    this.registration =
+        new RegistrationRule(
+            inputTopicClasses, inputTopicInstances, outputTopicEffectiveRegistration, null);
+    this.activation = new ActivationRule(null, inputTopicActive, overridesTopic, null);
+    this.latch = new LatchRule(null, null, overridesTopic);
+    this.ondelay = new OnDelayRule(null, null, overridesTopic);
+    this.oneshot = new OneShotRule(null, null, overridesTopic);
+    this.effective =
+        new EffectiveStateRule(null, outputTopicEffectiveNotification, outputTopicEffectiveAlarm);
+  }
+
+  @Override
+  public Properties constructProperties() {
+    final Properties props = super.constructProperties();
+
+    props.put(StreamsConfig.APPLICATION_ID_CONFIG, "jaws-effective-processor-fused");
+
+    return props;
+  }
+
+  @Override
+  void addTopology(TopologySources sources, Properties props) {
+
+    registration.configureSerdes(props);
+    activation.configureSerdes(props);
+    latch.configureSerdes(props);
+    ondelay.configureSerdes(props);
+    oneshot.configureSerdes(props);
+    effective.configureSerdes(props);
+
+    final KTable<String, IntermediateMonolog> registered =
+        registration.addRegistrationTable(sources);
+
+    registration.addEffectiveRegistrationOutput(registered);
+
+    final KStream<String, IntermediateMonolog> activated =
+        activation.addProcessing(sources, registered.toStream(Named.as("Fused-Registered-Stream")));
+
+    // The latch, on-delay, and one-shot rules take lazy monologs, which here wrap decoded ones
+    final KStream<String, LazyMonolog> lazy =
+        activated.mapValues(LazyMonolog::of, Named.as("Fused-Lazy-Monolog"));
+
+    final KStream<String, LazyMonolog> latched = latch.addProcessing(sources, lazy);
+
+    final KStream<String, LazyMonolog> ondelayed = ondelay.addProcessing(sources, latched);
+
+    final KStream<String, LazyMonolog> oneshotted = oneshot.addProcessing(sources, ondelayed);
+
+    effective.addProcessing(
+        oneshotted.mapValues(
+            value -> (value == null) ? null : value.get(), Named.as("Fused-Monolog")));
+  }
+}
@@ -0,0 +1,93 @@
+package org.jlab.jaws;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.charset.StandardCharsets;
+import org.apache.kafka.common.header.Header;
+import org.apache.kafka.common.header.internals.RecordHeader;
+import org.apache.kafka.streams.processor.api.Record;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Adds the user, producer, and host headers to records.
+ *
+ * <p>The header values are resolved and encoded once when the provider is created instead of for
+ * every record; notably the host name lookup may require a DNS round trip. Header instances are
+ * shared by all records since neither their key nor value is ever modified.
+ */
+public class HeaderProvider {
+
+  private static final Logger log = LoggerFactory.getLogger(HeaderProvider.class);
+
+  private static final Header[] NONE = new Header[0];
+
+  private final Header[] headers;
+
+  /**
+   * Create a new HeaderProvider.
+   *
+   * @param producer The producer header value, which identifies the rule
+   */
+  public HeaderProvider(String producer) {
+    this(producer, true);
+  }
+
+  private HeaderProvider(String producer, boolean enabled) {
+    if (enabled) {
+      headers =
+          new Header[] {
+            header("user", System.getProperty("user.name")),
+            header("producer", producer),
+            header("host", Host.NAME)
+          };
+    } else {
+      headers = NONE;
+    }
+  }
+
+  /**
+   * Create a new HeaderProvider for records written to internal intermediate topics, which adds no
+   * headers if the INTERMEDIATE_HEADERS environment variable is false.
+   *
+   * @param producer The producer header value, which identifies the rule
+   * @return The HeaderProvider
+   */
+  public static HeaderProvider intermediate(String producer) {
+    String enabled = System.getenv("INTERMEDIATE_HEADERS");
+
+    return new HeaderProvider(producer, enabled == null || Boolean.parseBoolean(enabled));
+  }
+
+  /**
+   * Add the headers to a record.
+   *
+   * @param record The record
+   */
+  public void populate(Record<?, ?> record) {
+    for (Header header : headers) {
+      record.headers().add(header);
+    }
+  }
+
+  private static Header header(String key, String value) {
+    return new RecordHeader(key, value.getBytes(StandardCharsets.UTF_8));
+  }
+
+  /** Holder of the host name, which is looked up on first use only. */
+  private static final class Host {
+    static final String NAME = lookup();
+
+    private static String lookup() {
+      String host = "unknown";
+
+      try {
+        host = InetAddress.getLocalHost().getHostName();
+      } catch (UnknownHostException e) {
+        log.debug("Unable to obtain host name");
+      }
+
+      return host;
+    }
+  }
+}
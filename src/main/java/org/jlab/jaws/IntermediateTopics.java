@@ -0,0 +1,162 @@
+package org.jlab.jaws;
+
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import org.apache.kafka.clients.admin.Admin;
+import org.apache.kafka.clients.admin.AdminClientConfig;
+import org.apache.kafka.clients.admin.NewTopic;
+import org.apache.kafka.clients.admin.TopicDescription;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Creates the intermediate topics that connect the pipelined rules.
+ *
+ * <p>Intermediate topics are keyed by alarm name and may have many partitions since the rules only
+ * require records of the same alarm to be ordered. The activation rule joins the registration
+ * intermediate topic with the activations topic so both must have the same number of partitions (be
+ * co-partitioned). The partition count is therefore always the activations topic partition count;
+ * the INTERMEDIATE_PARTITIONS environment variable, if set, must agree with it.
+ */
+public final class IntermediateTopics {
+
+  private static final Logger log = LoggerFactory.getLogger(IntermediateTopics.class);
+
+  private IntermediateTopics() {}
+
+  /**
+   * Create the intermediate topics that do not yet exist, with the partition count of the partition
+   * source topic. Nothing is created unless every existing intermediate topic has that partition
+   * count.
+   *
+   * @param bootstrapServers The Kafka bootstrap servers
+   * @param partitionSourceTopic The topic the intermediate topics must be co-partitioned with
+   * @param topics The intermediate topic names
+   * @throws IllegalStateException If the partition source topic does not exist, or an existing
+   *     intermediate topic or INTERMEDIATE_PARTITIONS does not match its partition count
+   */
+  public static void create(
+      String bootstrapServers, String partitionSourceTopic, Collection<String> topics) {
+    Properties props = new Properties();
+    props.put(AdminClientConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
+
+    try (Admin admin = Admin.create(props)) {
+      create(admin, System.getenv("INTERMEDIATE_PARTITIONS"), partitionSourceTopic, topics);
+    } catch (InterruptedException | ExecutionException e) {
+      throw new RuntimeException("Unable to create intermediate topics", e);
+    }
+  }
+
+  static void create(
+      Admin admin, String configured, String partitionSourceTopic, Collection<String> topics)
+      throws ExecutionException, InterruptedException {
+    Set<String> existing = admin.listTopics().names().get();
+
+    int partitions = partitionCount(admin, existing, configured, partitionSourceTopic);
+
+    List<NewTopic> missing = new ArrayList<>();
+
+    for (String topic : topics) {
+      if (existing.contains(topic)) {
+        int actual = describe(admin, topic).partitions().size();
+
+        if (actual != partitions) {
+          throw new IllegalStateException(
+              "Topic "
+                  + topic
+                  + " has "
+                  + actual
+                  + " partitions, but must have the "
+                  + partitions
+                  + " of "
+                  + partitionSourceTopic);
+        }
+      } else {
+        missing.add(new NewTopic(topic, Optional.of(partitions), Optional.empty()));
+      }
+    }
+
+    if (!missing.isEmpty()) {
+      log.info("Creating intermediate topics {} with {} partitions", missing, partitions);
+
+      admin.createTopics(missing).all().get();
+    }
+  }
+
+  /**
+   * Check that the given topics have the same number of partitions, such that records of the same
+   * alarm are consumed by the same task. Kafka Streams does not check this for topics joined by
+   * processors sharing stores, so a mismatch would silently join records of different alarms.
+   *
+   * @param bootstrapServers The Kafka bootstrap servers
+   * @param topic The topic
+   * @param other The topic that must be co-partitioned with the first
+   * @return The partition count of both topics, or 0 if either does not exist yet
+   * @throws IllegalStateException If the topics do not have the same number of partitions
+   */
+  public static int checkCoPartitioned(String bootstrapServers, String topic, String other) {
+    Properties props = new Properties();
+    props.put(AdminClientConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
+
+    try (Admin admin = Admin.create(props)) {
+      return checkCoPartitioned(admin, topic, other);
+    } catch (InterruptedException | ExecutionException e) {
+      throw new RuntimeException("Unable to check partitions of " + topic + " and " + other, e);
+    }
+  }
+
+  static int checkCoPartitioned(Admin admin, String topic, String other)
+      throws ExecutionException, InterruptedException {
+    Set<String> existing = admin.listTopics().names().get();
+
+    if (!existing.contains(topic) || !existing.contains(other)) {
+      return 0;
+    }
+
+    int partitions = describe(admin, topic).partitions().size();
+    int otherPartitions = describe(admin, other).partitions().size();
+
+    if (partitions != otherPartitions) {
+      throw new IllegalStateException(
+          "Topic "
+              + other
+              + " has "
+              + otherPartitions
+              + " partitions, but "
+              + topic
+              + " has "
+              + partitions
+              + "; they must be co-partitioned");
+    }
+
+    return partitions;
+  }
+
+  private static int partitionCount(
+      Admin admin, Set<String> existing, String configured, String sourceTopic)
+      throws ExecutionException, InterruptedException {
+    if (!existing.contains(sourceTopic)) {
+      throw new IllegalStateException(
+          "Topic " + sourceTopic + " not found; intermediate topics are co-partitioned with it");
+    }
+
+    int partitions = describe(admin, sourceTopic).partitions().size();
+
+    if (configured != null && Integer.parseInt(configured) != partitions) {
+      throw new IllegalStateException(
+          "INTERMEDIATE_PARTITIONS is "
+              + configured
+              + ", but must be the "
+              + partitions
+              + " partitions of "
+              + sourceTopic);
+    }
+
+    return partitions;
+  }
+
+  private static TopicDescription describe(Admin admin, String topic)
+      throws ExecutionException, InterruptedException {
+    return admin.describeTopics(List.of(topic)).allTopicNames().get().get(topic);
+  }
+}
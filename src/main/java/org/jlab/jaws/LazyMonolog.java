@@ -0,0 +1,243 @@
+package org.jlab.jaws;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.apache.avro.Schema;
+import org.apache.avro.generic.GenericDatumReader;
+import org.apache.avro.generic.GenericRecord;
+import org.apache.avro.io.BinaryDecoder;
+import org.apache.avro.io.DecoderFactory;
+import org.apache.kafka.common.errors.SerializationException;
+import org.jlab.jaws.entity.IntermediateMonolog;
+
+/**
+ * An IntermediateMonolog that is decoded only as far as needed, for the rules that forward most
+ * monologs unchanged (latch, on-delay, and one-shot).
+ *
+ * <p>A monolog read from an intermediate topic keeps its serialized bytes. The fields these rules
+ * decide on are read with a projection of the monolog schema, which skips over everything else
+ * without materializing it, and the bytes are written out again as is unless the monolog is
+ * modified. Only a modified monolog is fully decoded and re-encoded.
+ */
+public final class LazyMonolog {
+
+  /** The monolog fields read by the accessors, as dot separated paths. */
+  static final List<String> PROJECTED_FIELDS =
+      Arrays.asList(
+          "registration.action.latchable",
+          "registration.action.ondelayseconds",
+          "notification.overrides.latched",
+          "notification.overrides.ondelayed",
+          "notification.overrides.shelved.oneshot",
+          "transitions");
+
+  /** The schema of the projected fields, with which the writer schema resolves. */
+  static final Schema PROJECTION = project(IntermediateMonolog.getClassSchema(), PROJECTED_FIELDS);
+
+  private static final MonologSerde SERDE = new MonologSerde();
+
+  private static final ThreadLocal<Codec> CODEC = ThreadLocal.withInitial(Codec::new);
+
+  private byte[] bytes;
+  private IntermediateMonolog monolog;
+  private GenericRecord projection;
+
+  private LazyMonolog(byte[] bytes, IntermediateMonolog monolog) {
+    this.bytes = bytes;
+    this.monolog = monolog;
+  }
+
+  /**
+   * Return a LazyMonolog of an already decoded monolog.
+   *
+   * @param monolog The monolog, may be null
+   * @return The LazyMonolog, or null if the monolog is null
+   */
+  public static LazyMonolog of(IntermediateMonolog monolog) {
+    return (monolog == null) ? null : new LazyMonolog(null, monolog);
+  }
+
+  /**
+   * Return a LazyMonolog of a monolog serialized with the current {@link MonologSerde} format and
+   * the compiled schema.
+   *
+   * @param bytes The serialized monolog
+   * @return The LazyMonolog
+   */
+  static LazyMonolog wrap(byte[] bytes) {
+    return new LazyMonolog(bytes, null);
+  }
+
+  /**
+   * Return the serialized form the monolog was read from, or null if there is none or the monolog
+   * has been modified since.
+   *
+   * @return The serialized monolog or null
+   */
+  byte[] bytes() {
+    return bytes;
+  }
+
+  /**
+   * Return the fully decoded monolog for reading; use {@link #modify()} to change it.
+   *
+   * @return The monolog
+   */
+  public IntermediateMonolog get() {
+    if (monolog == null) {
+      monolog = SERDE.deserializer().deserialize(null, bytes);
+    }
+
+    return monolog;
+  }
+
+  /**
+   * Return the fully decoded monolog for modification, such that it is encoded anew on output.
+   *
+   * @return The monolog
+   */
+  public IntermediateMonolog modify() {
+    IntermediateMonolog modified = get();
+
+    bytes = null;
+    projection = null;
+
+    return modified;
+  }
+
+  public boolean isLatchable() {
+    return Boolean.TRUE.equals(field("registration", "action", "latchable"));
+  }
+
+  /**
+   * Return the registered on-delay.
+   *
+   * @return The on-delay seconds, or 0 if none
+   */
+  public long getOndelayseconds() {
+    Object seconds = field("registration", "action", "ondelayseconds");
+
+    return (seconds == null) ? 0 : ((Number) seconds).longValue();
+  }
+
+  public boolean isLatched() {
+    return field("notification", "overrides", "latched") != null;
+  }
+
+  public boolean isOndelayed() {
+    return field("notification", "overrides", "ondelayed") != null;
+  }
+
+  public boolean isOneshotShelved() {
+    return Boolean.TRUE.equals(field("notification", "overrides", "shelved", "oneshot"));
+  }
+
+  public boolean isTransitionToActive() {
+    return Boolean.TRUE.equals(field("transitions", "transitionToActive"));
+  }
+
+  public boolean isTransitionToNormal() {
+    return Boolean.TRUE.equals(field("transitions", "transitionToNormal"));
+  }
+
+  @Override
+  public String toString() {
+    return get().toString();
+  }
+
+  /**
+   * Return a nested field of the decoded monolog if any, else of the projection, which both are
+   * navigated as generic records.
+   */
+  private Object field(String... path) {
+    Object value = (monolog != null) ? monolog : projection();
+
+    for (String name : path) {
+      if (value == null) {
+        return null;
+      }
+
+      value = ((GenericRecord) value).get(name);
+    }
+
+    return value;
+  }
+
+  private GenericRecord projection() {
+    if (projection == null) {
+      Codec codec = CODEC.get();
+
+      codec.decoder =
+          DecoderFactory.get()
+              .binaryDecoder(
+                  bytes,
+                  MonologSerde.HEADER_LENGTH,
+                  bytes.length - MonologSerde.HEADER_LENGTH,
+                  codec.decoder);
+
+      try {
+        projection = codec.reader.read(null, codec.decoder);
+      } catch (IOException e) {
+        throw new SerializationException("Unable to deserialize IntermediateMonolog fields", e);
+      }
+    }
+
+    return projection;
+  }
+
+  /**
+   * Return a projection of a record schema with only the given fields; a path naming a record keeps
+   * it whole. Records keep their full names so the original schema resolves with the projection.
+   *
+   * @param schema The schema
+   * @param paths The dot separated paths of the fields to keep
+   * @return The projection
+   */
+  static Schema project(Schema schema, List<String> paths) {
+    switch (schema.getType()) {
+      case RECORD:
+        List<Schema.Field> fields = new ArrayList<>();
+
+        for (Schema.Field field : schema.getFields()) {
+          List<String> nested = new ArrayList<>();
+          boolean whole = false;
+
+          for (String path : paths) {
+            if (path.equals(field.name())) {
+              whole = true;
+            } else if (path.startsWith(field.name() + ".")) {
+              nested.add(path.substring(field.name().length() + 1));
+            }
+          }
+
+          if (whole) {
+            fields.add(new Schema.Field(field, field.schema()));
+          } else if (!nested.isEmpty()) {
+            fields.add(new Schema.Field(field.name(), project(field.schema(), nested)));
+          }
+        }
+
+        return Schema.createRecord(
+            schema.getName(), schema.getDoc(), schema.getNamespace(), schema.isError(), fields);
+      case UNION:
+        List<Schema> types = new ArrayList<>();
+
+        for (Schema type : schema.getTypes()) {
+          types.add(project(type, paths));
+        }
+
+        return Schema.createUnion(types);
+      default:
+        return schema;
+    }
+  }
+
+  /** The per thread, reusable decoding state. */
+  private static final class Codec {
+    final GenericDatumReader<GenericRecord> reader =
+        new GenericDatumReader<>(IntermediateMonolog.getClassSchema(), PROJECTION);
+    BinaryDecoder decoder;
+  }
+}
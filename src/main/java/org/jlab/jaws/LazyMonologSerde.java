@@ -0,0 +1,57 @@
+package org.jlab.jaws;
+
+import java.util.Map;
+import org.apache.kafka.common.serialization.Deserializer;
+import org.apache.kafka.common.serialization.Serde;
+import org.apache.kafka.common.serialization.Serializer;
+
+/**
+ * Serde of {@link LazyMonolog}s in the {@link MonologSerde} format, which defers decoding to the
+ * LazyMonolog and writes an unmodified monolog out as the bytes it was read from.
+ *
+ * <p>Records in an older format, or written with another schema, are decoded with the MonologSerde
+ * right away.
+ */
+public class LazyMonologSerde implements Serde<LazyMonolog> {
+
+  private final MonologSerde monologs = new MonologSerde();
+
+  private final Serializer<LazyMonolog> serializer =
+      (topic, data) -> {
+        if (data == null) {
+          return null;
+        }
+
+        byte[] bytes = data.bytes();
+
+        return (bytes != null) ? bytes : monologs.serializer().serialize(topic, data.get());
+      };
+
+  private final Deserializer<LazyMonolog> deserializer =
+      (topic, data) -> {
+        if (data == null) {
+          return null;
+        }
+
+        if (MonologSerde.isCurrent(data)) {
+          return LazyMonolog.wrap(data);
+        }
+
+        return LazyMonolog.of(monologs.deserializer().deserialize(topic, data));
+      };
+
+  @Override
+  public void configure(Map<String, ?> configs, boolean isKey) {
+    monologs.configure(configs, isKey);
+  }
+
+  @Override
+  public Serializer<LazyMonolog> serializer() {
+    return serializer;
+  }
+
+  @Override
+  public Deserializer<LazyMonolog> deserializer() {
+    return deserializer;
+  }
+}
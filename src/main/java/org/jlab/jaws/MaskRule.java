@@ -2,23 +2,18 @@ package org.jlab.jaws;
 
 import static io.confluent.kafka.serializers.AbstractKafkaSchemaSerDeConfig.SCHEMA_REGISTRY_URL_CONFIG;
 
-import io.confluent.kafka.streams.serdes.avro.SpecificAvroSerde;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Properties;
 import org.apache.kafka.common.serialization.Serdes;
 import org.apache.kafka.streams.KeyValue;
-import org.apache.kafka.streams.StreamsBuilder;
 import org.apache.kafka.streams.StreamsConfig;
-import org.apache.kafka.streams.Topology;
 import org.apache.kafka.streams.kstream.*;
 import org.apache.kafka.streams.processor.api.Processor;
 import org.apache.kafka.streams.processor.api.ProcessorContext;
 import org.apache.kafka.streams.processor.api.ProcessorSupplier;
 import org.apache.kafka.streams.processor.api.Record;
 import org.apache.kafka.streams.state.KeyValueStore;
-import org.apache.kafka.streams.state.StoreBuilder;
-import org.apache.kafka.streams.state.Stores;
 import org.jlab.jaws.entity.*;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -31,19 +26,20 @@ public class MaskRule extends ProcessingRule {
 
   private static final Logger log = LoggerFactory.getLogger(MaskRule.class);
 
+  private static final HeaderProvider HEADERS =
+      HeaderProvider.intermediate("jaws-effective-processor-mask");
+
+  private static final Trace TRACE = Metrics.trace("mask");
+
   String overridesOutputTopic;
 
   public static final Serdes.StringSerde MONOLOG_KEY_SERDE = new Serdes.StringSerde();
-  public static final SpecificAvroSerde<IntermediateMonolog> MONOLOG_VALUE_SERDE =
-      new SpecificAvroSerde<>();
+  public static final MonologSerde MONOLOG_VALUE_SERDE = new MonologSerde();
 
-  public static final SpecificAvroSerde<AlarmOverrideKey> OVERRIDE_KEY_SERDE =
-      new SpecificAvroSerde<>();
-  public static final SpecificAvroSerde<AlarmOverrideUnion> OVERRIDE_VALUE_SERDE =
-      new SpecificAvroSerde<>();
-
-  public static final Serdes.StringSerde MASK_STORE_KEY_SERDE = new Serdes.StringSerde();
-  public static final Serdes.StringSerde MASK_STORE_VALUE_SERDE = new Serdes.StringSerde();
+  public static final CachingAvroSerde<AlarmOverrideKey> OVERRIDE_KEY_SERDE =
+      new CachingAvroSerde<>(AlarmOverrideKey.class);
+  public static final CachingAvroSerde<AlarmOverrideUnion> OVERRIDE_VALUE_SERDE =
+      new CachingAvroSerde<>(AlarmOverrideUnion.class);
 
   public MaskRule(String inputTopic, String outputTopic, String overridesOutputTopic) {
     super(inputTopic, outputTopic);
@@ -60,9 +56,7 @@ public class MaskRule extends ProcessingRule {
   }
 
   @Override
-  public Topology constructTopology(Properties props) {
-    final StreamsBuilder builder = new StreamsBuilder();
-
+  void addTopology(TopologySources sources, Properties props) {
     // If you get an unhelpful NullPointerException in the depths of the AVRO deserializer it's
     // likely because you didn't set registry config
     Map<String, String> config = new HashMap<>();
@@ -74,11 +68,14 @@ public class MaskRule extends ProcessingRule {
     OVERRIDE_VALUE_SERDE.configure(config, false);
 
     final KTable<String, IntermediateMonolog> monologTable =
-        builder.table(
-            inputTopic, Consumed.as("Monolog-Table").with(MONOLOG_KEY_SERDE, MONOLOG_VALUE_SERDE));
+        sources.table(
+            inputTopic,
+            Consumed.as("Mask-Monolog-Table").with(MONOLOG_KEY_SERDE, MONOLOG_VALUE_SERDE));
 
     final KStream<String, IntermediateMonolog> monologStream = monologTable.toStream();
 
+    final RuleMetrics metrics = metrics();
+
     // TODO: Foreign key join on maskedBy field?  Parent active/normal status part of computation
     // Computing parent effective state might be too much (parent overrides) - just use actual
     // parent active or not?
@@ -100,6 +97,7 @@ public class MaskRule extends ProcessingRule {
               @Override
               public KeyValue<AlarmOverrideKey, AlarmOverrideUnion> apply(
                   String key, IntermediateMonolog value) {
+                metrics.overrideEmitted();
                 return new KeyValue<>(
                     new AlarmOverrideKey(key, OverriddenAlarmType.Masked),
                     new AlarmOverrideUnion(new MaskedOverride()));
@@ -108,7 +106,9 @@ public class MaskRule extends ProcessingRule {
 
     maskOverrides.to(
         overridesOutputTopic,
-        Produced.as("Mask-Overrides").with(OVERRIDE_KEY_SERDE, OVERRIDE_VALUE_SERDE));
+        Produced.as("Mask-Overrides")
+            .with(OVERRIDE_KEY_SERDE, OVERRIDE_VALUE_SERDE)
+            .withStreamPartitioner(new AlarmNamePartitioner()));
 
     KStream<String, IntermediateMonolog> unmaskOverrideMonolog =
         monologStream.filter(
@@ -128,33 +128,28 @@ public class MaskRule extends ProcessingRule {
               @Override
               public KeyValue<AlarmOverrideKey, AlarmOverrideUnion> apply(
                   String key, IntermediateMonolog value) {
+                metrics.overrideEmitted();
                 return new KeyValue<>(new AlarmOverrideKey(key, OverriddenAlarmType.Masked), null);
               }
             });
 
     unmaskOverrides.to(
         overridesOutputTopic,
-        Produced.as("Unmask-Overrides").with(OVERRIDE_KEY_SERDE, OVERRIDE_VALUE_SERDE));
-
-    final StoreBuilder<KeyValueStore<String, String>> storeBuilder =
-        Stores.keyValueStoreBuilder(
-                Stores.persistentKeyValueStore("MaskStateStore"),
-                MASK_STORE_KEY_SERDE,
-                MASK_STORE_VALUE_SERDE)
-            .withCachingEnabled();
+        Produced.as("Unmask-Overrides")
+            .with(OVERRIDE_KEY_SERDE, OVERRIDE_VALUE_SERDE)
+            .withStreamPartitioner(new AlarmNamePartitioner()));
 
-    builder.addStateStore(storeBuilder);
+    sources.addStateStore(TransitionFlags.storeBuilder());
 
     final KStream<String, IntermediateMonolog> passthrough =
         monologStream.process(
-            new MyProcessorSupplier(storeBuilder.name()),
+            metrics.timed(
+                "MaskTransitionProcessor", new MyProcessorSupplier(TransitionFlags.STORE_NAME)),
             Named.as("MaskTransitionProcessor"),
-            storeBuilder.name());
+            TransitionFlags.STORE_NAME);
 
     passthrough.to(
         outputTopic, Produced.as("Mask-Passthrough").with(MONOLOG_KEY_SERDE, MONOLOG_VALUE_SERDE));
-
-    return builder.build();
   }
 
   private static final class MyProcessorSupplier
@@ -179,7 +174,7 @@ public class MaskRule extends ProcessingRule {
     @Override
     public Processor<String, IntermediateMonolog, String, IntermediateMonolog> get() {
       return new Processor<>() {
-        private KeyValueStore<String, String> store;
+        private KeyValueStore<String, Byte> store;
         private ProcessorContext<String, IntermediateMonolog> context;
 
         @Override
@@ -192,6 +187,8 @@ public class MaskRule extends ProcessingRule {
         public void process(Record<String, IntermediateMonolog> input) {
           System.err.println("Processing key = " + input.key() + ", value = " + input.value());
 
+          byte flags = TransitionFlags.get(store, input.key());
+
           // TODO: store and compute both masking and unmasking state
           boolean masking = false;
           boolean unmasking = false;
@@ -199,7 +196,7 @@ public class MaskRule extends ProcessingRule {
           if (input.value().getNotification().getOverrides().getMasked() != null) {
 
             // Check if already mask in-progress
-            masking = store.get(input.key()) != null;
+            masking = TransitionFlags.isSet(flags, TransitionFlags.MASKING);
 
             // Check if we need to mask
             boolean needToMask = input.value().getTransitions().getTransitionToActive();
@@ -209,7 +206,7 @@ public class MaskRule extends ProcessingRule {
             }
           }
 
-          store.put(input.key(), masking ? "y" : null);
+          TransitionFlags.update(store, input.key(), flags, TransitionFlags.MASKING, masking);
 
           if (masking) { // Update transition state
             // value.getTransitions().setMasking(true);
@@ -220,7 +217,8 @@ public class MaskRule extends ProcessingRule {
           Record<String, IntermediateMonolog> output =
               new Record<>(input.key(), input.value(), timestamp);
 
-          populateHeaders(output);
+          HEADERS.populate(output);
+          TRACE.hop(input, output);
 
           context.forward(output);
         }
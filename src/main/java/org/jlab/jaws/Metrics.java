@@ -0,0 +1,390 @@
+package org.jlab.jaws;
+
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import org.HdrHistogram.Histogram;
+import org.apache.kafka.common.Metric;
+import org.apache.kafka.common.MetricName;
+import org.apache.kafka.streams.KafkaStreams;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Exports the metrics of all rules of the process in the Prometheus text format over HTTP at
+ * {@value #PATH}, on the port configured with the METRICS_PORT environment variable.
+ *
+ * <p>The export has the counters and process() latency of each rule, see {@link RuleMetrics}, the
+ * latency of each pipeline stage, see {@link Trace}, the RocksDB memory usage, the readiness of the
+ * process, and every numeric Kafka Streams, consumer, producer, and admin client metric of every
+ * Kafka Streams instance, named kafka_GROUP_NAME and labeled with the application id and the metric
+ * tags. Latency quantiles are of the calls since the previous export, so the endpoint should have
+ * one scraper.
+ */
+public class Metrics {
+
+  private static final Logger log = LoggerFactory.getLogger(Metrics.class);
+
+  /** The HTTP path of the export. */
+  public static final String PATH = "/metrics";
+
+  /** The content type of the Prometheus text format. */
+  public static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+  private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999, 1.0};
+
+  private static final double NANOS_PER_SECOND = 1e9;
+
+  private static final Map<String, RuleMetrics> RULES = new ConcurrentSkipListMap<>();
+
+  private static final Map<String, Trace> TRACES = new ConcurrentSkipListMap<>();
+
+  private static final Map<String, KafkaStreams> STREAMS = new ConcurrentSkipListMap<>();
+
+  private Metrics() {}
+
+  /**
+   * Return the metrics of a rule, creating them on first use.
+   *
+   * @param rule The rule name
+   * @return The rule metrics
+   */
+  public static RuleMetrics forRule(String rule) {
+    return RULES.computeIfAbsent(rule, RuleMetrics::new);
+  }
+
+  /**
+   * Return the trace of a stage of the pipeline, creating it on first use.
+   *
+   * @param stage The stage name
+   * @return The trace
+   */
+  public static Trace trace(String stage) {
+    return TRACES.computeIfAbsent(stage, Trace::new);
+  }
+
+  /**
+   * Export the client metrics of a Kafka Streams instance, replacing any instance of the same
+   * application.
+   *
+   * @param applicationId The application id
+   * @param streams The Kafka Streams instance
+   */
+  public static void register(String applicationId, KafkaStreams streams) {
+    STREAMS.put(applicationId, streams);
+  }
+
+  /**
+   * Stop exporting the client metrics of an application.
+   *
+   * @param applicationId The application id
+   */
+  public static void unregister(String applicationId) {
+    STREAMS.remove(applicationId);
+  }
+
+  /**
+   * Serve the export on the port configured with the METRICS_PORT environment variable, unless 0.
+   *
+   * @return The server, or null if disabled
+   * @throws IOException If the port can not be bound
+   */
+  public static HttpServer start() throws IOException {
+    String port = System.getenv("METRICS_PORT");
+
+    int number = (port == null) ? 8080 : Integer.parseInt(port);
+
+    return (number == 0) ? null : serve(number);
+  }
+
+  /**
+   * Serve the export on the given port.
+   *
+   * @param port The port, or 0 for any free port
+   * @return The server
+   * @throws IOException If the port can not be bound
+   */
+  static HttpServer serve(int port) throws IOException {
+    HttpServer server = HttpServer.create(new InetSocketAddress(port), 0);
+
+    server.createContext(
+        PATH,
+        exchange -> {
+          byte[] body = scrape().getBytes(StandardCharsets.UTF_8);
+
+          exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+          exchange.sendResponseHeaders(200, body.length);
+
+          try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+          }
+        });
+
+    server.start();
+
+    log.info("Serving metrics at port {} path {}", server.getAddress().getPort(), PATH);
+
+    return server;
+  }
+
+  /**
+   * Return the export.
+   *
+   * @return The metrics in the Prometheus text format
+   */
+  public static String scrape() {
+    Families families = new Families();
+
+    for (RuleMetrics rule : RULES.values()) {
+      String labels = labels("rule", rule.rule());
+
+      families.add(
+          "jaws_rule_records_in_total",
+          "counter",
+          "Records processed by the processors of a rule",
+          labels,
+          rule.recordsIn.sum());
+      families.add(
+          "jaws_rule_records_out_total",
+          "counter",
+          "Records forwarded by the processors of a rule",
+          labels,
+          rule.recordsOut.sum());
+      families.add(
+          "jaws_rule_records_dropped_total",
+          "counter",
+          "Records consumed by a rule without forwarding, such as intermediate monologs",
+          labels,
+          rule.recordsDropped.sum());
+      families.add(
+          "jaws_rule_overrides_emitted_total",
+          "counter",
+          "Overrides written by a rule",
+          labels,
+          rule.overridesEmitted.sum());
+      families.add(
+          "jaws_rule_partition_mismatches_total",
+          "counter",
+          "Records consumed from a partition other than the partition of their alarm",
+          labels,
+          rule.partitionMismatches.sum());
+
+      for (Map.Entry<String, RuleMetrics.Latency> entry : rule.latencies().entrySet()) {
+        addLatency(
+            families,
+            "jaws_rule_process_latency_seconds",
+            "Latency of process() calls of a processor of a rule",
+            entry.getValue(),
+            "rule",
+            rule.rule(),
+            "processor",
+            entry.getKey());
+      }
+    }
+
+    for (Trace trace : TRACES.values()) {
+      addLatency(
+          families,
+          "jaws_trace_hop_latency_seconds",
+          "Latency of a pipeline stage since the previous stage forwarded the update",
+          trace.sincePrevious,
+          "stage",
+          trace.stage());
+      addLatency(
+          families,
+          "jaws_trace_latency_seconds",
+          "Latency of a pipeline stage since the update entered the pipeline",
+          trace.sinceOrigin,
+          "stage",
+          trace.stage());
+    }
+
+    BoundedRocksDBConfig.MemoryMXBean memory = BoundedRocksDBConfig.memory();
+
+    families.add(
+        "jaws_rocksdb_block_cache_capacity_bytes",
+        "gauge",
+        "Memory budget of all RocksDB stores",
+        "",
+        memory.getBlockCacheCapacity());
+    families.add(
+        "jaws_rocksdb_block_cache_usage_bytes",
+        "gauge",
+        "Memory in use by all RocksDB stores",
+        "",
+        memory.getBlockCacheUsage());
+    families.add(
+        "jaws_rocksdb_block_cache_pinned_usage_bytes",
+        "gauge",
+        "Memory of all RocksDB stores that can not be evicted",
+        "",
+        memory.getBlockCachePinnedUsage());
+    families.add(
+        "jaws_rocksdb_write_buffer_capacity_bytes",
+        "gauge",
+        "Part of the memory budget for memtables",
+        "",
+        memory.getWriteBufferCapacity());
+
+    families.add(
+        "jaws_ready",
+        "gauge",
+        "1 if every rule is running with its stores restored",
+        "",
+        Readiness.isReady() ? 1 : 0);
+
+    for (Map.Entry<String, KafkaStreams> entry : STREAMS.entrySet()) {
+      addClientMetrics(families, entry.getKey(), entry.getValue());
+    }
+
+    return families.toString();
+  }
+
+  private static void addLatency(
+      Families families,
+      String name,
+      String help,
+      RuleMetrics.Latency latency,
+      String... namesAndValues) {
+    Histogram interval = latency.interval();
+
+    for (double quantile : QUANTILES) {
+      double value =
+          (interval.getTotalCount() == 0)
+              ? Double.NaN
+              : interval.getValueAtPercentile(quantile * 100) / NANOS_PER_SECOND;
+
+      String[] quantileLabels = Arrays.copyOf(namesAndValues, namesAndValues.length + 2);
+
+      quantileLabels[namesAndValues.length] = "quantile";
+      quantileLabels[namesAndValues.length + 1] = Double.toString(quantile);
+
+      families.add(name, "summary", help, labels(quantileLabels), value);
+    }
+
+    String labels = labels(namesAndValues);
+
+    families.sample(name, name + "_count", labels, latency.count());
+    families.sample(name, name + "_sum", labels, latency.sumNanos() / NANOS_PER_SECOND);
+  }
+
+  private static void addClientMetrics(
+      Families families, String applicationId, KafkaStreams streams) {
+    for (Map.Entry<MetricName, ? extends Metric> entry : streams.metrics().entrySet()) {
+      Object value = entry.getValue().metricValue();
+
+      if (!(value instanceof Number)) {
+        continue;
+      }
+
+      MetricName metricName = entry.getKey();
+
+      String[] labels = new String[2 + metricName.tags().size() * 2];
+
+      labels[0] = "application_id";
+      labels[1] = applicationId;
+
+      int i = 2;
+
+      for (Map.Entry<String, String> tag : metricName.tags().entrySet()) {
+        labels[i++] = sanitize(tag.getKey());
+        labels[i++] = tag.getValue();
+      }
+
+      families.add(
+          sanitize("kafka_" + metricName.group() + "_" + metricName.name()),
+          "untyped",
+          metricName.description(),
+          labels(labels),
+          ((Number) value).doubleValue());
+    }
+  }
+
+  private static String sanitize(String name) {
+    return name.replaceAll("[^a-zA-Z0-9_]", "_");
+  }
+
+  private static String labels(String... namesAndValues) {
+    StringBuilder labels = new StringBuilder("{");
+
+    for (int i = 0; i < namesAndValues.length; i = i + 2) {
+      if (i > 0) {
+        labels.append(',');
+      }
+
+      labels
+          .append(namesAndValues[i])
+          .append("=\"")
+          .append(
+              namesAndValues[i + 1]
+                  .replace("\\", "\\\\")
+                  .replace("\"", "\\\"")
+                  .replace("\n", "\\n"))
+          .append('"');
+    }
+
+    return labels.append('}').toString();
+  }
+
+  private static String format(double value) {
+    if (Double.isNaN(value)) {
+      return "NaN";
+    } else if (Double.isInfinite(value)) {
+      return (value > 0) ? "+Inf" : "-Inf";
+    } else if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+      return Long.toString((long) value);
+    }
+
+    return Double.toString(value);
+  }
+
+  /** Metric families by name, each with its samples, since the samples of a family are adjacent. */
+  private static final class Families {
+    private final Map<String, StringBuilder> families = new LinkedHashMap<>();
+
+    void add(String name, String type, String help, String labels, double value) {
+      families.computeIfAbsent(
+          name,
+          n ->
+              new StringBuilder()
+                  .append("# HELP ")
+                  .append(n)
+                  .append(' ')
+                  .append(help.replace("\\", "\\\\").replace("\n", "\\n"))
+                  .append("\n# TYPE ")
+                  .append(n)
+                  .append(' ')
+                  .append(type)
+                  .append('\n'));
+
+      sample(name, name, labels, value);
+    }
+
+    void sample(String family, String name, String labels, double value) {
+      families
+          .get(family)
+          .append(name)
+          .append(labels)
+          .append(' ')
+          .append(format(value))
+          .append('\n');
+    }
+
+    @Override
+    public String toString() {
+      StringBuilder export = new StringBuilder();
+
+      for (StringBuilder family : families.values()) {
+        export.append(family);
+      }
+
+      return export.toString();
+    }
+  }
+}
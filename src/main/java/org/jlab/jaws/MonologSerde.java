@@ -0,0 +1,230 @@
+package org.jlab.jaws;
+
+import io.confluent.kafka.streams.serdes.avro.SpecificAvroSerde;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import org.apache.avro.Schema;
+import org.apache.avro.SchemaNormalization;
+import org.apache.avro.SchemaParseException;
+import org.apache.avro.io.BinaryDecoder;
+import org.apache.avro.io.BinaryEncoder;
+import org.apache.avro.io.DecoderFactory;
+import org.apache.avro.io.EncoderFactory;
+import org.apache.avro.specific.SpecificDatumReader;
+import org.apache.avro.specific.SpecificDatumWriter;
+import org.apache.kafka.common.config.ConfigException;
+import org.apache.kafka.common.errors.SerializationException;
+import org.apache.kafka.common.serialization.Deserializer;
+import org.apache.kafka.common.serialization.Serde;
+import org.apache.kafka.common.serialization.Serializer;
+import org.jlab.jaws.entity.IntermediateMonolog;
+
+/**
+ * Compact binary serde for the IntermediateMonolog records of the internal intermediate topics and
+ * state stores, which only this processor reads.
+ *
+ * <p>Records are a format version byte, the 64-bit Avro parsing fingerprint of the writer schema in
+ * big-endian order, and the Avro binary encoding of the monolog with that schema. Records are
+ * written with the compiled IntermediateMonolog schema. Records of an unknown writer schema, such
+ * as those written by a newer release, fail to deserialize rather than being decoded as garbage.
+ * Unlike the Confluent serde there is no schema registry lookup and no generic decoding. Encoders,
+ * decoders, and the output buffer are reused per thread since one serde instance is shared by all
+ * stream threads.
+ *
+ * <p>Records of an earlier release, still in an intermediate topic or state store after an upgrade
+ * that changed the IntermediateMonolog schema, are resolved against the compiled schema if the
+ * schema of that release is in a file listed in the MONOLOG_WRITER_SCHEMAS environment variable.
+ * Otherwise such an upgrade requires an application reset.
+ *
+ * <p>Records starting with the Confluent magic byte, such as those written to an intermediate topic
+ * before this serde was introduced, are read with the Confluent serde when configured with a schema
+ * registry.
+ */
+public class MonologSerde implements Serde<IntermediateMonolog> {
+
+  /** The current format version, written as the first byte of every record. */
+  public static final byte VERSION = 2;
+
+  /** The fingerprint of the compiled schema, with which records are written. */
+  static final long FINGERPRINT = fingerprint(IntermediateMonolog.getClassSchema());
+
+  /** The version byte and writer schema fingerprint that precede the Avro encoding. */
+  private static final byte[] HEADER =
+      ByteBuffer.allocate(1 + Long.BYTES).put(VERSION).putLong(FINGERPRINT).array();
+
+  /** The length of the header of a record in the current format. */
+  static final int HEADER_LENGTH = HEADER.length;
+
+  /** The writer schemas records can be read with, by fingerprint. */
+  private static final Map<Long, Schema> WRITER_SCHEMAS = new ConcurrentHashMap<>();
+
+  static {
+    WRITER_SCHEMAS.put(FINGERPRINT, IntermediateMonolog.getClassSchema());
+  }
+
+  /** The first byte of records written by the Confluent Avro serializer. */
+  static final byte CONFLUENT_MAGIC_BYTE = 0;
+
+  private static final ThreadLocal<Codec> CODEC = ThreadLocal.withInitial(Codec::new);
+
+  private final SpecificAvroSerde<IntermediateMonolog> legacy = new SpecificAvroSerde<>();
+  private boolean legacyConfigured = false;
+
+  private final Serializer<IntermediateMonolog> serializer = new MonologSerializer();
+  private final Deserializer<IntermediateMonolog> deserializer = new MonologDeserializer();
+
+  /**
+   * Add the writer schemas that records can be read with, such as the IntermediateMonolog schema of
+   * an earlier release, from Avro schema files. Records written with them are resolved against the
+   * compiled schema.
+   *
+   * @param files The comma separated paths of the schema files, or null for none
+   * @throws ConfigException If a file can not be read or parsed
+   */
+  static void addWriterSchemas(String files) {
+    if (files == null || files.isBlank()) {
+      return;
+    }
+
+    for (String file : files.split(",")) {
+      try {
+        Schema schema = new Schema.Parser().parse(new File(file.trim()));
+
+        WRITER_SCHEMAS.put(fingerprint(schema), schema);
+      } catch (IOException | SchemaParseException e) {
+        throw new ConfigException("MONOLOG_WRITER_SCHEMAS", file, e.getMessage());
+      }
+    }
+  }
+
+  /**
+   * Return whether a record is in the current format and written with the compiled schema, such
+   * that it can be decoded from {@link #HEADER_LENGTH} on without schema resolution.
+   *
+   * @param data The serialized record
+   * @return true if current
+   */
+  static boolean isCurrent(byte[] data) {
+    return data.length >= HEADER_LENGTH
+        && Arrays.equals(data, 0, HEADER_LENGTH, HEADER, 0, HEADER_LENGTH);
+  }
+
+  private static long fingerprint(Schema schema) {
+    return SchemaNormalization.parsingFingerprint64(schema);
+  }
+
+  @Override
+  public void configure(Map<String, ?> configs, boolean isKey) {
+    addWriterSchemas(System.getenv("MONOLOG_WRITER_SCHEMAS"));
+
+    legacy.configure(configs, isKey);
+    legacyConfigured = true;
+  }
+
+  @Override
+  public Serializer<IntermediateMonolog> serializer() {
+    return serializer;
+  }
+
+  @Override
+  public Deserializer<IntermediateMonolog> deserializer() {
+    return deserializer;
+  }
+
+  /** The per thread, reusable encoding state. */
+  private static final class Codec {
+    final SpecificDatumWriter<IntermediateMonolog> writer =
+        new SpecificDatumWriter<>(IntermediateMonolog.class);
+    final SpecificDatumReader<IntermediateMonolog> reader =
+        new SpecificDatumReader<>(IntermediateMonolog.class);
+    final ByteArrayOutputStream buffer = new ByteArrayOutputStream(1024);
+    BinaryEncoder encoder;
+    BinaryDecoder decoder;
+  }
+
+  private final class MonologSerializer implements Serializer<IntermediateMonolog> {
+    @Override
+    public byte[] serialize(String topic, IntermediateMonolog data) {
+      if (data == null) {
+        return null;
+      }
+
+      Codec codec = CODEC.get();
+
+      codec.buffer.reset();
+      codec.buffer.write(HEADER, 0, HEADER_LENGTH);
+
+      codec.encoder = EncoderFactory.get().directBinaryEncoder(codec.buffer, codec.encoder);
+
+      try {
+        codec.writer.write(data, codec.encoder);
+      } catch (IOException e) {
+        throw new SerializationException("Unable to serialize IntermediateMonolog", e);
+      }
+
+      return codec.buffer.toByteArray();
+    }
+  }
+
+  private final class MonologDeserializer implements Deserializer<IntermediateMonolog> {
+    @Override
+    public IntermediateMonolog deserialize(String topic, byte[] data) {
+      if (data == null) {
+        return null;
+      }
+
+      if (data.length > 0 && data[0] == CONFLUENT_MAGIC_BYTE && legacyConfigured) {
+        return legacy.deserializer().deserialize(topic, data);
+      }
+
+      if (isCurrent(data)) {
+        return read(CODEC.get().reader, data, HEADER_LENGTH);
+      }
+
+      if (data.length == 0 || data[0] != VERSION) {
+        throw new SerializationException(
+            "Unknown IntermediateMonolog format version: " + (data.length == 0 ? "none" : data[0]));
+      }
+
+      if (data.length < HEADER_LENGTH) {
+        throw new SerializationException("Truncated IntermediateMonolog header");
+      }
+
+      long fingerprint = ByteBuffer.wrap(data, 1, Long.BYTES).getLong();
+
+      Schema writer = WRITER_SCHEMAS.get(fingerprint);
+
+      if (writer == null) {
+        throw new SerializationException(
+            String.format(
+                "IntermediateMonolog written with unknown schema fingerprint %016x, the compiled"
+                    + " schema is %016x; the writer schema must be in MONOLOG_WRITER_SCHEMAS",
+                fingerprint, FINGERPRINT));
+      }
+
+      return read(
+          new SpecificDatumReader<>(writer, IntermediateMonolog.getClassSchema()),
+          data,
+          HEADER_LENGTH);
+    }
+
+    private IntermediateMonolog read(
+        SpecificDatumReader<IntermediateMonolog> reader, byte[] data, int offset) {
+      Codec codec = CODEC.get();
+
+      codec.decoder =
+          DecoderFactory.get().binaryDecoder(data, offset, data.length - offset, codec.decoder);
+
+      try {
+        return reader.read(null, codec.decoder);
+      } catch (IOException e) {
+        throw new SerializationException("Unable to deserialize IntermediateMonolog", e);
+      }
+    }
+  }
+}
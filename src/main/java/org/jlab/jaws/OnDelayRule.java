@@ -2,23 +2,18 @@ package org.jlab.jaws;
 
 import static io.confluent.kafka.serializers.AbstractKafkaSchemaSerDeConfig.SCHEMA_REGISTRY_URL_CONFIG;
 
-import io.confluent.kafka.streams.serdes.avro.SpecificAvroSerde;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Properties;
 import org.apache.kafka.common.serialization.Serdes;
 import org.apache.kafka.streams.KeyValue;
-import org.apache.kafka.streams.StreamsBuilder;
 import org.apache.kafka.streams.StreamsConfig;
-import org.apache.kafka.streams.Topology;
 import org.apache.kafka.streams.kstream.*;
 import org.apache.kafka.streams.processor.api.Processor;
 import org.apache.kafka.streams.processor.api.ProcessorContext;
 import org.apache.kafka.streams.processor.api.ProcessorSupplier;
 import org.apache.kafka.streams.processor.api.Record;
 import org.apache.kafka.streams.state.KeyValueStore;
-import org.apache.kafka.streams.state.StoreBuilder;
-import org.apache.kafka.streams.state.Stores;
 import org.jlab.jaws.entity.*;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -28,19 +23,21 @@ public class OnDelayRule extends ProcessingRule {
 
   private static final Logger log = LoggerFactory.getLogger(OnDelayRule.class);
 
+  private static final HeaderProvider HEADERS =
+      HeaderProvider.intermediate("jaws-effective-processor-ondelay");
+
+  private static final Trace TRACE = Metrics.trace("ondelay");
+
   String overridesOutputTopic;
 
   public static final Serdes.StringSerde MONOLOG_KEY_SERDE = new Serdes.StringSerde();
-  public static final SpecificAvroSerde<IntermediateMonolog> MONOLOG_VALUE_SERDE =
-      new SpecificAvroSerde<>();
-
-  public static final SpecificAvroSerde<AlarmOverrideKey> OVERRIDE_KEY_SERDE =
-      new SpecificAvroSerde<>();
-  public static final SpecificAvroSerde<AlarmOverrideUnion> OVERRIDE_VALUE_SERDE =
-      new SpecificAvroSerde<>();
+  public static final MonologSerde MONOLOG_VALUE_SERDE = new MonologSerde();
+  public static final LazyMonologSerde LAZY_MONOLOG_VALUE_SERDE = new LazyMonologSerde();
 
-  public static final Serdes.StringSerde ONDELAY_STORE_KEY_SERDE = new Serdes.StringSerde();
-  public static final Serdes.StringSerde ONDELAY_STORE_VALUE_SERDE = new Serdes.StringSerde();
+  public static final CachingAvroSerde<AlarmOverrideKey> OVERRIDE_KEY_SERDE =
+      new CachingAvroSerde<>(AlarmOverrideKey.class);
+  public static final CachingAvroSerde<AlarmOverrideUnion> OVERRIDE_VALUE_SERDE =
+      new CachingAvroSerde<>(AlarmOverrideUnion.class);
 
   public OnDelayRule(String inputTopic, String outputTopic, String overridesOutputTopic) {
     super(inputTopic, outputTopic);
@@ -57,48 +54,66 @@ public class OnDelayRule extends ProcessingRule {
   }
 
   @Override
-  public Topology constructTopology(Properties props) {
-    final StreamsBuilder builder = new StreamsBuilder();
+  void addTopology(TopologySources sources, Properties props) {
+
+    configureSerdes(props);
+
+    final KTable<String, LazyMonolog> monologTable =
+        sources.table(
+            inputTopic,
+            Consumed.as("OnDelay-Monolog-Table").with(MONOLOG_KEY_SERDE, LAZY_MONOLOG_VALUE_SERDE));
+
+    final KStream<String, LazyMonolog> passthrough =
+        addProcessing(sources, monologTable.toStream());
+
+    passthrough.to(
+        outputTopic,
+        Produced.as("OnDelay-Passthrough").with(MONOLOG_KEY_SERDE, LAZY_MONOLOG_VALUE_SERDE));
+  }
 
+  void configureSerdes(Properties props) {
     // If you get an unhelpful NullPointerException in the depths of the AVRO deserializer it's
     // likely because you didn't set registry config
     Map<String, String> config = new HashMap<>();
     config.put(SCHEMA_REGISTRY_URL_CONFIG, props.getProperty(SCHEMA_REGISTRY_URL_CONFIG));
 
     MONOLOG_VALUE_SERDE.configure(config, false);
+    LAZY_MONOLOG_VALUE_SERDE.configure(config, false);
 
     OVERRIDE_KEY_SERDE.configure(config, true);
     OVERRIDE_VALUE_SERDE.configure(config, false);
+  }
 
-    final KTable<String, IntermediateMonolog> monologTable =
-        builder.table(
-            inputTopic, Consumed.as("Monolog-Table").with(MONOLOG_KEY_SERDE, MONOLOG_VALUE_SERDE));
-
-    final KStream<String, IntermediateMonolog> monologStream = monologTable.toStream();
-
-    KStream<String, IntermediateMonolog> ondelayOverrideMonolog =
+  /**
+   * Add the override output and the transition processor to the topology.
+   *
+   * @param sources The topology sources
+   * @param monologStream The input stream of monologs
+   * @return The passthrough stream of monologs
+   */
+  KStream<String, LazyMonolog> addProcessing(
+      TopologySources sources, KStream<String, LazyMonolog> monologStream) {
+    final RuleMetrics metrics = metrics();
+
+    KStream<String, LazyMonolog> ondelayOverrideMonolog =
         monologStream.filter(
-            new Predicate<String, IntermediateMonolog>() {
+            new Predicate<String, LazyMonolog>() {
               @Override
-              public boolean test(String key, IntermediateMonolog value) {
-                log.debug("Filtering: " + key + ", value: " + value);
-                return value.getRegistration().getAction() != null
-                    && value.getRegistration().getAction().getOndelayseconds() != null
-                    && value.getRegistration().getAction().getOndelayseconds() > 0
-                    && value.getTransitions().getTransitionToActive();
+              public boolean test(String key, LazyMonolog value) {
+                log.debug("Filtering: {}, value: {}", key, value);
+                return value.getOndelayseconds() > 0 && value.isTransitionToActive();
               }
             });
 
     KStream<AlarmOverrideKey, AlarmOverrideUnion> ondelayOverrides =
         ondelayOverrideMonolog.map(
             new KeyValueMapper<
-                String, IntermediateMonolog, KeyValue<AlarmOverrideKey, AlarmOverrideUnion>>() {
+                String, LazyMonolog, KeyValue<AlarmOverrideKey, AlarmOverrideUnion>>() {
               @Override
               public KeyValue<AlarmOverrideKey, AlarmOverrideUnion> apply(
-                  String key, IntermediateMonolog value) {
-                Long expiration =
-                    System.currentTimeMillis()
-                        + (value.getRegistration().getAction().getOndelayseconds() * 1000);
+                  String key, LazyMonolog value) {
+                Long expiration = System.currentTimeMillis() + (value.getOndelayseconds() * 1000);
+                metrics.overrideEmitted();
                 return new KeyValue<>(
                     new AlarmOverrideKey(key, OverriddenAlarmType.OnDelayed),
                     new AlarmOverrideUnion(new OnDelayedOverride(expiration)));
@@ -107,34 +122,24 @@ public class OnDelayRule extends ProcessingRule {
 
     ondelayOverrides.to(
         overridesOutputTopic,
-        Produced.as("OnDelay-Overrides").with(OVERRIDE_KEY_SERDE, OVERRIDE_VALUE_SERDE));
+        Produced.as("OnDelay-Overrides")
+            .with(OVERRIDE_KEY_SERDE, OVERRIDE_VALUE_SERDE)
+            .withStreamPartitioner(new AlarmNamePartitioner()));
 
-    final StoreBuilder<KeyValueStore<String, String>> storeBuilder =
-        Stores.keyValueStoreBuilder(
-                Stores.persistentKeyValueStore("OnDelayStateStore"),
-                ONDELAY_STORE_KEY_SERDE,
-                ONDELAY_STORE_VALUE_SERDE)
-            .withCachingEnabled();
+    sources.addStateStore(TransitionFlags.storeBuilder());
 
-    builder.addStateStore(storeBuilder);
-
-    final KStream<String, IntermediateMonolog> passthrough =
+    final KStream<String, LazyMonolog> passthrough =
         monologStream.process(
-            new MyProcessorSupplier(storeBuilder.name()),
+            metrics.timed(
+                "OnDelayTransitionProcessor", new MyProcessorSupplier(TransitionFlags.STORE_NAME)),
             Named.as("OnDelayTransitionProcessor"),
-            storeBuilder.name());
+            TransitionFlags.STORE_NAME);
 
-    passthrough.to(
-        outputTopic,
-        Produced.as("OnDelay-Passthrough").with(MONOLOG_KEY_SERDE, MONOLOG_VALUE_SERDE));
-
-    Topology top = builder.build();
-
-    return top;
+    return passthrough;
   }
 
-  private static final class MyProcessorSupplier
-      implements ProcessorSupplier<String, IntermediateMonolog, String, IntermediateMonolog> {
+  static final class MyProcessorSupplier
+      implements ProcessorSupplier<String, LazyMonolog, String, LazyMonolog> {
 
     private final String storeName;
 
@@ -153,47 +158,38 @@ public class OnDelayRule extends ProcessingRule {
      * @return a new {@link Processor} instance
      */
     @Override
-    public Processor<String, IntermediateMonolog, String, IntermediateMonolog> get() {
+    public Processor<String, LazyMonolog, String, LazyMonolog> get() {
       return new Processor<>() {
-        private KeyValueStore<String, String> store;
-        private ProcessorContext<String, IntermediateMonolog> context;
+        private KeyValueStore<String, Byte> store;
+        private ProcessorContext<String, LazyMonolog> context;
 
         @Override
-        public void init(ProcessorContext<String, IntermediateMonolog> context) {
+        public void init(ProcessorContext<String, LazyMonolog> context) {
           this.context = context;
           this.store = context.getStateStore(storeName);
         }
 
         @Override
-        public void process(Record<String, IntermediateMonolog> input) {
-          log.debug(
-              "Processing key = {}, value = \n\tAlarm: {}\n\tAction: {}\n\tAct: {}\n\tOver: {}\n\tTrans: {}",
-              input.key(),
-              input.value().getRegistration().getAlarm(),
-              input.value().getRegistration().getAction(),
-              input.value().getNotification().getActivation(),
-              input.value().getNotification().getOverrides(),
-              input.value().getTransitions());
+        public void process(Record<String, LazyMonolog> input) {
+          log.debug("Processing key = {}, value = {}", input.key(), input.value());
 
           long timestamp = System.currentTimeMillis();
 
-          Record<String, IntermediateMonolog> output =
-              new Record<>(input.key(), input.value(), timestamp);
+          Record<String, LazyMonolog> output = new Record<>(input.key(), input.value(), timestamp);
 
           // Skip the filter unless ondelay is registered
-          if (output.value().getRegistration().getAction() != null
-              && output.value().getRegistration().getAction().getOndelayseconds() != null
-              && output.value().getRegistration().getAction().getOndelayseconds() > 0) {
+          if (output.value().getOndelayseconds() > 0) {
+
+            byte flags = TransitionFlags.get(store, output.key());
 
             // Check if already ondelay in-progress
-            boolean ondelaying = store.get(output.key()) != null;
+            boolean ondelaying = TransitionFlags.isSet(flags, TransitionFlags.ONDELAYING);
 
             // Check if ondelayed
-            boolean ondelayed =
-                output.value().getNotification().getOverrides().getOndelayed() != null;
+            boolean ondelayed = output.value().isOndelayed();
 
             // Check if we need to ondelay
-            boolean needToOnDelay = output.value().getTransitions().getTransitionToActive();
+            boolean needToOnDelay = output.value().isTransitionToActive();
 
             if (ondelayed) {
               ondelaying = false;
@@ -202,17 +198,19 @@ public class OnDelayRule extends ProcessingRule {
             }
 
             if (ondelaying) { // Update transition state
-              output.value().getTransitions().setOndelaying(true);
+              output.value().modify().getTransitions().setOndelaying(true);
             }
 
             log.debug("ondelayed: {}", ondelayed);
             log.debug("needToOnDelay: {}", needToOnDelay);
             log.debug("ondelaying: {}", ondelaying);
 
-            store.put(output.key(), ondelaying ? "y" : null);
+            TransitionFlags.update(
+                store, output.key(), flags, TransitionFlags.ONDELAYING, ondelaying);
           }
 
-          populateHeaders(output);
+          HEADERS.populate(output);
+          TRACE.hop(input, output);
 
           context.forward(output);
         }
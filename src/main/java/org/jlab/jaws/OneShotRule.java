@@ -2,23 +2,18 @@ package org.jlab.jaws;
 
 import static io.confluent.kafka.serializers.AbstractKafkaSchemaSerDeConfig.SCHEMA_REGISTRY_URL_CONFIG;
 
-import io.confluent.kafka.streams.serdes.avro.SpecificAvroSerde;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Properties;
 import org.apache.kafka.common.serialization.Serdes;
 import org.apache.kafka.streams.KeyValue;
-import org.apache.kafka.streams.StreamsBuilder;
 import org.apache.kafka.streams.StreamsConfig;
-import org.apache.kafka.streams.Topology;
 import org.apache.kafka.streams.kstream.*;
 import org.apache.kafka.streams.processor.api.Processor;
 import org.apache.kafka.streams.processor.api.ProcessorContext;
 import org.apache.kafka.streams.processor.api.ProcessorSupplier;
 import org.apache.kafka.streams.processor.api.Record;
 import org.apache.kafka.streams.state.KeyValueStore;
-import org.apache.kafka.streams.state.StoreBuilder;
-import org.apache.kafka.streams.state.Stores;
 import org.jlab.jaws.entity.*;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -28,19 +23,21 @@ public class OneShotRule extends ProcessingRule {
 
   private static final Logger log = LoggerFactory.getLogger(OneShotRule.class);
 
+  private static final HeaderProvider HEADERS =
+      HeaderProvider.intermediate("jaws-effective-processor-oneshot");
+
+  private static final Trace TRACE = Metrics.trace("oneshot");
+
   String overridesOutputTopic;
 
   public static final Serdes.StringSerde MONOLOG_KEY_SERDE = new Serdes.StringSerde();
-  public static final SpecificAvroSerde<IntermediateMonolog> MONOLOG_VALUE_SERDE =
-      new SpecificAvroSerde<>();
-
-  public static final SpecificAvroSerde<AlarmOverrideKey> OVERRIDE_KEY_SERDE =
-      new SpecificAvroSerde<>();
-  public static final SpecificAvroSerde<AlarmOverrideUnion> OVERRIDE_VALUE_SERDE =
-      new SpecificAvroSerde<>();
+  public static final MonologSerde MONOLOG_VALUE_SERDE = new MonologSerde();
+  public static final LazyMonologSerde LAZY_MONOLOG_VALUE_SERDE = new LazyMonologSerde();
 
-  public static final Serdes.StringSerde ONESHOT_STORE_KEY_SERDE = new Serdes.StringSerde();
-  public static final Serdes.StringSerde ONESHOT_STORE_VALUE_SERDE = new Serdes.StringSerde();
+  public static final CachingAvroSerde<AlarmOverrideKey> OVERRIDE_KEY_SERDE =
+      new CachingAvroSerde<>(AlarmOverrideKey.class);
+  public static final CachingAvroSerde<AlarmOverrideUnion> OVERRIDE_VALUE_SERDE =
+      new CachingAvroSerde<>(AlarmOverrideUnion.class);
 
   public OneShotRule(String inputTopic, String outputTopic, String overridesOutputTopic) {
     super(inputTopic, outputTopic);
@@ -57,76 +54,89 @@ public class OneShotRule extends ProcessingRule {
   }
 
   @Override
-  public Topology constructTopology(Properties props) {
-    final StreamsBuilder builder = new StreamsBuilder();
+  void addTopology(TopologySources sources, Properties props) {
+
+    configureSerdes(props);
+
+    final KTable<String, LazyMonolog> monologTable =
+        sources.table(
+            inputTopic,
+            Consumed.as("OneShot-Monolog-Table").with(MONOLOG_KEY_SERDE, LAZY_MONOLOG_VALUE_SERDE));
+
+    final KStream<String, LazyMonolog> passthrough =
+        addProcessing(sources, monologTable.toStream());
+
+    passthrough.to(
+        outputTopic,
+        Produced.as("Oneshot-Passthrough").with(MONOLOG_KEY_SERDE, LAZY_MONOLOG_VALUE_SERDE));
+  }
 
+  void configureSerdes(Properties props) {
     // If you get an unhelpful NullPointerException in the depths of the AVRO deserializer it's
     // likely because you didn't set registry config
     Map<String, String> config = new HashMap<>();
     config.put(SCHEMA_REGISTRY_URL_CONFIG, props.getProperty(SCHEMA_REGISTRY_URL_CONFIG));
 
     MONOLOG_VALUE_SERDE.configure(config, false);
+    LAZY_MONOLOG_VALUE_SERDE.configure(config, false);
 
     OVERRIDE_KEY_SERDE.configure(config, true);
     OVERRIDE_VALUE_SERDE.configure(config, false);
+  }
 
-    final KTable<String, IntermediateMonolog> monologTable =
-        builder.table(
-            inputTopic, Consumed.as("Monolog-Table").with(MONOLOG_KEY_SERDE, MONOLOG_VALUE_SERDE));
-
-    final KStream<String, IntermediateMonolog> monologStream = monologTable.toStream();
-
-    KStream<String, IntermediateMonolog> oneshotOverrideMonolog =
+  /**
+   * Add the override output and the transition processor to the topology.
+   *
+   * @param sources The topology sources
+   * @param monologStream The input stream of monologs
+   * @return The passthrough stream of monologs
+   */
+  KStream<String, LazyMonolog> addProcessing(
+      TopologySources sources, KStream<String, LazyMonolog> monologStream) {
+    final RuleMetrics metrics = metrics();
+
+    KStream<String, LazyMonolog> oneshotOverrideMonolog =
         monologStream.filter(
-            new Predicate<String, IntermediateMonolog>() {
+            new Predicate<String, LazyMonolog>() {
               @Override
-              public boolean test(String key, IntermediateMonolog value) {
-                log.debug("Filtering: " + key + ", value: " + value);
-                return value.getNotification().getOverrides().getShelved() != null
-                    && value.getNotification().getOverrides().getShelved().getOneshot()
-                    && value.getTransitions().getTransitionToNormal();
+              public boolean test(String key, LazyMonolog value) {
+                log.debug("Filtering: {}, value: {}", key, value);
+                return value.isOneshotShelved() && value.isTransitionToNormal();
               }
             });
 
     KStream<AlarmOverrideKey, AlarmOverrideUnion> oneshotOverrides =
         oneshotOverrideMonolog.map(
             new KeyValueMapper<
-                String, IntermediateMonolog, KeyValue<AlarmOverrideKey, AlarmOverrideUnion>>() {
+                String, LazyMonolog, KeyValue<AlarmOverrideKey, AlarmOverrideUnion>>() {
               @Override
               public KeyValue<AlarmOverrideKey, AlarmOverrideUnion> apply(
-                  String key, IntermediateMonolog value) {
+                  String key, LazyMonolog value) {
+                metrics.overrideEmitted();
                 return new KeyValue<>(new AlarmOverrideKey(key, OverriddenAlarmType.Shelved), null);
               }
             });
 
     oneshotOverrides.to(
         overridesOutputTopic,
-        Produced.as("Oneshot-Overrides").with(OVERRIDE_KEY_SERDE, OVERRIDE_VALUE_SERDE));
-
-    final StoreBuilder<KeyValueStore<String, String>> storeBuilder =
-        Stores.keyValueStoreBuilder(
-                Stores.persistentKeyValueStore("OneShotStateStore"),
-                ONESHOT_STORE_KEY_SERDE,
-                ONESHOT_STORE_VALUE_SERDE)
-            .withCachingEnabled();
+        Produced.as("Oneshot-Overrides")
+            .with(OVERRIDE_KEY_SERDE, OVERRIDE_VALUE_SERDE)
+            .withStreamPartitioner(new AlarmNamePartitioner()));
 
-    builder.addStateStore(storeBuilder);
+    sources.addStateStore(TransitionFlags.storeBuilder());
 
-    final KStream<String, IntermediateMonolog> passthrough =
+    final KStream<String, LazyMonolog> passthrough =
         monologStream.process(
-            new MyProcessorSupplier(storeBuilder.name()),
+            metrics.timed(
+                "OneShotTransitionProcessor", new MyProcessorSupplier(TransitionFlags.STORE_NAME)),
             Named.as("OneShotTransitionProcessor"),
-            storeBuilder.name());
+            TransitionFlags.STORE_NAME);
 
-    passthrough.to(
-        outputTopic,
-        Produced.as("Oneshot-Passthrough").with(MONOLOG_KEY_SERDE, MONOLOG_VALUE_SERDE));
-
-    return builder.build();
+    return passthrough;
   }
 
-  private static final class MyProcessorSupplier
-      implements ProcessorSupplier<String, IntermediateMonolog, String, IntermediateMonolog> {
+  static final class MyProcessorSupplier
+      implements ProcessorSupplier<String, LazyMonolog, String, LazyMonolog> {
 
     private final String storeName;
 
@@ -145,49 +155,50 @@ public class OneShotRule extends ProcessingRule {
      * @return a new {@link Processor} instance
      */
     @Override
-    public Processor<String, IntermediateMonolog, String, IntermediateMonolog> get() {
+    public Processor<String, LazyMonolog, String, LazyMonolog> get() {
       return new Processor<>() {
-        private KeyValueStore<String, String> store;
-        private ProcessorContext<String, IntermediateMonolog> context;
+        private KeyValueStore<String, Byte> store;
+        private ProcessorContext<String, LazyMonolog> context;
 
         @Override
-        public void init(ProcessorContext<String, IntermediateMonolog> context) {
+        public void init(ProcessorContext<String, LazyMonolog> context) {
           this.context = context;
           this.store = context.getStateStore(storeName);
         }
 
         @Override
-        public void process(Record<String, IntermediateMonolog> input) {
-          log.debug("Processing key = " + input.key() + ", value = " + input.value());
+        public void process(Record<String, LazyMonolog> input) {
+          log.debug("Processing key = {}, value = {}", input.key(), input.value());
+
+          byte flags = TransitionFlags.get(store, input.key());
 
           boolean unshelving = false;
 
           // Skip the filter unless oneshot is set
-          if (input.value().getNotification().getOverrides().getShelved() != null
-              && input.value().getNotification().getOverrides().getShelved().getOneshot()) {
+          if (input.value().isOneshotShelved()) {
 
             // Check if already unshelving in-progress
-            unshelving = store.get(input.key()) != null;
+            unshelving = TransitionFlags.isSet(flags, TransitionFlags.UNSHELVING);
 
             // Check if we need to unshelve
-            boolean needToUnshelve = input.value().getTransitions().getTransitionToNormal();
+            boolean needToUnshelve = input.value().isTransitionToNormal();
 
             if (needToUnshelve) {
               unshelving = true;
             }
           }
 
-          store.put(input.key(), unshelving ? "y" : null);
+          TransitionFlags.update(store, input.key(), flags, TransitionFlags.UNSHELVING, unshelving);
 
           long timestamp = System.currentTimeMillis();
 
-          Record<String, IntermediateMonolog> output =
-              new Record<>(input.key(), input.value(), timestamp);
+          Record<String, LazyMonolog> output = new Record<>(input.key(), input.value(), timestamp);
 
-          populateHeaders(output);
+          HEADERS.populate(output);
+          TRACE.hop(input, output);
 
           if (unshelving) { // Update transition state
-            output.value().getTransitions().setUnshelving(true);
+            output.value().modify().getTransitions().setUnshelving(true);
           }
 
           context.forward(output);
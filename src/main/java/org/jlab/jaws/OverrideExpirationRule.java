@@ -0,0 +1,276 @@
+package org.jlab.jaws;
+
+import static io.confluent.kafka.serializers.AbstractKafkaSchemaSerDeConfig.SCHEMA_REGISTRY_URL_CONFIG;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.function.Function;
+import org.apache.kafka.common.serialization.Serdes;
+import org.apache.kafka.streams.StreamsConfig;
+import org.apache.kafka.streams.kstream.Consumed;
+import org.apache.kafka.streams.kstream.KStream;
+import org.apache.kafka.streams.kstream.Predicate;
+import org.apache.kafka.streams.kstream.Produced;
+import org.apache.kafka.streams.processor.PunctuationType;
+import org.apache.kafka.streams.processor.api.Processor;
+import org.apache.kafka.streams.processor.api.ProcessorContext;
+import org.apache.kafka.streams.processor.api.ProcessorSupplier;
+import org.apache.kafka.streams.processor.api.Record;
+import org.apache.kafka.streams.state.KeyValueStore;
+import org.apache.kafka.streams.state.StoreBuilder;
+import org.apache.kafka.streams.state.Stores;
+import org.jlab.jaws.entity.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Expires every override type with an expiration (Shelved, OnDelayed, and OffDelayed) using a
+ * single consumer of the overrides topic and a single index of pending expirations.
+ *
+ * <p>Every new record for an alarm override replaces (or with a tombstone cancels) the pending
+ * expiration of that alarm and override type. For example, every time a new transition to active is
+ * encountered OnDelayRule creates a new OnDelayedOverride, and we cancel the previous expiration if
+ * present and start anew. We never cancel an expiration just because the alarm transitioned to
+ * normal (not active), so ondelay overrides persist until expiration UNLESS a new activation
+ * replaces it.
+ */
+public class OverrideExpirationRule extends ProcessingRule {
+
+  private static final Logger log = LoggerFactory.getLogger(OverrideExpirationRule.class);
+
+  private static final HeaderProvider HEADERS =
+      new HeaderProvider("jaws-effective-processor-expiration");
+
+  public static final CachingAvroSerde<AlarmOverrideKey> INPUT_KEY_SERDE =
+      new CachingAvroSerde<>(AlarmOverrideKey.class);
+  public static final CachingAvroSerde<AlarmOverrideUnion> INPUT_VALUE_SERDE =
+      new CachingAvroSerde<>(AlarmOverrideUnion.class);
+  public static final CachingAvroSerde<AlarmOverrideKey> OUTPUT_KEY_SERDE = INPUT_KEY_SERDE;
+  public static final CachingAvroSerde<AlarmOverrideUnion> OUTPUT_VALUE_SERDE = INPUT_VALUE_SERDE;
+
+  public static final Serdes.StringSerde EXPIRATION_STORE_KEY_SERDE = new Serdes.StringSerde();
+  public static final Serdes.StringSerde EXPIRATION_STORE_VALUE_SERDE = new Serdes.StringSerde();
+
+  /** Interval at which pending expirations are checked; bounds how late an expiration fires. */
+  static final Duration PUNCTUATION_INTERVAL = ExpirationIndex.RESOLUTION;
+
+  /**
+   * The override types that expire, each mapped to a function returning the expiration of an
+   * override union value of that type, or null if none. Add an entry to expire a new type.
+   */
+  static final Map<OverriddenAlarmType, Function<Object, Long>> EXPIRATIONS =
+      new EnumMap<>(OverriddenAlarmType.class);
+
+  static {
+    EXPIRATIONS.put(
+        OverriddenAlarmType.Shelved,
+        union ->
+            (union instanceof ShelvedOverride) ? ((ShelvedOverride) union).getExpiration() : null);
+    EXPIRATIONS.put(
+        OverriddenAlarmType.OnDelayed,
+        union ->
+            (union instanceof OnDelayedOverride)
+                ? ((OnDelayedOverride) union).getExpiration()
+                : null);
+    EXPIRATIONS.put(
+        OverriddenAlarmType.OffDelayed,
+        union ->
+            (union instanceof OffDelayedOverride)
+                ? ((OffDelayedOverride) union).getExpiration()
+                : null);
+  }
+
+  public OverrideExpirationRule(String inputTopic, String outputTopic) {
+    super(inputTopic, outputTopic);
+  }
+
+  @Override
+  public Properties constructProperties() {
+    final Properties props = super.constructProperties();
+
+    props.put(StreamsConfig.APPLICATION_ID_CONFIG, "jaws-effective-processor-expiration");
+
+    return props;
+  }
+
+  /**
+   * Add the Kafka Streams Domain Specific Language (DSL) processing to the topology.
+   *
+   * @param sources The topology sources
+   * @param props The streams properties
+   */
+  @Override
+  void addTopology(TopologySources sources, Properties props) {
+    Map<String, String> config = new HashMap<>();
+
+    String value = props.getProperty(SCHEMA_REGISTRY_URL_CONFIG);
+
+    config.put(SCHEMA_REGISTRY_URL_CONFIG, value);
+    INPUT_KEY_SERDE.configure(config, true);
+    INPUT_VALUE_SERDE.configure(config, false);
+
+    final KStream<AlarmOverrideKey, AlarmOverrideUnion> input =
+        sources.stream(inputTopic, Consumed.with(INPUT_KEY_SERDE, INPUT_VALUE_SERDE));
+
+    final KStream<AlarmOverrideKey, AlarmOverrideUnion> expiringOnly =
+        input.filter(
+            new Predicate<AlarmOverrideKey, AlarmOverrideUnion>() {
+              @Override
+              public boolean test(AlarmOverrideKey key, AlarmOverrideUnion value) {
+                return EXPIRATIONS.containsKey(key.getType());
+              }
+            });
+
+    final StoreBuilder<KeyValueStore<String, String>> storeBuilder =
+        Stores.keyValueStoreBuilder(
+                Stores.persistentKeyValueStore("OverrideExpirationStore"),
+                EXPIRATION_STORE_KEY_SERDE,
+                EXPIRATION_STORE_VALUE_SERDE)
+            .withCachingEnabled();
+
+    sources.builder().addStateStore(storeBuilder);
+
+    final KStream<AlarmOverrideKey, AlarmOverrideUnion> output =
+        expiringOnly.process(
+            metrics().timed(
+                "OverrideExpirationProcessor", new MyProcessorSupplier(storeBuilder.name())),
+            storeBuilder.name());
+
+    output.to(
+        outputTopic,
+        Produced.with(OUTPUT_KEY_SERDE, OUTPUT_VALUE_SERDE)
+            .withStreamPartitioner(new AlarmNamePartitioner()));
+  }
+
+  /**
+   * Return the id of an override in the expiration index.
+   *
+   * @param key The override key
+   * @return The id
+   */
+  static String toId(AlarmOverrideKey key) {
+    return key.getType().name() + ":" + key.getName();
+  }
+
+  /**
+   * Return the override key of an id in the expiration index. Type names never contain a colon, so
+   * the first colon ends the type even if the alarm name contains one.
+   *
+   * @param id The id
+   * @return The override key
+   */
+  static AlarmOverrideKey fromId(String id) {
+    int separator = id.indexOf(':');
+
+    return new AlarmOverrideKey(
+        id.substring(separator + 1), OverriddenAlarmType.valueOf(id.substring(0, separator)));
+  }
+
+  /**
+   * Factory to create Kafka Streams Processor instances; references a stateStore to maintain the
+   * index of pending expirations.
+   */
+  private final class MyProcessorSupplier
+      implements ProcessorSupplier<
+          AlarmOverrideKey, AlarmOverrideUnion, AlarmOverrideKey, AlarmOverrideUnion> {
+
+    private final String storeName;
+    private final RuleMetrics metrics = metrics();
+
+    /**
+     * Create a new ProcessorSupplier.
+     *
+     * @param storeName The state store name
+     */
+    public MyProcessorSupplier(String storeName) {
+      this.storeName = storeName;
+    }
+
+    /**
+     * Return a new {@link Processor} instance.
+     *
+     * @return a new {@link Processor} instance
+     */
+    @Override
+    public Processor<AlarmOverrideKey, AlarmOverrideUnion, AlarmOverrideKey, AlarmOverrideUnion>
+        get() {
+      return new Processor<>() {
+        private ProcessorContext<AlarmOverrideKey, AlarmOverrideUnion> context;
+        private ExpirationIndex index;
+
+        @Override
+        public void init(ProcessorContext<AlarmOverrideKey, AlarmOverrideUnion> context) {
+          this.context = context;
+          this.index = new ExpirationIndex(context.getStateStore(storeName));
+
+          // Expirations restored from the changelog that came due while not running are expired
+          // by the first punctuation
+          context.schedule(PUNCTUATION_INTERVAL, PunctuationType.WALL_CLOCK_TIME, this::expire);
+        }
+
+        @Override
+        public void process(Record<AlarmOverrideKey, AlarmOverrideUnion> input) {
+          log.debug("Handling message: {}={}", input.key(), input.value());
+
+          String id = toId(input.key());
+
+          // If exists, we always cancel timers
+          if (index.cancel(id)) {
+            log.debug("Timer Cancelled");
+          } else {
+            log.debug("No Timer exists");
+          }
+
+          Long expiration = null;
+
+          if (input.value() != null) {
+            expiration = EXPIRATIONS.get(input.key().getType()).apply(input.value().getUnion());
+          }
+
+          if (expiration != null && expiration > 0) { // Set new timer
+            log.debug(
+                "Scheduling {} for expiration at: {}",
+                input.key(),
+                Instant.ofEpochMilli(expiration));
+
+            index.schedule(id, expiration);
+          } else {
+            log.debug("Either null value or null expiration so no timer set!");
+          }
+        }
+
+        /**
+         * Forward a tombstone for every override that expired at or before the punctuation, such
+         * that overrides never expire early and at most one punctuation interval late.
+         *
+         * @param timestamp The punctuation time
+         */
+        private void expire(long timestamp) {
+          for (String id : index.pollDue(timestamp)) {
+            AlarmOverrideKey key = fromId(id);
+
+            log.debug("Punctuation triggered for: {}", key);
+
+            Record<AlarmOverrideKey, AlarmOverrideUnion> output =
+                new Record<>(key, null, timestamp);
+
+            HEADERS.populate(output);
+
+            metrics.overrideEmitted();
+
+            context.forward(output);
+          }
+        }
+
+        @Override
+        public void close() {
+          // Nothing to do
+        }
+      };
+    }
+  }
+}
@@ -3,12 +3,16 @@ package org.jlab.jaws;
 import static io.confluent.kafka.serializers.AbstractKafkaSchemaSerDeConfig.SCHEMA_REGISTRY_URL_CONFIG;
 
 import java.io.File;
-import java.net.InetAddress;
-import java.net.UnknownHostException;
-import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
 import java.util.Properties;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 import org.apache.kafka.clients.consumer.ConsumerConfig;
 import org.apache.kafka.streams.KafkaStreams;
+import org.apache.kafka.streams.StreamsBuilder;
 import org.apache.kafka.streams.StreamsConfig;
 import org.apache.kafka.streams.Topology;
 import org.apache.kafka.streams.processor.api.Processor;
@@ -23,7 +27,14 @@ public abstract class ProcessingRule {
 
   private static final Logger log = LoggerFactory.getLogger(ProcessingRule.class);
 
+  /** The maximum time to wait for the streams of a rule to close. */
+  private static final Duration CLOSE_TIMEOUT = Duration.ofMinutes(1);
+
   KafkaStreams streams;
+  Readiness readiness;
+  Path snapshotFile;
+  ScheduledExecutorService snapshots;
+  boolean closed;
   Properties props;
   Topology top;
   String inputTopic;
@@ -34,60 +45,214 @@ public abstract class ProcessingRule {
     this.outputTopic = outputTopic;
   }
 
-  public Properties constructProperties() {
+  /**
+   * Return the Kafka bootstrap servers configured with the BOOTSTRAP_SERVERS environment variable.
+   *
+   * @return The bootstrap servers
+   */
+  public static String bootstrapServers() {
     String bootstrapServers = System.getenv("BOOTSTRAP_SERVERS");
-    bootstrapServers = (bootstrapServers == null) ? "localhost:9092" : bootstrapServers;
+    return (bootstrapServers == null) ? "localhost:9092" : bootstrapServers;
+  }
+
+  /**
+   * Return the directory of local state configured with the STATE_DIR environment variable.
+   *
+   * @return The state directory
+   */
+  public static String stateDir() {
+    String stateDir = System.getenv("STATE_DIR");
+    return (stateDir == null)
+        ? System.getProperty("java.io.tmpdir") + File.separator + "kafka-streams"
+        : stateDir;
+  }
+
+  public Properties constructProperties() {
+    String bootstrapServers = bootstrapServers();
 
     String registry = System.getenv("SCHEMA_REGISTRY");
     registry = (registry == null) ? "http://localhost:8081" : registry;
 
-    String tmpDir = System.getProperty("java.io.tmpdir");
-    String stateDir = System.getenv("STATE_DIR");
-    stateDir = (stateDir == null) ? tmpDir + File.separator + "kafka-streams" : stateDir;
-
     final Properties props = new Properties();
     props.put(StreamsConfig.APPLICATION_ID_CONFIG, "jaws-effective-processor");
     props.put(StreamsConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
-    props.put(StreamsConfig.STATESTORE_CACHE_MAX_BYTES_CONFIG, 0); // Disable caching
     props.put(SCHEMA_REGISTRY_URL_CONFIG, registry);
     props.put(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, "earliest");
-    props.put(StreamsConfig.STATE_DIR_CONFIG, stateDir);
+    props.put(StreamsConfig.STATE_DIR_CONFIG, stateDir());
+    props.put(StreamsConfig.ROCKSDB_CONFIG_SETTER_CLASS_CONFIG, BoundedRocksDBConfig.class);
+
+    TuningProfile.DEFAULT.apply(props);
+
+    String threads = System.getenv("STREAM_THREADS");
+
+    if (threads != null) {
+      props.put(StreamsConfig.NUM_STREAM_THREADS_CONFIG, Integer.parseInt(threads));
+    }
+
+    String standbys = System.getenv("NUM_STANDBY_REPLICAS");
+
+    if (standbys != null) {
+      props.put(StreamsConfig.NUM_STANDBY_REPLICAS_CONFIG, Integer.parseInt(standbys));
+    }
 
     return props;
   }
 
-  abstract Topology constructTopology(Properties props);
+  public Topology constructTopology(Properties props) {
+    final StreamsBuilder builder = new StreamsBuilder();
+
+    addTopology(new TopologySources(builder), props);
+
+    return builder.build();
+  }
+
+  /**
+   * Add the processing of this rule to a topology under construction, which may be shared with
+   * other rules.
+   *
+   * @param sources The topology sources
+   * @param props The streams properties
+   */
+  abstract void addTopology(TopologySources sources, Properties props);
 
   public void start() {
     props = constructProperties();
+
+    String applicationId = props.getProperty(StreamsConfig.APPLICATION_ID_CONFIG);
+    TuningProfile profile = TuningProfile.forApplication(applicationId);
+
+    log.info("Tuning profile of {} is {}", applicationId, profile);
+
+    profile.apply(props);
+
     top = constructTopology(props);
 
+    readiness = new Readiness(applicationId);
+
+    Path snapshotDir = StateSnapshot.directory();
+
+    if (snapshotDir != null) {
+      snapshotFile = StateSnapshot.file(snapshotDir, applicationId);
+
+      StateSnapshot.restore(snapshotFile, applicationStateDir());
+
+      long interval = StateSnapshot.intervalMinutes();
+
+      if (interval > 0) {
+        snapshots =
+            Executors.newSingleThreadScheduledExecutor(
+                runnable -> {
+                  Thread thread = new Thread(runnable, applicationId + "-snapshot");
+                  thread.setDaemon(true);
+                  return thread;
+                });
+
+        snapshots.scheduleWithFixedDelay(this::snapshot, interval, interval, TimeUnit.MINUTES);
+      }
+    }
+
+    startStreams();
+  }
+
+  private void startStreams() {
     streams = new KafkaStreams(top, props);
 
+    Metrics.register(props.getProperty(StreamsConfig.APPLICATION_ID_CONFIG), streams);
+
+    streams.setStateListener(readiness);
+    streams.setGlobalStateRestoreListener(readiness);
+
     streams.start();
   }
 
-  public void close() {
-    streams.close();
+  /**
+   * Write a snapshot of the local state of this rule, which is closed meanwhile so that the stores
+   * are flushed and checkpointed. The rule does not process records, and the process is not ready,
+   * until the rule is running again.
+   *
+   * <p>A rule that does not close in time or does not start again is failed: it no longer takes
+   * snapshots and holds the process not ready for good, which fails its health check.
+   */
+  synchronized void snapshot() {
+    if (closed) {
+      return;
+    }
+
+    try {
+      if (!streams.close(CLOSE_TIMEOUT)) {
+        throw new IllegalStateException("Not closed within " + CLOSE_TIMEOUT);
+      }
+
+      StateSnapshot.write(applicationStateDir(), snapshotFile);
+
+      startStreams();
+    } catch (RuntimeException e) {
+      log.error(
+          "Unable to snapshot {}; rule is stopped",
+          props.getProperty(StreamsConfig.APPLICATION_ID_CONFIG),
+          e);
+
+      readiness.fail();
+
+      snapshots.shutdown();
+    }
   }
 
-  public static void populateHeaders(Record<? extends Object, ? extends Object> record) {
-    String host = "unknown";
+  public synchronized void close() {
+    closed = true;
 
-    try {
-      host = InetAddress.getLocalHost().getHostName();
-    } catch (UnknownHostException e) {
-      log.debug("Unable to obtain host name");
+    if (snapshots != null) {
+      snapshots.shutdown();
+    }
+
+    boolean stopped = streams.close(CLOSE_TIMEOUT);
+
+    Metrics.unregister(props.getProperty(StreamsConfig.APPLICATION_ID_CONFIG));
+
+    if (!stopped) {
+      log.warn(
+          "Unable to close {} within {}; snapshot skipped",
+          props.getProperty(StreamsConfig.APPLICATION_ID_CONFIG),
+          CLOSE_TIMEOUT);
+    } else if (snapshotFile != null) {
+      StateSnapshot.write(applicationStateDir(), snapshotFile);
     }
 
-    record.headers().add("user", System.getProperty("user.name").getBytes(StandardCharsets.UTF_8));
-    record.headers().add("producer", "registrations2epics".getBytes(StandardCharsets.UTF_8));
-    record.headers().add("host", host.getBytes(StandardCharsets.UTF_8));
+    readiness.close();
+  }
+
+  /**
+   * Return the metrics of this rule, which are shared by every instance of the rule.
+   *
+   * @return The rule metrics
+   */
+  RuleMetrics metrics() {
+    return Metrics.forRule(getClass().getSimpleName());
+  }
+
+  private Path applicationStateDir() {
+    return Paths.get(
+        props.getProperty(StreamsConfig.STATE_DIR_CONFIG),
+        props.getProperty(StreamsConfig.APPLICATION_ID_CONFIG));
   }
 
   public final class MonologAddHeadersFactory
       implements ProcessorSupplier<String, IntermediateMonolog, String, IntermediateMonolog> {
 
+    private final HeaderProvider headers;
+    private final Trace trace;
+
+    /**
+     * Create a new MonologAddHeadersFactory.
+     *
+     * @param headers The headers to add
+     * @param trace The trace of the stage
+     */
+    public MonologAddHeadersFactory(HeaderProvider headers, Trace trace) {
+      this.headers = headers;
+      this.trace = trace;
+    }
+
     /**
      * Return a new {@link Processor} instance.
      *
@@ -112,7 +277,8 @@ public abstract class ProcessingRule {
           Record<String, IntermediateMonolog> output =
               new Record<>(input.key(), input.value(), timestamp);
 
-          populateHeaders(output);
+          headers.populate(output);
+          trace.hop(input, output);
 
           context.forward(output);
         }
@@ -0,0 +1,230 @@
+package org.jlab.jaws;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.streams.KafkaStreams;
+import org.apache.kafka.streams.processor.StateRestoreListener;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Reports the restore of the state stores of a rule from their changelogs, and holds the readiness
+ * of the process until every rule is running with all of its stores restored.
+ *
+ * <p>A rule does not process anything while a task that moved to this instance, for example after
+ * another instance failed, restores its stores. With standby replicas, configured with the
+ * NUM_STANDBY_REPLICAS environment variable, another instance keeps a copy of the stores up to date
+ * and takes over the task, so only the tail of the changelog is restored instead of all of it.
+ *
+ * <p>The process is ready while the file {@value #READY_FILE_NAME} exists in the state directory.
+ */
+public class Readiness implements StateRestoreListener, KafkaStreams.StateListener {
+
+  private static final Logger log = LoggerFactory.getLogger(Readiness.class);
+
+  /** The name of the file in the state directory that exists while the process is ready. */
+  public static final String READY_FILE_NAME = "ready";
+
+  /** The minimum interval between progress reports of the restore of a store partition. */
+  private static final long PROGRESS_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(5);
+
+  private static final Path READY_FILE = Paths.get(ProcessingRule.stateDir(), READY_FILE_NAME);
+
+  private static final List<Readiness> all = new CopyOnWriteArrayList<>();
+
+  private static boolean ready;
+
+  static {
+    // A file left by a process that did not shut down cleanly says nothing about this one
+    try {
+      Files.deleteIfExists(READY_FILE);
+    } catch (IOException e) {
+      log.warn("Unable to delete ready file", e);
+    }
+  }
+
+  private final String applicationId;
+  private final Map<String, Restore> restores = new ConcurrentHashMap<>();
+  private volatile KafkaStreams.State state = KafkaStreams.State.CREATED;
+  private volatile boolean failed;
+
+  /**
+   * Create the readiness of a rule, which holds the readiness of the process until it is running.
+   *
+   * @param applicationId The application id of the rule
+   */
+  public Readiness(String applicationId) {
+    this.applicationId = applicationId;
+
+    all.add(this);
+
+    update();
+  }
+
+  @Override
+  public void onChange(KafkaStreams.State newState, KafkaStreams.State oldState) {
+    log.info("State of {} is {}", applicationId, newState);
+
+    state = newState;
+
+    update();
+  }
+
+  @Override
+  public void onRestoreStart(
+      TopicPartition partition, String storeName, long startingOffset, long endingOffset) {
+    restores.put(key(partition, storeName), new Restore(endingOffset - startingOffset));
+
+    log.info(
+        "Restoring {} of {} from {}: {} records",
+        storeName,
+        applicationId,
+        partition,
+        endingOffset - startingOffset);
+
+    update();
+  }
+
+  @Override
+  public void onBatchRestored(
+      TopicPartition partition, String storeName, long batchEndOffset, long numRestored) {
+    Restore restore = restores.get(key(partition, storeName));
+
+    if (restore == null) {
+      return;
+    }
+
+    restore.restored = restore.restored + numRestored;
+
+    long now = System.nanoTime();
+
+    if (now - restore.reportedNanos >= PROGRESS_INTERVAL_NANOS) {
+      restore.reportedNanos = now;
+
+      log.info(
+          "Restored {} of {} records of {} of {} from {}",
+          restore.restored,
+          restore.total,
+          storeName,
+          applicationId,
+          partition);
+    }
+  }
+
+  @Override
+  public void onRestoreEnd(TopicPartition partition, String storeName, long totalRestored) {
+    Restore restore = restores.remove(key(partition, storeName));
+
+    long millis =
+        (restore == null)
+            ? 0
+            : TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - restore.startNanos);
+
+    log.info(
+        "Restored {} of {} from {}: {} records in {} ms",
+        storeName,
+        applicationId,
+        partition,
+        totalRestored,
+        millis);
+
+    update();
+  }
+
+  @Override
+  public void onRestoreSuspended(TopicPartition partition, String storeName, long totalRestored) {
+    restores.remove(key(partition, storeName));
+
+    log.info(
+        "Restore of {} of {} from {} suspended after {} records",
+        storeName,
+        applicationId,
+        partition,
+        totalRestored);
+
+    update();
+  }
+
+  /** Hold the process not ready for good, as the rule stopped and is not restarted. */
+  public void fail() {
+    failed = true;
+
+    update();
+  }
+
+  /** Stop holding the readiness of the process for the rule, which is closed. */
+  public void close() {
+    all.remove(this);
+
+    update();
+  }
+
+  /**
+   * Return whether the process is ready, which is when it has rules and every rule is running with
+   * no store being restored.
+   *
+   * @return true if ready
+   */
+  public static synchronized boolean isReady() {
+    return ready;
+  }
+
+  /**
+   * Return the file that exists while the process is ready.
+   *
+   * @return The path of the ready file
+   */
+  public static Path readyFile() {
+    return READY_FILE;
+  }
+
+  private boolean isRunning() {
+    return !failed && state == KafkaStreams.State.RUNNING && restores.isEmpty();
+  }
+
+  private static synchronized void update() {
+    boolean now = !all.isEmpty() && all.stream().allMatch(Readiness::isRunning);
+
+    if (now == ready) {
+      return;
+    }
+
+    ready = now;
+
+    try {
+      if (ready) {
+        Files.createDirectories(READY_FILE.getParent());
+        Files.write(READY_FILE, new byte[0]);
+      } else {
+        Files.deleteIfExists(READY_FILE);
+      }
+    } catch (IOException e) {
+      log.warn("Unable to update ready file", e);
+    }
+
+    log.info("Process is {}", ready ? "ready" : "not ready");
+  }
+
+  private static String key(TopicPartition partition, String storeName) {
+    return storeName + "@" + partition;
+  }
+
+  private static final class Restore {
+    final long total;
+    final long startNanos = System.nanoTime();
+    long reportedNanos = startNanos;
+    long restored;
+
+    Restore(long total) {
+      this.total = total;
+    }
+  }
+}
@@ -2,13 +2,15 @@ package org.jlab.jaws;
 
 import static io.confluent.kafka.serializers.AbstractKafkaSchemaSerDeConfig.SCHEMA_REGISTRY_URL_CONFIG;
 
-import io.confluent.kafka.streams.serdes.avro.SpecificAvroSerde;
 import java.util.*;
+import org.apache.kafka.common.header.internals.RecordHeaders;
 import org.apache.kafka.common.serialization.Serdes;
-import org.apache.kafka.streams.StreamsBuilder;
 import org.apache.kafka.streams.StreamsConfig;
-import org.apache.kafka.streams.Topology;
 import org.apache.kafka.streams.kstream.*;
+import org.apache.kafka.streams.processor.api.Processor;
+import org.apache.kafka.streams.processor.api.ProcessorContext;
+import org.apache.kafka.streams.processor.api.ProcessorSupplier;
+import org.apache.kafka.streams.processor.api.Record;
 import org.jlab.jaws.entity.*;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -21,6 +23,14 @@ public class RegistrationRule extends ProcessingRule {
 
   private static final Logger log = LoggerFactory.getLogger(RegistrationRule.class);
 
+  private static final HeaderProvider HEADERS =
+      new HeaderProvider("jaws-effective-processor-registration");
+
+  private static final HeaderProvider INTERMEDIATE_HEADERS =
+      HeaderProvider.intermediate("jaws-effective-processor-registration");
+
+  private static final Trace TRACE = Metrics.trace("registration");
+
   String inputTopicClasses;
   String inputTopicInstances;
   String outputTopicEffective;
@@ -29,18 +39,17 @@ public class RegistrationRule extends ProcessingRule {
   public static final Serdes.StringSerde INPUT_KEY_INSTANCES_SERDE = new Serdes.StringSerde();
   public static final Serdes.StringSerde INPUT_KEY_CLASSES_SERDE = new Serdes.StringSerde();
 
-  public static final SpecificAvroSerde<Alarm> INPUT_VALUE_INSTANCES_SERDE =
-      new SpecificAvroSerde<>();
-  public static final SpecificAvroSerde<AlarmAction> INPUT_VALUE_CLASSES_SERDE =
-      new SpecificAvroSerde<>();
+  public static final CachingAvroSerde<Alarm> INPUT_VALUE_INSTANCES_SERDE =
+      new CachingAvroSerde<>(Alarm.class);
+  public static final CachingAvroSerde<AlarmAction> INPUT_VALUE_CLASSES_SERDE =
+      new CachingAvroSerde<>(AlarmAction.class);
 
   public static final Serdes.StringSerde EFFECTIVE_KEY_SERDE = new Serdes.StringSerde();
-  public static final SpecificAvroSerde<EffectiveRegistration> EFFECTIVE_VALUE_SERDE =
-      new SpecificAvroSerde<>();
+  public static final CachingAvroSerde<EffectiveRegistration> EFFECTIVE_VALUE_SERDE =
+      new CachingAvroSerde<>(EffectiveRegistration.class);
 
   public static final Serdes.StringSerde MONOLOG_KEY_SERDE = new Serdes.StringSerde();
-  public static final SpecificAvroSerde<IntermediateMonolog> MONOLOG_VALUE_SERDE =
-      new SpecificAvroSerde<>();
+  public static final MonologSerde MONOLOG_VALUE_SERDE = new MonologSerde();
 
   public RegistrationRule(
       String inputTopicClasses,
@@ -64,9 +73,22 @@ public class RegistrationRule extends ProcessingRule {
   }
 
   @Override
-  public Topology constructTopology(Properties props) {
-    final StreamsBuilder builder = new StreamsBuilder();
+  void addTopology(TopologySources sources, Properties props) {
+
+    configureSerdes(props);
+
+    final KTable<String, IntermediateMonolog> classesAndRegistered =
+        addRegistrationTable(sources);
+
+    final KStream<String, IntermediateMonolog> withHeaders =
+        addEffectiveRegistrationOutput(classesAndRegistered);
+
+    withHeaders.to(
+        outputTopicMonolog,
+        Produced.as("MonologRegistration").with(MONOLOG_KEY_SERDE, MONOLOG_VALUE_SERDE));
+  }
 
+  void configureSerdes(Properties props) {
     // If you get an unhelpful NullPointerException in the depths of the AVRO deserializer it's
     // likely because you didn't set registry config
     Map<String, String> config = new HashMap<>();
@@ -77,13 +99,21 @@ public class RegistrationRule extends ProcessingRule {
 
     EFFECTIVE_VALUE_SERDE.configure(config, false);
     MONOLOG_VALUE_SERDE.configure(config, false);
+  }
 
+  /**
+   * Add the alarm class and alarm instance tables and their join to the topology.
+   *
+   * @param sources The topology sources
+   * @return The table of registered monologs
+   */
+  KTable<String, IntermediateMonolog> addRegistrationTable(TopologySources sources) {
     final KTable<String, AlarmAction> classesTable =
-        builder.table(
+        sources.table(
             inputTopicClasses,
             Consumed.as("Classes-Table").with(INPUT_KEY_CLASSES_SERDE, INPUT_VALUE_CLASSES_SERDE));
     final KTable<String, Alarm> registeredTable =
-        builder.table(
+        sources.table(
             inputTopicInstances,
             Consumed.as("Instances-Table")
                 .with(INPUT_KEY_INSTANCES_SERDE, INPUT_VALUE_INSTANCES_SERDE));
@@ -104,32 +134,80 @@ public class RegistrationRule extends ProcessingRule {
                   }
                 });
 
+    return classesAndRegistered;
+  }
+
+  /**
+   * Add the effective registration output to the builder.
+   *
+   * @param classesAndRegistered The table of registered monologs
+   * @return The stream of registered monologs with intermediate headers
+   */
+  KStream<String, IntermediateMonolog> addEffectiveRegistrationOutput(
+      KTable<String, IntermediateMonolog> classesAndRegistered) {
     final KStream<String, IntermediateMonolog> withHeaders =
-        classesAndRegistered.toStream().process(new MonologAddHeadersFactory());
+        classesAndRegistered
+            .toStream()
+            .process(
+                metrics()
+                    .timed(
+                        "RegistrationHeaders",
+                        new MonologAddHeadersFactory(INTERMEDIATE_HEADERS, TRACE)));
 
     KStream<String, EffectiveRegistration> effective =
-        withHeaders.mapValues(
-            new ValueMapper<IntermediateMonolog, EffectiveRegistration>() {
-              @Override
-              public EffectiveRegistration apply(IntermediateMonolog value) {
-                EffectiveRegistration result = null;
-
-                if (value != null) {
-                  result = EffectiveRegistration.newBuilder(value.getRegistration()).build();
-                }
-                return result;
-              }
-            });
+        withHeaders.process(
+            new EffectiveRegistrationFactory(), Named.as("EffectiveRegistrationHeaders"));
 
     effective.to(
         outputTopicEffective,
         Produced.as("EffectiveRegistration").with(EFFECTIVE_KEY_SERDE, EFFECTIVE_VALUE_SERDE));
 
-    withHeaders.to(
-        outputTopicMonolog,
-        Produced.as("MonologRegistration").with(MONOLOG_KEY_SERDE, MONOLOG_VALUE_SERDE));
+    return withHeaders;
+  }
 
-    return builder.build();
+  /**
+   * Maps registered monologs to effective registrations, which always have the user, producer, and
+   * host headers as the effective registrations topic is not an intermediate topic.
+   */
+  private static final class EffectiveRegistrationFactory
+      implements ProcessorSupplier<String, IntermediateMonolog, String, EffectiveRegistration> {
+
+    @Override
+    public Processor<String, IntermediateMonolog, String, EffectiveRegistration> get() {
+      return new Processor<>() {
+        private ProcessorContext<String, EffectiveRegistration> context;
+
+        @Override
+        public void init(ProcessorContext<String, EffectiveRegistration> context) {
+          this.context = context;
+        }
+
+        @Override
+        public void process(Record<String, IntermediateMonolog> input) {
+          EffectiveRegistration result = null;
+
+          if (input.value() != null) {
+            result = EffectiveRegistration.newBuilder(input.value().getRegistration()).build();
+          }
+
+          // A copy, as the headers are shared with the intermediate monolog record
+          Record<String, EffectiveRegistration> output =
+              input.withValue(result).withHeaders(new RecordHeaders(input.headers().toArray()));
+
+          // Absent if intermediate headers are disabled
+          if (output.headers().lastHeader("producer") == null) {
+            HEADERS.populate(output);
+          }
+
+          context.forward(output);
+        }
+
+        @Override
+        public void close() {
+          // Nothing to do
+        }
+      };
+    }
   }
 
   private final class AlarmClassJoiner
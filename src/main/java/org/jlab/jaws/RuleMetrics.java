@@ -0,0 +1,279 @@
+package org.jlab.jaws;
+
+import java.io.File;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+import org.apache.kafka.common.serialization.Serde;
+import org.apache.kafka.streams.StreamsMetrics;
+import org.apache.kafka.streams.processor.Cancellable;
+import org.apache.kafka.streams.processor.PunctuationType;
+import org.apache.kafka.streams.processor.Punctuator;
+import org.apache.kafka.streams.processor.StateStore;
+import org.apache.kafka.streams.processor.TaskId;
+import org.apache.kafka.streams.processor.api.Processor;
+import org.apache.kafka.streams.processor.api.ProcessorContext;
+import org.apache.kafka.streams.processor.api.ProcessorSupplier;
+import org.apache.kafka.streams.processor.api.Record;
+import org.apache.kafka.streams.processor.api.RecordMetadata;
+import org.apache.kafka.streams.state.StoreBuilder;
+
+/**
+ * The counters and processing latency of one rule, shared by all of its tasks and threads, and
+ * exported by {@link Metrics}.
+ *
+ * <p>Records in and out are counted, and latency recorded, by wrapping the processors of the rule
+ * with {@link #timed(String, ProcessorSupplier)}, which leaves the topology unchanged. The latency
+ * of a process() call includes the processing of the forwarded records by the downstream nodes of
+ * the same task, so in a fused pipeline the latency of a stage includes the stages after it.
+ */
+public class RuleMetrics {
+
+  /** The significant decimal digits of the latency histograms. */
+  private static final int SIGNIFICANT_DIGITS = 3;
+
+  private final String rule;
+
+  final LongAdder recordsIn = new LongAdder();
+  final LongAdder recordsOut = new LongAdder();
+  final LongAdder recordsDropped = new LongAdder();
+  final LongAdder overridesEmitted = new LongAdder();
+  final LongAdder partitionMismatches = new LongAdder();
+
+  private final Map<String, Latency> latencies = new ConcurrentHashMap<>();
+
+  RuleMetrics(String rule) {
+    this.rule = rule;
+  }
+
+  /**
+   * Return the name of the rule.
+   *
+   * @return The rule name
+   */
+  public String rule() {
+    return rule;
+  }
+
+  /** Count a record the rule consumed without forwarding it. */
+  public void dropped() {
+    recordsDropped.increment();
+  }
+
+  /** Count an override the rule emitted. */
+  public void overrideEmitted() {
+    overridesEmitted.increment();
+  }
+
+  /** Count a record consumed from a partition other than the partition of its alarm. */
+  public void partitionMismatch() {
+    partitionMismatches.increment();
+  }
+
+  /**
+   * Wrap a processor supplier such that each process() call is counted as a record in and timed,
+   * and each forwarded record is counted as a record out.
+   *
+   * @param processorName The processor name
+   * @param supplier The processor supplier
+   * @return The wrapped processor supplier
+   * @param <KIn> The input key type
+   * @param <VIn> The input value type
+   * @param <KOut> The output key type
+   * @param <VOut> The output value type
+   */
+  public <KIn, VIn, KOut, VOut> ProcessorSupplier<KIn, VIn, KOut, VOut> timed(
+      String processorName, ProcessorSupplier<KIn, VIn, KOut, VOut> supplier) {
+    Latency latency = latencies.computeIfAbsent(processorName, name -> new Latency());
+
+    return new ProcessorSupplier<>() {
+      @Override
+      public Processor<KIn, VIn, KOut, VOut> get() {
+        return new TimedProcessor<>(supplier.get(), latency);
+      }
+
+      @Override
+      public Set<StoreBuilder<?>> stores() {
+        return supplier.stores();
+      }
+    };
+  }
+
+  /**
+   * Return the process() latency of each processor of the rule.
+   *
+   * @return The latency by processor name
+   */
+  Map<String, Latency> latencies() {
+    return latencies;
+  }
+
+  /**
+   * The process() latency of one processor. The quantiles are of the calls since the previous
+   * export, so they reflect the current load rather than the whole uptime, while the count and sum
+   * are of all calls.
+   */
+  static final class Latency {
+    private final Recorder recorder = new Recorder(SIGNIFICANT_DIGITS);
+    private Histogram interval;
+    private long count;
+    private double sumNanos;
+
+    void record(long nanos) {
+      recorder.recordValue(nanos);
+    }
+
+    /**
+     * Move the calls since the previous export to the interval histogram, and return it.
+     *
+     * @return The histogram of the calls since the previous export, in nanoseconds
+     */
+    synchronized Histogram interval() {
+      interval = recorder.getIntervalHistogram(interval);
+
+      count = count + interval.getTotalCount();
+      sumNanos = sumNanos + interval.getMean() * interval.getTotalCount();
+
+      return interval;
+    }
+
+    synchronized long count() {
+      return count;
+    }
+
+    synchronized double sumNanos() {
+      return sumNanos;
+    }
+  }
+
+  private final class TimedProcessor<KIn, VIn, KOut, VOut>
+      implements Processor<KIn, VIn, KOut, VOut> {
+    private final Processor<KIn, VIn, KOut, VOut> delegate;
+    private final Latency latency;
+
+    TimedProcessor(Processor<KIn, VIn, KOut, VOut> delegate, Latency latency) {
+      this.delegate = delegate;
+      this.latency = latency;
+    }
+
+    @Override
+    public void init(ProcessorContext<KOut, VOut> context) {
+      delegate.init(new CountingContext<>(context));
+    }
+
+    @Override
+    public void process(Record<KIn, VIn> record) {
+      long start = System.nanoTime();
+
+      try {
+        delegate.process(record);
+      } finally {
+        latency.record(System.nanoTime() - start);
+        recordsIn.increment();
+      }
+    }
+
+    @Override
+    public void close() {
+      delegate.close();
+    }
+  }
+
+  /** Counts the records forwarded by a processor, including from punctuators. */
+  private final class CountingContext<KForward, VForward>
+      implements ProcessorContext<KForward, VForward> {
+    private final ProcessorContext<KForward, VForward> delegate;
+
+    CountingContext(ProcessorContext<KForward, VForward> delegate) {
+      this.delegate = delegate;
+    }
+
+    @Override
+    public <K extends KForward, V extends VForward> void forward(Record<K, V> record) {
+      recordsOut.increment();
+      delegate.forward(record);
+    }
+
+    @Override
+    public <K extends KForward, V extends VForward> void forward(
+        Record<K, V> record, String childName) {
+      recordsOut.increment();
+      delegate.forward(record, childName);
+    }
+
+    @Override
+    public String applicationId() {
+      return delegate.applicationId();
+    }
+
+    @Override
+    public TaskId taskId() {
+      return delegate.taskId();
+    }
+
+    @Override
+    public Optional<RecordMetadata> recordMetadata() {
+      return delegate.recordMetadata();
+    }
+
+    @Override
+    public Serde<?> keySerde() {
+      return delegate.keySerde();
+    }
+
+    @Override
+    public Serde<?> valueSerde() {
+      return delegate.valueSerde();
+    }
+
+    @Override
+    public File stateDir() {
+      return delegate.stateDir();
+    }
+
+    @Override
+    public StreamsMetrics metrics() {
+      return delegate.metrics();
+    }
+
+    @Override
+    public <S extends StateStore> S getStateStore(String name) {
+      return delegate.getStateStore(name);
+    }
+
+    @Override
+    public Cancellable schedule(Duration interval, PunctuationType type, Punctuator callback) {
+      return delegate.schedule(interval, type, callback);
+    }
+
+    @Override
+    public void commit() {
+      delegate.commit();
+    }
+
+    @Override
+    public Map<String, Object> appConfigs() {
+      return delegate.appConfigs();
+    }
+
+    @Override
+    public Map<String, Object> appConfigsWithPrefix(String prefix) {
+      return delegate.appConfigsWithPrefix(prefix);
+    }
+
+    @Override
+    public long currentSystemTimeMs() {
+      return delegate.currentSystemTimeMs();
+    }
+
+    @Override
+    public long currentStreamTimeMs() {
+      return delegate.currentStreamTimeMs();
+    }
+  }
+}
@@ -0,0 +1,265 @@
+package org.jlab.jaws;
+
+import io.confluent.kafka.schemaregistry.avro.AvroSchema;
+import io.confluent.kafka.schemaregistry.avro.AvroSchemaProvider;
+import io.confluent.kafka.schemaregistry.client.CachedSchemaRegistryClient;
+import io.confluent.kafka.schemaregistry.client.SchemaRegistryClient;
+import io.confluent.kafka.schemaregistry.client.rest.exceptions.RestClientException;
+import io.confluent.kafka.schemaregistry.testutil.MockSchemaRegistry;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import org.apache.avro.Schema;
+import org.apache.avro.SchemaNormalization;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Local cache of schema registry ids and schemas, persisted to a file in the state directory so a
+ * restarted processor resolves every id and schema it has seen before without a registry round
+ * trip; the registry is only contacted for ids and schemas not yet in the cache.
+ *
+ * <p>The file records the registry URL and is ignored if the URL changes. Schema ids are never
+ * reused by a registry, but a registry reset from scratch reassigns them; the file must then be
+ * deleted, or the cache disabled with the SCHEMA_CACHE environment variable set to false, in which
+ * case the cache is kept in memory only. Mock (testing) registries are never persisted.
+ */
+public class SchemaCache {
+
+  private static final Logger log = LoggerFactory.getLogger(SchemaCache.class);
+
+  /** The name of the cache file in the state directory. */
+  public static final String FILE_NAME = "schema-cache.properties";
+
+  private static final String MOCK_PREFIX = "mock://";
+  private static final String REGISTRY = "registry";
+  private static final String ID_PREFIX = "id.";
+  private static final String SUBJECT_PREFIX = "subject.";
+
+  private static final Map<String, SchemaCache> INSTANCES = new ConcurrentHashMap<>();
+
+  private final String url;
+  private final Map<String, ?> configs;
+  private final File file;
+
+  private final Map<Integer, Schema> schemas = new ConcurrentHashMap<>();
+  private final Map<String, Integer> ids = new ConcurrentHashMap<>();
+
+  private SchemaRegistryClient client;
+
+  /**
+   * Create a new SchemaCache, loading the given file if it exists and was written for the same
+   * registry.
+   *
+   * @param url The schema registry URL
+   * @param configs The serde configs, used to create a registry client on first cache miss
+   * @param file The cache file, or null to keep the cache in memory only
+   */
+  SchemaCache(String url, Map<String, ?> configs, File file) {
+    this.url = url;
+    this.configs = new HashMap<>(configs);
+    this.file = file;
+
+    if (file != null && file.exists()) {
+      load();
+    }
+  }
+
+  /**
+   * Return the cache shared by all serdes of the given registry, persisted to the state directory.
+   *
+   * @param url The schema registry URL
+   * @param configs The serde configs, used to create a registry client on first cache miss
+   * @return The cache
+   */
+  public static SchemaCache forRegistry(String url, Map<String, ?> configs) {
+    return INSTANCES.computeIfAbsent(url, u -> new SchemaCache(u, configs, persistentFile(u)));
+  }
+
+  /**
+   * Return the schema with the given id.
+   *
+   * @param id The registry schema id
+   * @return The schema
+   * @throws IOException If the schema is not cached and the registry can not be reached
+   * @throws RestClientException If the schema is not cached and the registry lookup fails
+   */
+  public Schema schema(int id) throws IOException, RestClientException {
+    Schema schema = schemas.get(id);
+
+    if (schema == null) {
+      schema = resolve(id);
+    }
+
+    return schema;
+  }
+
+  /**
+   * Return the id of the given schema under the given subject, registering it if needed.
+   *
+   * @param subject The subject
+   * @param schema The schema
+   * @param fingerprint The parsing fingerprint of the schema, see {@link #fingerprint(Schema)}
+   * @return The registry schema id
+   * @throws IOException If the id is not cached and the registry can not be reached
+   * @throws RestClientException If the id is not cached and the registry registration fails
+   */
+  public int id(String subject, Schema schema, long fingerprint)
+      throws IOException, RestClientException {
+    Integer id = ids.get(subjectKey(subject, fingerprint));
+
+    if (id == null) {
+      id = register(subject, schema, fingerprint);
+    }
+
+    return id;
+  }
+
+  /**
+   * Return the parsing fingerprint of a schema, which identifies a schema regardless of
+   * documentation, ordering of attributes, and whitespace.
+   *
+   * @param schema The schema
+   * @return The fingerprint
+   */
+  public static long fingerprint(Schema schema) {
+    return SchemaNormalization.parsingFingerprint64(schema);
+  }
+
+  private synchronized Schema resolve(int id) throws IOException, RestClientException {
+    Schema schema = schemas.get(id);
+
+    if (schema == null) {
+      schema = (Schema) client().getSchemaById(id).rawSchema();
+
+      schemas.put(id, schema);
+
+      save();
+    }
+
+    return schema;
+  }
+
+  private synchronized int register(String subject, Schema schema, long fingerprint)
+      throws IOException, RestClientException {
+    String key = subjectKey(subject, fingerprint);
+    Integer id = ids.get(key);
+
+    if (id == null) {
+      id = client().register(subject, new AvroSchema(schema));
+
+      ids.put(key, id);
+      schemas.putIfAbsent(id, schema);
+
+      save();
+    }
+
+    return id;
+  }
+
+  private SchemaRegistryClient client() {
+    if (client == null) {
+      log.info("Schema cache miss; connecting to registry {}", url);
+
+      if (url.startsWith(MOCK_PREFIX)) {
+        client = MockSchemaRegistry.getClientForScope(url.substring(MOCK_PREFIX.length()));
+      } else {
+        client =
+            new CachedSchemaRegistryClient(
+                Arrays.asList(url.split(",")),
+                100,
+                Collections.singletonList(new AvroSchemaProvider()),
+                configs);
+      }
+    }
+
+    return client;
+  }
+
+  private void load() {
+    Properties properties = new Properties();
+
+    try (InputStream in = Files.newInputStream(file.toPath())) {
+      properties.load(in);
+    } catch (IOException e) {
+      log.warn("Unable to read schema cache {}; starting empty", file, e);
+      return;
+    }
+
+    if (!url.equals(properties.getProperty(REGISTRY))) {
+      log.info("Schema cache {} is for another registry; starting empty", file);
+      return;
+    }
+
+    for (String key : properties.stringPropertyNames()) {
+      String value = properties.getProperty(key);
+
+      if (key.startsWith(ID_PREFIX)) {
+        // One parser per schema since a parser rejects redefinition of a named type
+        schemas.put(
+            Integer.parseInt(key.substring(ID_PREFIX.length())), new Schema.Parser().parse(value));
+      } else if (key.startsWith(SUBJECT_PREFIX)) {
+        ids.put(key.substring(SUBJECT_PREFIX.length()), Integer.parseInt(value));
+      }
+    }
+
+    log.info("Loaded {} schemas and {} subject ids from {}", schemas.size(), ids.size(), file);
+  }
+
+  /** Replace the cache file with the current content of the cache; called on every miss only. */
+  private void save() {
+    if (file == null) {
+      return;
+    }
+
+    Properties properties = new Properties();
+
+    properties.setProperty(REGISTRY, url);
+
+    for (Map.Entry<Integer, Schema> entry : schemas.entrySet()) {
+      properties.setProperty(ID_PREFIX + entry.getKey(), entry.getValue().toString());
+    }
+
+    for (Map.Entry<String, Integer> entry : ids.entrySet()) {
+      properties.setProperty(SUBJECT_PREFIX + entry.getKey(), String.valueOf(entry.getValue()));
+    }
+
+    File tmp = new File(file.getPath() + ".tmp");
+
+    try {
+      Files.createDirectories(file.getAbsoluteFile().getParentFile().toPath());
+
+      try (OutputStream out = Files.newOutputStream(tmp.toPath())) {
+        properties.store(out, "jaws-effective-processor schema cache");
+      }
+
+      Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    } catch (IOException e) {
+      // The cache still works in memory; the next restart simply resolves from the registry again
+      log.warn("Unable to write schema cache {}", file, e);
+    }
+  }
+
+  private static String subjectKey(String subject, long fingerprint) {
+    return subject + "." + Long.toHexString(fingerprint);
+  }
+
+  private static File persistentFile(String url) {
+    String enabled = System.getenv("SCHEMA_CACHE");
+
+    if (url.startsWith(MOCK_PREFIX) || (enabled != null && !Boolean.parseBoolean(enabled))) {
+      return null;
+    }
+
+    return new File(ProcessingRule.stateDir(), FILE_NAME);
+  }
+}
@@ -0,0 +1,41 @@
+package org.jlab.jaws;
+
+import java.util.List;
+import java.util.Properties;
+import org.apache.kafka.streams.StreamsConfig;
+
+/**
+ * Runs a set of rules as sub-topologies of a single Kafka Streams application such that the rules
+ * share one consumer group, one producer, one pool of stream threads, and one state directory
+ * instead of each rule starting its own runtime.
+ *
+ * <p>Rules are added to the shared topology in list order. Rules that read the same topic share its
+ * source, so a rule reading a topic as a table must come before a rule reading it as a stream.
+ */
+public class SharedRuntimeRule extends ProcessingRule {
+
+  final List<ProcessingRule> rules;
+
+  public SharedRuntimeRule(List<ProcessingRule> rules) {
+    super(null, null);
+    this.rules = rules;
+  }
+
+  @Override
+  public Properties constructProperties() {
+    final Properties props = super.constructProperties();
+
+    props.put(StreamsConfig.APPLICATION_ID_CONFIG, "jaws-effective-processor-shared");
+    props.putIfAbsent(
+        StreamsConfig.NUM_STREAM_THREADS_CONFIG, Runtime.getRuntime().availableProcessors());
+
+    return props;
+  }
+
+  @Override
+  void addTopology(TopologySources sources, Properties props) {
+    for (ProcessingRule rule : rules) {
+      rule.addTopology(sources, props);
+    }
+  }
+}
@@ -0,0 +1,283 @@
+package org.jlab.jaws;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Checksummed snapshot of the local state of a rule, so a rule starting with a fresh state
+ * directory, such as a new container, starts from the snapshot instead of rebuilding its stores
+ * record by record from their changelogs and input topics.
+ *
+ * <p>A snapshot is an archive of the state directory of the rule taken while the rule is closed, so
+ * every store is flushed and the checkpoint file of each task records the changelog offsets the
+ * store contents correspond to. On start only the changelog records after these offsets are
+ * restored. The archive is accompanied by a file with its SHA-256 checksum, and a snapshot that
+ * does not match its checksum is ignored, as is a snapshot of a rule that already has local state.
+ *
+ * <p>Snapshots are written to the directory configured with the SNAPSHOT_DIR environment variable,
+ * which must outlive the state directory, when a rule is closed. Snapshots are disabled if
+ * SNAPSHOT_DIR is not set. A snapshot must be deleted if the application is reset.
+ *
+ * <p>Snapshots can also be written every SNAPSHOT_INTERVAL_MINUTES minutes, which is off by default
+ * because each one closes and restarts the rule: the rule stops processing, its consumer group
+ * rebalances, and the process is not ready, failing its health check, until the rule is running
+ * again.
+ */
+public class StateSnapshot {
+
+  private static final Logger log = LoggerFactory.getLogger(StateSnapshot.class);
+
+  /** The file name suffix of a snapshot. */
+  public static final String FILE_SUFFIX = ".snapshot.zip";
+
+  /** The file name suffix of the checksum of a snapshot. */
+  public static final String CHECKSUM_SUFFIX = ".sha256";
+
+  private static final String DIGEST_ALGORITHM = "SHA-256";
+
+  /**
+   * Files owned by the process that created them, which are never part of a snapshot: lock files,
+   * and the process metadata with the process id, which would make the instance restoring the
+   * snapshot and the instance that wrote it the same client to the assignor, breaking sticky and
+   * standby task assignment across them.
+   */
+  private static final List<String> EXCLUDED_FILES =
+      List.of(".lock", "LOCK", "kafka-streams-process-metadata");
+
+  private StateSnapshot() {}
+
+  /**
+   * Return the snapshot directory configured with the SNAPSHOT_DIR environment variable.
+   *
+   * @return The snapshot directory, or null if snapshots are disabled
+   */
+  public static Path directory() {
+    String dir = System.getenv("SNAPSHOT_DIR");
+    return (dir == null) ? null : Paths.get(dir);
+  }
+
+  /**
+   * Return the interval between snapshots configured with the SNAPSHOT_INTERVAL_MINUTES environment
+   * variable.
+   *
+   * @return The interval in minutes, or 0 if snapshots are only written on close
+   */
+  public static long intervalMinutes() {
+    String interval = System.getenv("SNAPSHOT_INTERVAL_MINUTES");
+    return (interval == null) ? 0 : Long.parseLong(interval);
+  }
+
+  /**
+   * Return the snapshot file of a rule.
+   *
+   * @param directory The snapshot directory
+   * @param applicationId The application id of the rule
+   * @return The snapshot file
+   */
+  public static Path file(Path directory, String applicationId) {
+    return directory.resolve(applicationId + FILE_SUFFIX);
+  }
+
+  /**
+   * Replace the snapshot file with the content of a state directory, which must not be in use.
+   *
+   * @param stateDir The state directory of the rule
+   * @param file The snapshot file
+   * @return true if written
+   */
+  public static boolean write(Path stateDir, Path file) {
+    if (!Files.isDirectory(stateDir)) {
+      return false;
+    }
+
+    Path tmp = Paths.get(file + ".tmp");
+    Path checksum = checksumFile(file);
+    Path checksumTmp = Paths.get(checksum + ".tmp");
+
+    long start = System.currentTimeMillis();
+
+    try {
+      Files.createDirectories(file.toAbsolutePath().getParent());
+
+      MessageDigest digest = digest();
+      int count = 0;
+
+      try (ZipOutputStream out =
+          new ZipOutputStream(new DigestOutputStream(Files.newOutputStream(tmp), digest))) {
+        for (Path path : files(stateDir)) {
+          out.putNextEntry(new ZipEntry(entryName(stateDir.relativize(path))));
+          Files.copy(path, out);
+          out.closeEntry();
+          count++;
+        }
+      }
+
+      Files.write(checksumTmp, hex(digest.digest()).getBytes(StandardCharsets.US_ASCII));
+
+      Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+      Files.move(checksumTmp, checksum, StandardCopyOption.REPLACE_EXISTING);
+
+      log.info(
+          "Wrote snapshot {} of {} files in {} ms",
+          file,
+          count,
+          System.currentTimeMillis() - start);
+
+      return true;
+    } catch (IOException e) {
+      // The previous snapshot, if any, is still intact
+      log.warn("Unable to write snapshot {}", file, e);
+
+      return false;
+    }
+  }
+
+  /**
+   * Restore a state directory from the snapshot file, if the file exists and matches its checksum,
+   * and the state directory does not exist or is empty.
+   *
+   * @param file The snapshot file
+   * @param stateDir The state directory of the rule
+   * @return true if restored
+   */
+  public static boolean restore(Path file, Path stateDir) {
+    Path checksum = checksumFile(file);
+
+    if (!Files.exists(file) || !Files.exists(checksum)) {
+      return false;
+    }
+
+    long start = System.currentTimeMillis();
+
+    try {
+      if (!files(stateDir).isEmpty()) {
+        log.info("Local state {} exists; ignoring snapshot {}", stateDir, file);
+        return false;
+      }
+
+      String expected = new String(Files.readAllBytes(checksum), StandardCharsets.US_ASCII).trim();
+
+      MessageDigest digest = digest();
+
+      try (InputStream in = new DigestInputStream(Files.newInputStream(file), digest)) {
+        in.transferTo(OutputStream.nullOutputStream());
+      }
+
+      if (!expected.equals(hex(digest.digest()))) {
+        log.warn("Snapshot {} does not match its checksum; ignoring", file);
+        return false;
+      }
+
+      int count = 0;
+
+      // Entries are checked against their CRC as they are read
+      try (ZipInputStream in = new ZipInputStream(Files.newInputStream(file))) {
+        for (ZipEntry entry = in.getNextEntry(); entry != null; entry = in.getNextEntry()) {
+          Path path = stateDir.resolve(entry.getName()).normalize();
+
+          if (!path.startsWith(stateDir.normalize())) {
+            throw new IOException("Snapshot entry outside of state directory: " + entry.getName());
+          }
+
+          // Snapshots written before a file was excluded may still contain it
+          if (excluded(path)) {
+            continue;
+          }
+
+          Files.createDirectories(path.getParent());
+          Files.copy(in, path, StandardCopyOption.REPLACE_EXISTING);
+          count++;
+        }
+      }
+
+      log.info(
+          "Restored {} files of {} from snapshot {} in {} ms",
+          count,
+          stateDir,
+          file,
+          System.currentTimeMillis() - start);
+
+      return true;
+    } catch (IOException e) {
+      // A partial state directory would be mistaken for a complete one
+      log.warn("Unable to restore snapshot {}; rebuilding state", file, e);
+
+      delete(stateDir);
+
+      return false;
+    }
+  }
+
+  private static List<Path> files(Path dir) throws IOException {
+    if (!Files.isDirectory(dir)) {
+      return List.of();
+    }
+
+    try (Stream<Path> paths = Files.walk(dir)) {
+      return paths
+          .filter(Files::isRegularFile)
+          .filter(path -> !excluded(path))
+          .sorted()
+          .collect(Collectors.toList());
+    }
+  }
+
+  private static boolean excluded(Path path) {
+    return EXCLUDED_FILES.contains(path.getFileName().toString());
+  }
+
+  private static void delete(Path dir) {
+    if (!Files.isDirectory(dir)) {
+      return;
+    }
+
+    try (Stream<Path> paths = Files.walk(dir)) {
+      for (Path path : paths.sorted(Comparator.reverseOrder()).collect(Collectors.toList())) {
+        Files.deleteIfExists(path);
+      }
+    } catch (IOException e) {
+      log.warn("Unable to delete partially restored state {}", dir, e);
+    }
+  }
+
+  private static Path checksumFile(Path file) {
+    return Paths.get(file + CHECKSUM_SUFFIX);
+  }
+
+  private static String entryName(Path relative) {
+    return relative.toString().replace(relative.getFileSystem().getSeparator(), "/");
+  }
+
+  private static MessageDigest digest() {
+    try {
+      return MessageDigest.getInstance(DIGEST_ALGORITHM);
+    } catch (NoSuchAlgorithmException e) {
+      // Every Java platform supports SHA-256
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private static String hex(byte[] bytes) {
+    return String.format("%0" + (bytes.length * 2) + "x", new BigInteger(1, bytes));
+  }
+}
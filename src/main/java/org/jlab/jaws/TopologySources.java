@@ -0,0 +1,101 @@
+package org.jlab.jaws;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import org.apache.kafka.streams.StreamsBuilder;
+import org.apache.kafka.streams.errors.TopologyException;
+import org.apache.kafka.streams.kstream.Consumed;
+import org.apache.kafka.streams.kstream.KStream;
+import org.apache.kafka.streams.kstream.KTable;
+import org.apache.kafka.streams.state.StoreBuilder;
+
+/**
+ * The source topics of a topology under construction.
+ *
+ * <p>Kafka Streams only permits a topic to be registered as a source once per topology, so rules
+ * that share a topology obtain their sources here. The first request for a topic registers it with
+ * the builder and later requests for a stream are derived from that source. Tables must be
+ * requested before streams of the same topic. State stores shared by rules are likewise added once.
+ */
+public class TopologySources {
+  private final StreamsBuilder builder;
+  private final Map<String, KStream<?, ?>> streams = new HashMap<>();
+  private final Map<String, KTable<?, ?>> tables = new HashMap<>();
+  private final Set<String> stores = new HashSet<>();
+
+  public TopologySources(StreamsBuilder builder) {
+    this.builder = builder;
+  }
+
+  public StreamsBuilder builder() {
+    return builder;
+  }
+
+  /**
+   * Return a stream of the given topic, registering the topic as a source if not already.
+   *
+   * @param topic The topic
+   * @param consumed The consumed parameters, used only when the topic is first registered
+   * @return The stream
+   * @param <K> The key type
+   * @param <V> The value type
+   */
+  @SuppressWarnings("unchecked")
+  public <K, V> KStream<K, V> stream(String topic, Consumed<K, V> consumed) {
+    KStream<K, V> stream = (KStream<K, V>) streams.get(topic);
+
+    if (stream == null) {
+      KTable<K, V> table = (KTable<K, V>) tables.get(topic);
+
+      if (table == null) {
+        stream = builder.stream(topic, consumed);
+      } else {
+        stream = table.toStream();
+      }
+
+      streams.put(topic, stream);
+    }
+
+    return stream;
+  }
+
+  /**
+   * Return a table of the given topic, registering the topic as a source if not already.
+   *
+   * @param topic The topic
+   * @param consumed The consumed parameters, used only when the topic is first registered
+   * @return The table
+   * @param <K> The key type
+   * @param <V> The value type
+   */
+  @SuppressWarnings("unchecked")
+  public <K, V> KTable<K, V> table(String topic, Consumed<K, V> consumed) {
+    KTable<K, V> table = (KTable<K, V>) tables.get(topic);
+
+    if (table == null) {
+      if (streams.containsKey(topic)) {
+        throw new TopologyException(
+            "Topic " + topic + " is already registered as a stream; request tables first");
+      }
+
+      table = builder.table(topic, consumed);
+
+      tables.put(topic, table);
+    }
+
+    return table;
+  }
+
+  /**
+   * Add a state store to the builder unless a store of the same name was already added.
+   *
+   * @param storeBuilder The store builder
+   */
+  public void addStateStore(StoreBuilder<?> storeBuilder) {
+    if (stores.add(storeBuilder.name())) {
+      builder.addStateStore(storeBuilder);
+    }
+  }
+}
@@ -0,0 +1,123 @@
+package org.jlab.jaws;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import org.apache.kafka.common.header.Header;
+import org.apache.kafka.common.header.Headers;
+import org.apache.kafka.common.header.internals.RecordHeader;
+import org.apache.kafka.streams.processor.api.Record;
+
+/**
+ * Traces the latency of an alarm update through the stages of the pipeline, from the timestamp of
+ * the record that entered the pipeline to each stage that forwarded it, in record headers.
+ *
+ * <p>The {@value #ORIGIN} header is the timestamp in milliseconds of the record from outside the
+ * pipeline, such as an activation, registration, or override, that caused the record. Each stage
+ * appends a {@value #HOP} header of the stage name and the time it forwarded the record, as
+ * STAGE@MILLIS, so the records of the effective notifications and alarms topics carry the whole
+ * trail. Overrides written by the latch, on-delay, and one-shot rules keep the headers of the
+ * monolog that caused them, so an update that goes through an override round trip is traced from
+ * the original update.
+ *
+ * <p>The latency of each stage since the previous stage and since the origin is exported by {@link
+ * Metrics}. Stages on other hosts than the producer of the origin are subject to clock skew. Trace
+ * headers are not added if the TRACE_HEADERS environment variable is false.
+ */
+public class Trace {
+
+  /** The header of the origin timestamp. */
+  public static final String ORIGIN = "trace-origin";
+
+  /** The header of a stage and the time it forwarded the record. */
+  public static final String HOP = "trace-hop";
+
+  private static final char SEPARATOR = '@';
+
+  private static final boolean ENABLED = enabled();
+
+  private final String stage;
+
+  final RuleMetrics.Latency sincePrevious = new RuleMetrics.Latency();
+  final RuleMetrics.Latency sinceOrigin = new RuleMetrics.Latency();
+
+  Trace(String stage) {
+    this.stage = stage;
+  }
+
+  /**
+   * Return the name of the stage.
+   *
+   * @return The stage name
+   */
+  public String stage() {
+    return stage;
+  }
+
+  /**
+   * Add the trace of the input record and a hop of this stage to the output record, and record the
+   * latency of the stage. An input record without an origin header starts a new trace with its
+   * timestamp as the origin.
+   *
+   * @param input The input record
+   * @param output The output record, which may share the headers of the input
+   */
+  public void hop(Record<?, ?> input, Record<?, ?> output) {
+    if (!ENABLED) {
+      return;
+    }
+
+    long now = System.currentTimeMillis();
+
+    Headers in = input.headers();
+    Headers out = output.headers();
+
+    Header origin = in.lastHeader(ORIGIN);
+
+    long originMillis;
+
+    if (origin == null) {
+      originMillis = input.timestamp();
+      origin = new RecordHeader(ORIGIN, encode(Long.toString(originMillis)));
+
+      out.add(origin);
+    } else {
+      originMillis = Long.parseLong(decode(origin.value()));
+
+      if (out != in) {
+        out.add(origin);
+      }
+    }
+
+    long previousMillis = originMillis;
+
+    for (Header hop : in.headers(HOP)) {
+      if (out != in) {
+        out.add(hop);
+      }
+
+      String value = decode(hop.value());
+
+      previousMillis = Long.parseLong(value.substring(value.lastIndexOf(SEPARATOR) + 1));
+    }
+
+    out.add(new RecordHeader(HOP, encode(stage + SEPARATOR + now)));
+
+    // A negative latency can only be clock skew between hosts
+    sincePrevious.record(TimeUnit.MILLISECONDS.toNanos(Math.max(0, now - previousMillis)));
+    sinceOrigin.record(TimeUnit.MILLISECONDS.toNanos(Math.max(0, now - originMillis)));
+  }
+
+  private static byte[] encode(String value) {
+    return value.getBytes(StandardCharsets.UTF_8);
+  }
+
+  private static String decode(byte[] value) {
+    return new String(value, StandardCharsets.UTF_8);
+  }
+
+  private static boolean enabled() {
+    String enabled = System.getenv("TRACE_HEADERS");
+
+    return enabled == null || Boolean.parseBoolean(enabled);
+  }
+}
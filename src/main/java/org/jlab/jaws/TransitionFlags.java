@@ -0,0 +1,105 @@
+package org.jlab.jaws;
+
+import org.apache.kafka.common.errors.SerializationException;
+import org.apache.kafka.common.serialization.Deserializer;
+import org.apache.kafka.common.serialization.Serde;
+import org.apache.kafka.common.serialization.Serdes;
+import org.apache.kafka.common.serialization.Serializer;
+import org.apache.kafka.streams.state.KeyValueStore;
+import org.apache.kafka.streams.state.StoreBuilder;
+import org.apache.kafka.streams.state.Stores;
+
+/**
+ * The in-progress transition flags of each alarm, kept as a one byte bitset in a single store
+ * shared by the latch, on-delay, one-shot, and mask rules.
+ *
+ * <p>Each rule owns one bit, reads the flags of an alarm once per record, and writes them back only
+ * when its bit changes. An alarm with no flag set has no entry, so the store and its changelog only
+ * hold alarms with a transition in progress. Rules sharing a topology share the store, and the
+ * cache in front of it, so they together cost one changelog record per alarm and commit.
+ */
+public final class TransitionFlags {
+
+  /** The name of the store of flags by alarm name. */
+  public static final String STORE_NAME = "TransitionFlagStore";
+
+  public static final byte LATCHING = 1;
+  public static final byte ONDELAYING = 1 << 1;
+  public static final byte UNSHELVING = 1 << 2;
+  public static final byte MASKING = 1 << 3;
+
+  private static final byte NONE = 0;
+
+  public static final Serde<Byte> SERDE =
+      Serdes.serdeFrom(
+          (Serializer<Byte>)
+              (topic, data) -> (data == null || data == NONE) ? null : new byte[] {data},
+          (Deserializer<Byte>)
+              (topic, data) -> {
+                if (data == null) {
+                  return null;
+                }
+
+                if (data.length != 1) {
+                  throw new SerializationException(
+                      "Transition flags must be one byte, but are " + data.length);
+                }
+
+                return data[0];
+              });
+
+  private TransitionFlags() {}
+
+  /**
+   * Return a builder of the flag store.
+   *
+   * @return The store builder
+   */
+  public static StoreBuilder<KeyValueStore<String, Byte>> storeBuilder() {
+    return Stores.keyValueStoreBuilder(
+            Stores.persistentKeyValueStore(STORE_NAME), Serdes.String(), SERDE)
+        .withCachingEnabled();
+  }
+
+  /**
+   * Return the flags of an alarm.
+   *
+   * @param store The flag store
+   * @param name The alarm name
+   * @return The flags, which are zero if the alarm has no entry
+   */
+  public static byte get(KeyValueStore<String, Byte> store, String name) {
+    Byte flags = store.get(name);
+
+    return (flags == null) ? NONE : flags;
+  }
+
+  /**
+   * Test a flag.
+   *
+   * @param flags The flags
+   * @param flag The flag
+   * @return true if set
+   */
+  public static boolean isSet(byte flags, byte flag) {
+    return (flags & flag) != 0;
+  }
+
+  /**
+   * Set or clear a flag of an alarm, writing to the store only if the flags change.
+   *
+   * @param store The flag store
+   * @param name The alarm name
+   * @param flags The current flags of the alarm, as returned by {@link #get(KeyValueStore, String)}
+   * @param flag The flag
+   * @param value true to set the flag, false to clear it
+   */
+  public static void update(
+      KeyValueStore<String, Byte> store, String name, byte flags, byte flag, boolean value) {
+    byte updated = (byte) (value ? (flags | flag) : (flags & ~flag));
+
+    if (updated != flags) {
+      store.put(name, (updated == NONE) ? null : updated);
+    }
+  }
+}
@@ -0,0 +1,100 @@
+package org.jlab.jaws;
+
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.streams.StreamsConfig;
+
+/**
+ * Named sets of Kafka Streams, producer, and consumer settings that together trade latency for
+ * throughput at every hop.
+ *
+ * <p>Every profile sets the same keys, so one profile fully replaces another. The profile of every
+ * rule is configured with the TUNING_PROFILE environment variable and can be overridden per rule
+ * with TUNING_PROFILE_&lt;RULE&gt;, where RULE is the upper case application id suffix of the rule,
+ * for example TUNING_PROFILE_LATCH for jaws-effective-processor-latch.
+ */
+public enum TuningProfile {
+  /** The Kafka Streams defaults, with caching disabled so every update is forwarded. */
+  DEFAULT(0, 30000, 100, 16 * 1024, "none", 500, 1),
+
+  /**
+   * Forwards and sends every record right away, and fetches as soon as a record is available, for
+   * millisecond hops when alarms are few.
+   */
+  LOW_LATENCY(0, 100, 0, 16 * 1024, "none", 10, 1),
+
+  /**
+   * Caches updates of the same alarm between commits, and batches, compresses, and fetches records
+   * in bulk, for the most records per second during an alarm flood at the cost of up to a commit
+   * interval of latency per hop.
+   */
+  HIGH_THROUGHPUT(64 * 1024 * 1024, 1000, 50, 256 * 1024, "lz4", 500, 64 * 1024);
+
+  /** The prefix of the application id of every rule. */
+  static final String APPLICATION_ID_PREFIX = "jaws-effective-processor-";
+
+  private final Map<String, Object> settings = new LinkedHashMap<>();
+
+  TuningProfile(
+      long cacheMaxBytes,
+      long commitIntervalMs,
+      int lingerMs,
+      int batchSize,
+      String compression,
+      int fetchMaxWaitMs,
+      int fetchMinBytes) {
+    settings.put(StreamsConfig.STATESTORE_CACHE_MAX_BYTES_CONFIG, cacheMaxBytes);
+    settings.put(StreamsConfig.COMMIT_INTERVAL_MS_CONFIG, commitIntervalMs);
+    settings.put(StreamsConfig.producerPrefix(ProducerConfig.LINGER_MS_CONFIG), lingerMs);
+    settings.put(StreamsConfig.producerPrefix(ProducerConfig.BATCH_SIZE_CONFIG), batchSize);
+    settings.put(StreamsConfig.producerPrefix(ProducerConfig.COMPRESSION_TYPE_CONFIG), compression);
+    settings.put(
+        StreamsConfig.consumerPrefix(ConsumerConfig.FETCH_MAX_WAIT_MS_CONFIG), fetchMaxWaitMs);
+    settings.put(
+        StreamsConfig.consumerPrefix(ConsumerConfig.FETCH_MIN_BYTES_CONFIG), fetchMinBytes);
+  }
+
+  /**
+   * Apply the settings of this profile.
+   *
+   * @param props The streams properties
+   */
+  public void apply(Properties props) {
+    props.putAll(settings);
+  }
+
+  /**
+   * Return the settings of this profile.
+   *
+   * @return The settings by streams property name
+   */
+  public Map<String, Object> settings() {
+    return settings;
+  }
+
+  /**
+   * Return the profile configured for a rule.
+   *
+   * @param applicationId The application id of the rule
+   * @return The profile of the rule, else the profile of all rules, else DEFAULT
+   */
+  public static TuningProfile forApplication(String applicationId) {
+    String name = null;
+
+    if (applicationId != null && applicationId.startsWith(APPLICATION_ID_PREFIX)) {
+      String rule = applicationId.substring(APPLICATION_ID_PREFIX.length());
+
+      name = System.getenv("TUNING_PROFILE_" + rule.toUpperCase(Locale.ROOT).replace('-', '_'));
+    }
+
+    if (name == null) {
+      name = System.getenv("TUNING_PROFILE");
+    }
+
+    return (name == null) ? DEFAULT : valueOf(name.toUpperCase(Locale.ROOT));
+  }
+}
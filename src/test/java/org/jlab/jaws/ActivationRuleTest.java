@@ -2,11 +2,15 @@ package org.jlab.jaws;
 
 import static io.confluent.kafka.serializers.AbstractKafkaSchemaSerDeConfig.SCHEMA_REGISTRY_URL_CONFIG;
 
+import java.nio.charset.StandardCharsets;
 import java.time.Duration;
 import java.util.Arrays;
+import java.util.EnumMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
 import org.apache.kafka.streams.*;
+import org.apache.kafka.streams.test.TestRecord;
 import org.jlab.jaws.entity.*;
 import org.junit.After;
 import org.junit.Assert;
@@ -273,4 +277,254 @@ public class ActivationRuleTest {
 
     Assert.assertEquals(new IntermediateMonolog(effectiveReg, ea, transitions), result4.value);
   }
+
+  @Test
+  public void otherInputsKeepTransitionState() {
+    inputTopicActive.pipeInput("alarm1", active1);
+    inputTopicRegisteredMonolog.pipeInput("alarm1", registeredMonolog1);
+    inputTopicOverridden.pipeInput(
+        new AlarmOverrideKey("alarm1", OverriddenAlarmType.Latched),
+        new AlarmOverrideUnion(new LatchedOverride()));
+    inputTopicRegisteredMonolog.pipeInput("alarm1", null);
+
+    List<KeyValue<String, IntermediateMonolog>> results = outputTopic.readKeyValuesToList();
+
+    Assert.assertEquals(4, results.size());
+
+    Assert.assertTrue(results.get(0).value.getTransitions().getTransitionToActive());
+
+    for (KeyValue<String, IntermediateMonolog> result : results.subList(1, 4)) {
+      Assert.assertEquals(active1, result.value.getNotification().getActivation());
+      Assert.assertFalse(result.value.getTransitions().getTransitionToActive());
+      Assert.assertFalse(result.value.getTransitions().getTransitionToNormal());
+    }
+
+    Assert.assertEquals(
+        new LatchedOverride(), results.get(3).value.getNotification().getOverrides().getLatched());
+    Assert.assertNull(results.get(3).value.getRegistration().getAlarm());
+  }
+
+  @Test
+  public void addSubtractPairsLeaveNoEntries() {
+    Map<OverriddenAlarmType, AlarmOverrideUnion> all = new EnumMap<>(OverriddenAlarmType.class);
+    all.put(OverriddenAlarmType.Disabled, new AlarmOverrideUnion(new DisabledOverride()));
+    all.put(OverriddenAlarmType.Filtered, new AlarmOverrideUnion(new FilteredOverride()));
+    all.put(OverriddenAlarmType.Latched, new AlarmOverrideUnion(new LatchedOverride()));
+    all.put(OverriddenAlarmType.Masked, new AlarmOverrideUnion(new MaskedOverride()));
+    all.put(OverriddenAlarmType.OnDelayed, new AlarmOverrideUnion(new OnDelayedOverride()));
+    all.put(OverriddenAlarmType.OffDelayed, new AlarmOverrideUnion(new OffDelayedOverride()));
+    all.put(OverriddenAlarmType.Shelved, new AlarmOverrideUnion(new ShelvedOverride()));
+
+    AlarmOverrideSet overrides = new AlarmOverrideSet();
+
+    for (Map.Entry<OverriddenAlarmType, AlarmOverrideUnion> override : all.entrySet()) {
+      ActivationRule.addOverride(overrides, override.getKey(), override.getValue());
+    }
+
+    Assert.assertEquals(new LatchedOverride(), overrides.getLatched());
+    Assert.assertEquals(new ShelvedOverride(), overrides.getShelved());
+
+    for (OverriddenAlarmType type : all.keySet()) {
+      ActivationRule.subtractOverride(overrides, type);
+    }
+
+    Assert.assertEquals(new AlarmOverrideSet(), overrides);
+
+    // An update is a tombstone of the old value followed by the new one
+    for (Map.Entry<OverriddenAlarmType, AlarmOverrideUnion> override : all.entrySet()) {
+      ActivationRule.addOverride(overrides, override.getKey(), override.getValue());
+      ActivationRule.subtractOverride(overrides, override.getKey());
+      ActivationRule.addOverride(overrides, override.getKey(), override.getValue());
+      ActivationRule.subtractOverride(overrides, override.getKey());
+    }
+
+    Assert.assertEquals(new AlarmOverrideSet(), overrides);
+  }
+
+  @Test
+  public void allOverridesAddedAndRemoved() {
+    inputTopicRegisteredMonolog.pipeInput("alarm1", registeredMonolog1);
+
+    OffDelayedOverride offdelayed = new OffDelayedOverride();
+    offdelayed.setExpiration(1000L);
+
+    List<KeyValue<AlarmOverrideKey, AlarmOverrideUnion>> all =
+        Arrays.asList(
+            KeyValue.pair(
+                new AlarmOverrideKey("alarm1", OverriddenAlarmType.Latched),
+                new AlarmOverrideUnion(new LatchedOverride())),
+            KeyValue.pair(
+                new AlarmOverrideKey("alarm1", OverriddenAlarmType.Masked),
+                new AlarmOverrideUnion(new MaskedOverride())),
+            KeyValue.pair(
+                new AlarmOverrideKey("alarm1", OverriddenAlarmType.OnDelayed),
+                new AlarmOverrideUnion(new OnDelayedOverride(1000L))),
+            KeyValue.pair(
+                new AlarmOverrideKey("alarm1", OverriddenAlarmType.OffDelayed),
+                new AlarmOverrideUnion(offdelayed)),
+            KeyValue.pair(
+                new AlarmOverrideKey("alarm1", OverriddenAlarmType.Shelved),
+                new AlarmOverrideUnion(
+                    new ShelvedOverride(false, 1000L, ShelvedReason.Other, null))));
+
+    for (KeyValue<AlarmOverrideKey, AlarmOverrideUnion> override : all) {
+      inputTopicOverridden.pipeInput(override.key, override.value);
+    }
+
+    // Replace one
+    inputTopicOverridden.pipeInput(
+        new AlarmOverrideKey("alarm1", OverriddenAlarmType.OnDelayed),
+        new AlarmOverrideUnion(new OnDelayedOverride(2000L)));
+
+    List<KeyValue<String, IntermediateMonolog>> results = outputTopic.readKeyValuesToList();
+
+    AlarmOverrideSet overrides =
+        results.get(results.size() - 1).value.getNotification().getOverrides();
+
+    Assert.assertEquals(new LatchedOverride(), overrides.getLatched());
+    Assert.assertEquals(new MaskedOverride(), overrides.getMasked());
+    Assert.assertEquals(new OnDelayedOverride(2000L), overrides.getOndelayed());
+    Assert.assertEquals(offdelayed, overrides.getOffdelayed());
+    Assert.assertNotNull(overrides.getShelved());
+
+    for (KeyValue<AlarmOverrideKey, AlarmOverrideUnion> override : all) {
+      inputTopicOverridden.pipeInput(override.key, null);
+    }
+
+    results = outputTopic.readKeyValuesToList();
+
+    Assert.assertEquals(
+        new AlarmOverrideSet(),
+        results.get(results.size() - 1).value.getNotification().getOverrides());
+  }
+
+  @Test
+  public void coalescesFlappingActivation() {
+    final ActivationRule rule =
+        new ActivationRule(
+            "effective-registrations", "active-alarms", "overridden-alarms", "monolog");
+    rule.coalesceWindow = Duration.ofSeconds(1);
+
+    final Properties props = rule.constructProperties();
+    props.put(SCHEMA_REGISTRY_URL_CONFIG, "mock://testing");
+
+    try (TopologyTestDriver driver = new TopologyTestDriver(rule.constructTopology(props), props)) {
+      TestInputTopic<String, AlarmActivationUnion> active =
+          driver.createInputTopic(
+              rule.inputTopicActive,
+              ActivationRule.ACTIVE_KEY_SERDE.serializer(),
+              ActivationRule.ACTIVE_VALUE_SERDE.serializer());
+      TestOutputTopic<String, IntermediateMonolog> output =
+          driver.createOutputTopic(
+              rule.outputTopic,
+              ActivationRule.MONOLOG_KEY_SERDE.deserializer(),
+              ActivationRule.MONOLOG_VALUE_SERDE.deserializer());
+
+      AlarmActivationUnion normal = new AlarmActivationUnion(new NoActivation());
+
+      // A quiet alarm is joined at once
+      active.pipeInput("alarm1", active1);
+
+      List<KeyValue<String, IntermediateMonolog>> results = output.readKeyValuesToList();
+
+      Assert.assertEquals(1, results.size());
+      Assert.assertTrue(results.get(0).value.getTransitions().getTransitionToActive());
+
+      // Flaps within the window are held
+      active.pipeInput("alarm1", normal);
+      active.pipeInput("alarm1", active2, 1000);
+      active.pipeInput("alarm2", active1);
+
+      results = output.readKeyValuesToList();
+
+      Assert.assertEquals(1, results.size());
+      Assert.assertEquals("alarm2", results.get(0).key);
+
+      // The latest held activation is joined on flush, without a transition
+      driver.advanceWallClockTime(Duration.ofSeconds(1));
+
+      List<TestRecord<String, IntermediateMonolog>> flushed = output.readRecordsToList();
+
+      Assert.assertEquals(1, flushed.size());
+      Assert.assertEquals("alarm1", flushed.get(0).key());
+      Assert.assertEquals(active2, flushed.get(0).value().getNotification().getActivation());
+      Assert.assertFalse(flushed.get(0).value().getTransitions().getTransitionToActive());
+      Assert.assertFalse(flushed.get(0).value().getTransitions().getTransitionToNormal());
+
+      // The trace starts at the held activation, not at the flush
+      Assert.assertEquals(
+          "1000",
+          new String(
+              flushed.get(0).headers().lastHeader(Trace.ORIGIN).value(), StandardCharsets.UTF_8));
+
+      // Nothing is held after the flush
+      driver.advanceWallClockTime(Duration.ofSeconds(1));
+
+      Assert.assertTrue(output.isEmpty());
+
+      long dropped = rule.metrics().recordsDropped.sum();
+
+      // A tombstone discards the held activation, which is counted as dropped
+      active.pipeInput("alarm1", active1);
+      active.pipeInput("alarm1", normal);
+      active.pipeInput("alarm1", null);
+
+      Assert.assertEquals(dropped + 1, rule.metrics().recordsDropped.sum());
+      Assert.assertEquals(2, output.readKeyValuesToList().size());
+
+      driver.advanceWallClockTime(Duration.ofSeconds(1));
+
+      Assert.assertTrue(output.isEmpty());
+    }
+  }
+
+  @Test
+  public void overridePartitionMismatchCounted() {
+    final ActivationRule rule =
+        new ActivationRule(
+            "effective-registrations", "active-alarms", "overridden-alarms", "monolog");
+
+    final Properties props = rule.constructProperties();
+    props.put(SCHEMA_REGISTRY_URL_CONFIG, "mock://testing");
+
+    // The driver consumes every record from partition 0
+    String inPartition = null;
+    String outOfPartition = null;
+
+    for (int i = 0; inPartition == null || outOfPartition == null; i++) {
+      String name = "alarm" + i;
+
+      if (AlarmNamePartitioner.partition(name, 2) == 0) {
+        inPartition = name;
+      } else {
+        outOfPartition = name;
+      }
+    }
+
+    ActivationRule.overridePartitions = 2;
+
+    try (TopologyTestDriver driver = new TopologyTestDriver(rule.constructTopology(props), props)) {
+      TestInputTopic<AlarmOverrideKey, AlarmOverrideUnion> overridden =
+          driver.createInputTopic(
+              rule.inputTopicOverridden,
+              ActivationRule.OVERRIDE_KEY_SERDE.serializer(),
+              ActivationRule.OVERRIDE_VALUE_SERDE.serializer());
+
+      AlarmOverrideUnion disabled = new AlarmOverrideUnion(new DisabledOverride());
+
+      long before = rule.metrics().partitionMismatches.sum();
+
+      overridden.pipeInput(
+          new AlarmOverrideKey(inPartition, OverriddenAlarmType.Disabled), disabled);
+
+      Assert.assertEquals(before, rule.metrics().partitionMismatches.sum());
+
+      overridden.pipeInput(
+          new AlarmOverrideKey(outOfPartition, OverriddenAlarmType.Disabled), disabled);
+
+      Assert.assertEquals(before + 1, rule.metrics().partitionMismatches.sum());
+    } finally {
+      ActivationRule.overridePartitions = 0;
+    }
+  }
 }
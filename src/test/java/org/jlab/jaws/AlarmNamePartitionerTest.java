@@ -0,0 +1,45 @@
+package org.jlab.jaws;
+
+import org.apache.kafka.common.serialization.Serdes;
+import org.apache.kafka.streams.processor.internals.DefaultStreamPartitioner;
+import org.jlab.jaws.entity.AlarmOverrideKey;
+import org.jlab.jaws.entity.OverriddenAlarmType;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class AlarmNamePartitionerTest {
+  private final AlarmNamePartitioner partitioner = new AlarmNamePartitioner();
+
+  private final DefaultStreamPartitioner<String, Object> activations =
+      new DefaultStreamPartitioner<>(Serdes.String().serializer());
+
+  @Test
+  public void coPartitionedWithActivations() {
+    for (int numPartitions : new int[] {1, 3, 8, 12}) {
+      for (int i = 0; i < 100; i++) {
+        String name = "alarm" + i;
+
+        Assert.assertEquals(
+            activations.partition("alarm-activations", name, null, numPartitions),
+            partitioner.partition(
+                "alarm-overrides",
+                new AlarmOverrideKey(name, OverriddenAlarmType.Shelved),
+                null,
+                numPartitions));
+      }
+    }
+  }
+
+  @Test
+  public void allTypesOfAlarmInSamePartition() {
+    AlarmOverrideKey key = new AlarmOverrideKey("alarm1", OverriddenAlarmType.Disabled);
+
+    Integer expected = partitioner.partition("alarm-overrides", key, null, 8);
+
+    for (OverriddenAlarmType type : OverriddenAlarmType.values()) {
+      Assert.assertEquals(
+          expected,
+          partitioner.partition("alarm-overrides", new AlarmOverrideKey("alarm1", type), null, 8));
+    }
+  }
+}
@@ -0,0 +1,41 @@
+package org.jlab.jaws;
+
+import java.lang.management.ManagementFactory;
+import java.util.Collections;
+import javax.management.ObjectName;
+import org.junit.Assert;
+import org.junit.Test;
+import org.rocksdb.BlockBasedTableConfig;
+import org.rocksdb.Options;
+
+public class BoundedRocksDBConfigTest {
+
+  @Test
+  public void storesShareOneBudget() throws Exception {
+    BoundedRocksDBConfig first = new BoundedRocksDBConfig();
+    BoundedRocksDBConfig second = new BoundedRocksDBConfig();
+
+    try (Options options1 = new Options().setTableFormatConfig(new BlockBasedTableConfig());
+        Options options2 = new Options().setTableFormatConfig(new BlockBasedTableConfig())) {
+      first.setConfig("Store1", options1, Collections.emptyMap());
+      second.setConfig("Store2", options2, Collections.emptyMap());
+
+      Assert.assertTrue(options1.writeBufferSize() <= 16 * 1024 * 1024);
+
+      BoundedRocksDBConfig.MemoryMXBean memory = BoundedRocksDBConfig.memory();
+
+      Assert.assertEquals(64 * 1024 * 1024, memory.getBlockCacheCapacity());
+      Assert.assertEquals(16 * 1024 * 1024, memory.getWriteBufferCapacity());
+      Assert.assertTrue(memory.getBlockCacheUsage() >= 0);
+
+      ObjectName name = new ObjectName(BoundedRocksDBConfig.OBJECT_NAME);
+
+      Assert.assertEquals(
+          memory.getBlockCacheCapacity(),
+          ManagementFactory.getPlatformMBeanServer().getAttribute(name, "BlockCacheCapacity"));
+
+      first.close("Store1", options1);
+      second.close("Store2", options2);
+    }
+  }
+}
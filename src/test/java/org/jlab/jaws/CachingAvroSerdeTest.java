@@ -0,0 +1,75 @@
+package org.jlab.jaws;
+
+import static io.confluent.kafka.serializers.AbstractKafkaSchemaSerDeConfig.SCHEMA_REGISTRY_URL_CONFIG;
+
+import io.confluent.kafka.streams.serdes.avro.SpecificAvroSerde;
+import java.util.Map;
+import org.apache.kafka.common.errors.SerializationException;
+import org.jlab.jaws.entity.*;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class CachingAvroSerdeTest {
+  private static final Map<String, String> CONFIG =
+      Map.of(SCHEMA_REGISTRY_URL_CONFIG, "mock://testing");
+
+  private CachingAvroSerde<AlarmOverrideKey> serde;
+  private SpecificAvroSerde<AlarmOverrideKey> confluent;
+  private AlarmOverrideKey key1;
+
+  @Before
+  public void setup() {
+    serde = new CachingAvroSerde<>(AlarmOverrideKey.class);
+    serde.configure(CONFIG, true);
+
+    confluent = new SpecificAvroSerde<>();
+    confluent.configure(CONFIG, true);
+
+    key1 = new AlarmOverrideKey("alarm1", OverriddenAlarmType.Shelved);
+  }
+
+  @Test
+  public void roundTrip() {
+    byte[] bytes = serde.serializer().serialize("overrides", key1);
+
+    Assert.assertEquals(CachingAvroSerde.MAGIC_BYTE, bytes[0]);
+    Assert.assertEquals(key1, serde.deserializer().deserialize("overrides", bytes));
+  }
+
+  @Test
+  public void sameBytesAsConfluent() {
+    Assert.assertArrayEquals(
+        confluent.serializer().serialize("overrides", key1),
+        serde.serializer().serialize("overrides", key1));
+  }
+
+  @Test
+  public void readsConfluent() {
+    byte[] bytes = confluent.serializer().serialize("overrides", key1);
+
+    Assert.assertEquals(key1, serde.deserializer().deserialize("overrides", bytes));
+  }
+
+  @Test
+  public void readByConfluent() {
+    byte[] bytes = serde.serializer().serialize("overrides", key1);
+
+    Assert.assertEquals(key1, confluent.deserializer().deserialize("overrides", bytes));
+  }
+
+  @Test
+  public void tombstone() {
+    Assert.assertNull(serde.serializer().serialize("overrides", null));
+    Assert.assertNull(serde.deserializer().deserialize("overrides", null));
+  }
+
+  @Test(expected = SerializationException.class)
+  public void unknownMagicByte() {
+    byte[] bytes = serde.serializer().serialize("overrides", key1);
+
+    bytes[0] = MonologSerde.VERSION;
+
+    serde.deserializer().deserialize("overrides", bytes);
+  }
+}
@@ -0,0 +1,250 @@
+package org.jlab.jaws;
+
+import static io.confluent.kafka.serializers.AbstractKafkaSchemaSerDeConfig.SCHEMA_REGISTRY_URL_CONFIG;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+import java.util.function.Consumer;
+import org.apache.kafka.streams.*;
+import org.jlab.jaws.clients.*;
+import org.jlab.jaws.entity.*;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class EffectiveProcessorTest {
+  @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+  private Instant start;
+  private Pipeline fused;
+  private Pipeline pipelined;
+  private AlarmAction class1;
+  private Alarm instance1;
+  private AlarmActivationUnion active;
+  private AlarmActivationUnion normal;
+
+  @Before
+  public void setup() throws IOException {
+    start = Instant.now();
+
+    fused = new Pipeline(true, folder.newFolder("fused").toPath(), start);
+    pipelined = new Pipeline(false, folder.newFolder("pipelined").toPath(), start);
+
+    instance1 = new Alarm();
+    instance1.setAction("base");
+    instance1.setSource(new Source());
+    instance1.setLocation(Arrays.asList("NL"));
+
+    class1 = new AlarmAction();
+    class1.setLatchable(false);
+    class1.setSystem("CAMAC");
+    class1.setFilterable(true);
+    class1.setCorrectiveaction("fix it");
+    class1.setPriority(AlarmPriority.P3_MINOR);
+    class1.setRationale("because");
+
+    active = new AlarmActivationUnion(new Activation());
+    normal = new AlarmActivationUnion(new NoActivation());
+  }
+
+  @After
+  public void tearDown() {
+    fused.driver.close();
+    pipelined.driver.close();
+  }
+
+  /**
+   * Apply the same input to the fused and the pipelined rule chain, assert both yield the same
+   * effective alarms and notifications, and return the state of the last effective alarm.
+   */
+  private AlarmState step(Consumer<Pipeline> input) {
+    input.accept(fused);
+    input.accept(pipelined);
+
+    List<KeyValue<String, EffectiveAlarm>> alarms = normalized(fused.alarms.readKeyValuesToList());
+
+    Assert.assertFalse(alarms.isEmpty());
+    Assert.assertEquals(alarms, normalized(pipelined.alarms.readKeyValuesToList()));
+
+    Assert.assertEquals(
+        normalizedNotifications(fused.notifications.readKeyValuesToList()),
+        normalizedNotifications(pipelined.notifications.readKeyValuesToList()));
+
+    return alarms.get(alarms.size() - 1).value.getNotification().getState();
+  }
+
+  private void register() {
+    Assert.assertEquals(
+        AlarmState.Normal,
+        step(
+            p -> {
+              p.classes.pipeInput("base", class1);
+              p.instances.pipeInput("alarm1", instance1);
+            }));
+  }
+
+  @Test
+  public void latchRoundTrip() {
+    class1.setLatchable(true);
+
+    register();
+
+    Assert.assertEquals(
+        AlarmState.ActiveLatched, step(p -> p.activations.pipeInput("alarm1", active)));
+    Assert.assertEquals(
+        AlarmState.ActiveLatched, step(p -> p.activations.pipeInput("alarm1", normal)));
+
+    // Acknowledged
+    Assert.assertEquals(
+        AlarmState.Normal,
+        step(
+            p ->
+                p.overrides.pipeInput(
+                    new AlarmOverrideKey("alarm1", OverriddenAlarmType.Latched), null)));
+  }
+
+  @Test
+  public void ondelayRoundTrip() {
+    class1.setOndelayseconds(5L);
+
+    register();
+
+    Assert.assertEquals(
+        AlarmState.NormalOnDelayed, step(p -> p.activations.pipeInput("alarm1", active)));
+
+    // The on-delay expires
+    Assert.assertEquals(
+        AlarmState.Active, step(p -> p.driver.advanceWallClockTime(Duration.ofSeconds(10))));
+  }
+
+  @Test
+  public void oneshotShelveRoundTrip() {
+    register();
+
+    Assert.assertEquals(AlarmState.Active, step(p -> p.activations.pipeInput("alarm1", active)));
+
+    ShelvedOverride shelved =
+        new ShelvedOverride(
+            true, start.plusSeconds(3600).toEpochMilli(), ShelvedReason.Other, null);
+
+    Assert.assertEquals(
+        AlarmState.NormalOneShotShelved,
+        step(
+            p ->
+                p.overrides.pipeInput(
+                    new AlarmOverrideKey("alarm1", OverriddenAlarmType.Shelved),
+                    new AlarmOverrideUnion(shelved))));
+
+    // The one-shot shelve is removed once the alarm is normal
+    Assert.assertEquals(AlarmState.Normal, step(p -> p.activations.pipeInput("alarm1", normal)));
+  }
+
+  @Test
+  public void continuousShelveExpires() {
+    register();
+
+    Assert.assertEquals(AlarmState.Active, step(p -> p.activations.pipeInput("alarm1", active)));
+
+    ShelvedOverride shelved =
+        new ShelvedOverride(false, start.plusSeconds(5).toEpochMilli(), ShelvedReason.Other, null);
+
+    Assert.assertEquals(
+        AlarmState.NormalContinuousShelved,
+        step(
+            p ->
+                p.overrides.pipeInput(
+                    new AlarmOverrideKey("alarm1", OverriddenAlarmType.Shelved),
+                    new AlarmOverrideUnion(shelved))));
+
+    Assert.assertEquals(
+        AlarmState.Active, step(p -> p.driver.advanceWallClockTime(Duration.ofSeconds(10))));
+  }
+
+  /**
+   * Clear the on-delay expiration, which each chain computes from the time it processed the
+   * activation.
+   */
+  private static List<KeyValue<String, EffectiveAlarm>> normalized(
+      List<KeyValue<String, EffectiveAlarm>> alarms) {
+    for (KeyValue<String, EffectiveAlarm> alarm : alarms) {
+      normalize(alarm.value.getNotification());
+    }
+
+    return alarms;
+  }
+
+  private static List<KeyValue<String, EffectiveNotification>> normalizedNotifications(
+      List<KeyValue<String, EffectiveNotification>> notifications) {
+    for (KeyValue<String, EffectiveNotification> notification : notifications) {
+      normalize(notification.value);
+    }
+
+    return notifications;
+  }
+
+  private static void normalize(EffectiveNotification notification) {
+    if (notification != null && notification.getOverrides().getOndelayed() != null) {
+      notification.getOverrides().getOndelayed().setExpiration(0L);
+    }
+  }
+
+  /** The rule chain of the EffectiveProcessor, run in one TopologyTestDriver. */
+  private static final class Pipeline {
+    final TopologyTestDriver driver;
+    final TestInputTopic<String, AlarmAction> classes;
+    final TestInputTopic<String, Alarm> instances;
+    final TestInputTopic<String, AlarmActivationUnion> activations;
+    final TestInputTopic<AlarmOverrideKey, AlarmOverrideUnion> overrides;
+    final TestOutputTopic<String, EffectiveAlarm> alarms;
+    final TestOutputTopic<String, EffectiveNotification> notifications;
+
+    Pipeline(boolean fused, Path stateDir, Instant start) {
+      SharedRuntimeRule rule = new SharedRuntimeRule(EffectiveProcessor.rules(fused));
+
+      Properties props = rule.constructProperties();
+      props.put(SCHEMA_REGISTRY_URL_CONFIG, "mock://testing");
+      props.put(StreamsConfig.STATE_DIR_CONFIG, stateDir.toString());
+
+      driver = new TopologyTestDriver(rule.constructTopology(props), props, start);
+
+      classes =
+          driver.createInputTopic(
+              ActionProducer.TOPIC,
+              RegistrationRule.INPUT_KEY_CLASSES_SERDE.serializer(),
+              RegistrationRule.INPUT_VALUE_CLASSES_SERDE.serializer());
+      instances =
+          driver.createInputTopic(
+              AlarmProducer.TOPIC,
+              RegistrationRule.INPUT_KEY_INSTANCES_SERDE.serializer(),
+              RegistrationRule.INPUT_VALUE_INSTANCES_SERDE.serializer());
+      activations =
+          driver.createInputTopic(
+              ActivationProducer.TOPIC,
+              ActivationRule.ACTIVE_KEY_SERDE.serializer(),
+              ActivationRule.ACTIVE_VALUE_SERDE.serializer());
+      overrides =
+          driver.createInputTopic(
+              OverrideProducer.TOPIC,
+              ActivationRule.OVERRIDE_KEY_SERDE.serializer(),
+              ActivationRule.OVERRIDE_VALUE_SERDE.serializer());
+      alarms =
+          driver.createOutputTopic(
+              EffectiveAlarmProducer.TOPIC,
+              EffectiveStateRule.EFFECTIVE_ALARM_KEY_SERDE.deserializer(),
+              EffectiveStateRule.EFFECTIVE_ALARM_VALUE_SERDE.deserializer());
+      notifications =
+          driver.createOutputTopic(
+              EffectiveNotificationProducer.TOPIC,
+              EffectiveStateRule.EFFECTIVE_NOTIFICATION_KEY_SERDE.deserializer(),
+              EffectiveStateRule.EFFECTIVE_NOTIFICATION_VALUE_SERDE.deserializer());
+    }
+  }
+}
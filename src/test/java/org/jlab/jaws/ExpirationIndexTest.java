@@ -0,0 +1,93 @@
+package org.jlab.jaws;
+
+import java.util.Arrays;
+import java.util.Collections;
+import org.apache.kafka.common.serialization.Serdes;
+import org.apache.kafka.streams.processor.api.MockProcessorContext;
+import org.apache.kafka.streams.state.KeyValueStore;
+import org.apache.kafka.streams.state.Stores;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ExpirationIndexTest {
+  private KeyValueStore<String, String> store;
+  private ExpirationIndex index;
+
+  @Before
+  public void setup() {
+    store =
+        Stores.keyValueStoreBuilder(
+                Stores.inMemoryKeyValueStore("ExpirationStore"), Serdes.String(), Serdes.String())
+            .withLoggingDisabled()
+            .build();
+
+    store.init(new MockProcessorContext<>().getStateStoreContext(), store);
+
+    index = new ExpirationIndex(store);
+  }
+
+  @After
+  public void tearDown() {
+    store.close();
+  }
+
+  @Test
+  public void pollInExpirationOrder() {
+    index.schedule("alarm3", 300);
+    index.schedule("alarm1", 100);
+    index.schedule("alarm2", 200);
+
+    Assert.assertEquals(Arrays.asList("alarm1", "alarm2"), index.pollDue(200));
+    Assert.assertEquals(Collections.emptyList(), index.pollDue(299));
+    Assert.assertEquals(Arrays.asList("alarm3"), index.pollDue(300));
+    Assert.assertEquals(0, store.approximateNumEntries());
+  }
+
+  @Test
+  public void sameExpiration() {
+    index.schedule("alarm1", 100);
+    index.schedule("alarm2", 100);
+
+    Assert.assertEquals(Arrays.asList("alarm1", "alarm2"), index.pollDue(100));
+  }
+
+  @Test
+  public void differentDigitCount() {
+    index.schedule("alarm1", 1000);
+    index.schedule("alarm2", 999);
+
+    Assert.assertEquals(Arrays.asList("alarm2"), index.pollDue(999));
+  }
+
+  @Test
+  public void reschedule() {
+    index.schedule("alarm1", 100);
+    index.schedule("alarm1", 500);
+
+    Assert.assertEquals(Collections.emptyList(), index.pollDue(100));
+    Assert.assertEquals(Arrays.asList("alarm1"), index.pollDue(500));
+  }
+
+  @Test
+  public void cancel() {
+    index.schedule("alarm1", 100);
+
+    Assert.assertTrue(index.cancel("alarm1"));
+    Assert.assertFalse(index.cancel("alarm1"));
+    Assert.assertEquals(Collections.emptyList(), index.pollDue(100));
+  }
+
+  @Test
+  public void survivesNewIndex() {
+    index.schedule("alarm1", 100);
+    index.schedule("alarm2", 200);
+
+    // A new index over the same (restored) store, as after a restart or rebalance
+    ExpirationIndex restored = new ExpirationIndex(store);
+
+    Assert.assertEquals(Arrays.asList("alarm1", "alarm2"), restored.pollDue(1000));
+    Assert.assertEquals(0, store.approximateNumEntries());
+  }
+}
@@ -0,0 +1,210 @@
+package org.jlab.jaws;
+
+import static io.confluent.kafka.serializers.AbstractKafkaSchemaSerDeConfig.SCHEMA_REGISTRY_URL_CONFIG;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import org.apache.kafka.common.header.Header;
+import org.apache.kafka.streams.*;
+import org.apache.kafka.streams.test.TestRecord;
+import org.jlab.jaws.entity.*;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class FusedPipelineRuleTest {
+  private TopologyTestDriver testDriver;
+  private TestInputTopic<String, AlarmAction> inputTopicClasses;
+  private TestInputTopic<String, Alarm> inputTopicInstances;
+  private TestInputTopic<String, AlarmActivationUnion> inputTopicActive;
+  private TestOutputTopic<String, EffectiveAlarm> effectiveAlarmTopic;
+  private TestOutputTopic<AlarmOverrideKey, AlarmOverrideUnion> overrideTopic;
+  private Alarm instance1;
+  private AlarmAction class1;
+  private AlarmActivationUnion active1;
+
+  @Before
+  public void setup() {
+    final FusedPipelineRule rule =
+        new FusedPipelineRule(
+            "alarm-classes",
+            "alarm-instances",
+            "alarm-activations",
+            "alarm-overrides",
+            "effective-registrations",
+            "effective-notifications",
+            "effective-alarms");
+
+    final Properties props = rule.constructProperties();
+    props.put(SCHEMA_REGISTRY_URL_CONFIG, "mock://testing");
+    final Topology top = rule.constructTopology(props);
+
+    // System.err.println(top.describe());
+
+    testDriver = new TopologyTestDriver(top, props);
+
+    // setup test topics
+    inputTopicClasses =
+        testDriver.createInputTopic(
+            rule.registration.inputTopicClasses,
+            RegistrationRule.INPUT_KEY_CLASSES_SERDE.serializer(),
+            RegistrationRule.INPUT_VALUE_CLASSES_SERDE.serializer());
+    inputTopicInstances =
+        testDriver.createInputTopic(
+            rule.registration.inputTopicInstances,
+            RegistrationRule.INPUT_KEY_INSTANCES_SERDE.serializer(),
+            RegistrationRule.INPUT_VALUE_INSTANCES_SERDE.serializer());
+    inputTopicActive =
+        testDriver.createInputTopic(
+            rule.activation.inputTopicActive,
+            ActivationRule.ACTIVE_KEY_SERDE.serializer(),
+            ActivationRule.ACTIVE_VALUE_SERDE.serializer());
+    effectiveAlarmTopic =
+        testDriver.createOutputTopic(
+            rule.effective.effectiveAlarmTopic,
+            EffectiveStateRule.EFFECTIVE_ALARM_KEY_SERDE.deserializer(),
+            EffectiveStateRule.EFFECTIVE_ALARM_VALUE_SERDE.deserializer());
+    overrideTopic =
+        testDriver.createOutputTopic(
+            rule.activation.inputTopicOverridden,
+            ActivationRule.OVERRIDE_KEY_SERDE.deserializer(),
+            ActivationRule.OVERRIDE_VALUE_SERDE.deserializer());
+
+    instance1 = new Alarm();
+    instance1.setAction("base");
+    instance1.setSource(new Source());
+    instance1.setLocation(Arrays.asList("NL"));
+
+    class1 = new AlarmAction();
+    class1.setLatchable(false);
+    class1.setSystem("CAMAC");
+    class1.setFilterable(true);
+    class1.setCorrectiveaction("fix it");
+    class1.setPriority(AlarmPriority.P3_MINOR);
+    class1.setRationale("because");
+
+    active1 = new AlarmActivationUnion();
+    active1.setUnion(new Activation());
+  }
+
+  @After
+  public void tearDown() {
+    testDriver.close();
+  }
+
+  private EffectiveAlarm lastEffective(String name) {
+    Map<String, EffectiveAlarm> results = effectiveAlarmTopic.readKeyValuesToMap();
+
+    System.err.println("\n\n\n");
+    for (Map.Entry<String, EffectiveAlarm> result : results.entrySet()) {
+      System.err.println(result);
+    }
+
+    return results.get(name);
+  }
+
+  @Test
+  public void registeredNormal() {
+    inputTopicClasses.pipeInput("base", class1);
+    inputTopicInstances.pipeInput("alarm1", instance1);
+
+    EffectiveAlarm result = lastEffective("alarm1");
+
+    Assert.assertNotNull(result);
+    Assert.assertEquals(instance1, result.getRegistration().getAlarm());
+    Assert.assertEquals(class1, result.getRegistration().getAction());
+    Assert.assertEquals(AlarmState.Normal, result.getNotification().getState());
+  }
+
+  @Test
+  public void active() {
+    inputTopicClasses.pipeInput("base", class1);
+    inputTopicInstances.pipeInput("alarm1", instance1);
+    inputTopicActive.pipeInput("alarm1", active1);
+
+    EffectiveAlarm result = lastEffective("alarm1");
+
+    Assert.assertEquals(AlarmState.Active, result.getNotification().getState());
+    Assert.assertEquals(active1, result.getNotification().getActivation());
+
+    List<KeyValue<AlarmOverrideKey, AlarmOverrideUnion>> overrides =
+        overrideTopic.readKeyValuesToList();
+
+    Assert.assertEquals(0, overrides.size());
+  }
+
+  @Test
+  public void latching() {
+    class1.setLatchable(true);
+
+    inputTopicClasses.pipeInput("base", class1);
+    inputTopicInstances.pipeInput("alarm1", instance1);
+    inputTopicActive.pipeInput("alarm1", active1);
+
+    List<KeyValue<AlarmOverrideKey, AlarmOverrideUnion>> overrides =
+        overrideTopic.readKeyValuesToList();
+
+    Assert.assertEquals(1, overrides.size());
+    Assert.assertEquals(
+        new AlarmOverrideKey("alarm1", OverriddenAlarmType.Latched), overrides.get(0).key);
+
+    // The Latched override is fed back into the activation rule within the same topology
+    EffectiveAlarm result = lastEffective("alarm1");
+
+    Assert.assertEquals(AlarmState.ActiveLatched, result.getNotification().getState());
+    Assert.assertNotNull(result.getNotification().getOverrides().getLatched());
+  }
+
+  @Test
+  public void ondelaying() {
+    class1.setOndelayseconds(5l);
+
+    inputTopicClasses.pipeInput("base", class1);
+    inputTopicInstances.pipeInput("alarm1", instance1);
+    inputTopicActive.pipeInput("alarm1", active1);
+
+    List<KeyValue<AlarmOverrideKey, AlarmOverrideUnion>> overrides =
+        overrideTopic.readKeyValuesToList();
+
+    Assert.assertEquals(1, overrides.size());
+    Assert.assertEquals(
+        new AlarmOverrideKey("alarm1", OverriddenAlarmType.OnDelayed), overrides.get(0).key);
+
+    EffectiveAlarm result = lastEffective("alarm1");
+
+    Assert.assertEquals(AlarmState.NormalOnDelayed, result.getNotification().getState());
+  }
+
+  @Test
+  public void traced() {
+    inputTopicClasses.pipeInput("base", class1);
+    inputTopicInstances.pipeInput("alarm1", instance1);
+
+    effectiveAlarmTopic.readRecordsToList();
+
+    inputTopicActive.pipeInput("alarm1", active1, 1000L);
+
+    List<TestRecord<String, EffectiveAlarm>> records = effectiveAlarmTopic.readRecordsToList();
+
+    TestRecord<String, EffectiveAlarm> result = records.get(records.size() - 1);
+
+    Assert.assertEquals(
+        "1000",
+        new String(result.headers().lastHeader(Trace.ORIGIN).value(), StandardCharsets.UTF_8));
+
+    List<String> stages = new ArrayList<>();
+
+    for (Header hop : result.headers().headers(Trace.HOP)) {
+      String value = new String(hop.value(), StandardCharsets.UTF_8);
+
+      stages.add(value.substring(0, value.indexOf('@')));
+    }
+
+    Assert.assertEquals(List.of("activation", "latch", "ondelay", "oneshot", "state"), stages);
+  }
+}
@@ -0,0 +1,41 @@
+package org.jlab.jaws;
+
+import java.nio.charset.StandardCharsets;
+import org.apache.kafka.streams.processor.api.Record;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class HeaderProviderTest {
+
+  @Test
+  public void populate() {
+    HeaderProvider provider = new HeaderProvider("jaws-effective-processor-test");
+
+    Record<String, String> record = new Record<>("alarm1", "value", 0);
+
+    provider.populate(record);
+
+    Assert.assertEquals(3, record.headers().toArray().length);
+    Assert.assertEquals(
+        "jaws-effective-processor-test",
+        new String(record.headers().lastHeader("producer").value(), StandardCharsets.UTF_8));
+    Assert.assertEquals(
+        System.getProperty("user.name"),
+        new String(record.headers().lastHeader("user").value(), StandardCharsets.UTF_8));
+    Assert.assertNotNull(record.headers().lastHeader("host"));
+  }
+
+  @Test
+  public void sharedAcrossRecords() {
+    HeaderProvider provider = new HeaderProvider("jaws-effective-processor-test");
+
+    Record<String, String> record1 = new Record<>("alarm1", "value", 0);
+    Record<String, String> record2 = new Record<>("alarm2", "value", 0);
+
+    provider.populate(record1);
+    provider.populate(record2);
+
+    Assert.assertSame(
+        record1.headers().lastHeader("host").value(), record2.headers().lastHeader("host").value());
+  }
+}
@@ -0,0 +1,113 @@
+package org.jlab.jaws;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import org.apache.kafka.clients.admin.MockAdminClient;
+import org.apache.kafka.common.Node;
+import org.apache.kafka.common.TopicPartitionInfo;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class IntermediateTopicsTest {
+  private static final String SOURCE = "alarm-activations";
+  private static final List<String> TOPICS = List.of("intermediate-a", "intermediate-b");
+
+  private final Node broker = new Node(0, "localhost", 9092);
+  private MockAdminClient admin;
+
+  @Before
+  public void setup() {
+    admin = new MockAdminClient(Collections.singletonList(broker), broker);
+  }
+
+  @After
+  public void tearDown() {
+    admin.close();
+  }
+
+  @Test
+  public void createsMissingTopicsWithSourcePartitions() throws Exception {
+    addTopic(SOURCE, 3);
+    addTopic("intermediate-a", 3);
+
+    IntermediateTopics.create(admin, null, SOURCE, TOPICS);
+
+    Assert.assertEquals(3, partitions("intermediate-b"));
+  }
+
+  @Test
+  public void configuredPartitionsAccepted() throws Exception {
+    addTopic(SOURCE, 3);
+
+    IntermediateTopics.create(admin, "3", SOURCE, TOPICS);
+
+    Assert.assertEquals(3, partitions("intermediate-a"));
+    Assert.assertEquals(3, partitions("intermediate-b"));
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void configuredPartitionsOtherThanSourceRejected() throws Exception {
+    addTopic(SOURCE, 3);
+
+    IntermediateTopics.create(admin, "2", SOURCE, TOPICS);
+  }
+
+  @Test
+  public void existingTopicWithOtherPartitionsRejected() throws Exception {
+    addTopic(SOURCE, 3);
+    addTopic("intermediate-a", 2);
+
+    try {
+      IntermediateTopics.create(admin, null, SOURCE, TOPICS);
+      Assert.fail("Expected IllegalStateException");
+    } catch (IllegalStateException e) {
+      // Nothing is created
+      Assert.assertFalse(admin.listTopics().names().get().contains("intermediate-b"));
+    }
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void missingSourceTopicRejected() throws Exception {
+    IntermediateTopics.create(admin, null, SOURCE, TOPICS);
+  }
+
+  @Test
+  public void coPartitionedTopicsChecked() throws Exception {
+    addTopic(SOURCE, 3);
+    addTopic("alarm-overrides", 3);
+
+    Assert.assertEquals(3, IntermediateTopics.checkCoPartitioned(admin, SOURCE, "alarm-overrides"));
+    Assert.assertEquals(0, IntermediateTopics.checkCoPartitioned(admin, SOURCE, "missing"));
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void notCoPartitionedTopicsRejected() throws Exception {
+    addTopic(SOURCE, 3);
+    addTopic("alarm-overrides", 1);
+
+    IntermediateTopics.checkCoPartitioned(admin, SOURCE, "alarm-overrides");
+  }
+
+  private void addTopic(String name, int partitions) {
+    List<TopicPartitionInfo> info = new ArrayList<>();
+
+    for (int i = 0; i < partitions; i++) {
+      info.add(new TopicPartitionInfo(i, broker, List.of(broker), List.of(broker)));
+    }
+
+    admin.addTopic(false, name, info, Collections.emptyMap());
+  }
+
+  private int partitions(String topic) throws Exception {
+    return admin
+        .describeTopics(List.of(topic))
+        .allTopicNames()
+        .get()
+        .get(topic)
+        .partitions()
+        .size();
+  }
+}
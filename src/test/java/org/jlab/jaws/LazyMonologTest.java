@@ -0,0 +1,172 @@
+package org.jlab.jaws;
+
+import static io.confluent.kafka.serializers.AbstractKafkaSchemaSerDeConfig.SCHEMA_REGISTRY_URL_CONFIG;
+
+import io.confluent.kafka.streams.serdes.avro.SpecificAvroSerde;
+import java.util.Arrays;
+import java.util.Map;
+import org.jlab.jaws.entity.*;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class LazyMonologTest {
+  private static final Map<String, String> CONFIG =
+      Map.of(SCHEMA_REGISTRY_URL_CONFIG, "mock://testing");
+
+  private LazyMonologSerde serde;
+  private MonologSerde monologSerde;
+  private IntermediateMonolog monolog1;
+
+  @Before
+  public void setup() {
+    serde = new LazyMonologSerde();
+    serde.configure(CONFIG, false);
+
+    monologSerde = new MonologSerde();
+    monologSerde.configure(CONFIG, false);
+
+    Alarm instance1 = new Alarm();
+    instance1.setAction("base");
+    instance1.setSource(new Source());
+    instance1.setLocation(Arrays.asList("NL"));
+
+    AlarmAction class1 = new AlarmAction();
+    class1.setLatchable(true);
+    class1.setOndelayseconds(5L);
+    class1.setSystem("CAMAC");
+    class1.setFilterable(true);
+    class1.setCorrectiveaction("fix it");
+    class1.setPriority(AlarmPriority.P3_MINOR);
+    class1.setRationale("because");
+
+    AlarmActivationUnion active1 = new AlarmActivationUnion();
+    active1.setUnion(new Activation());
+
+    AlarmOverrideSet overrides = new AlarmOverrideSet();
+    overrides.setLatched(new LatchedOverride());
+
+    ProcessorTransitions transitions = new ProcessorTransitions();
+    transitions.setTransitionToActive(true);
+
+    monolog1 =
+        IntermediateMonolog.newBuilder()
+            .setRegistration(
+                EffectiveRegistration.newBuilder().setAction(class1).setAlarm(instance1).build())
+            .setNotification(
+                EffectiveNotification.newBuilder()
+                    .setActivation(active1)
+                    .setOverrides(overrides)
+                    .setState(AlarmState.ActiveLatched)
+                    .build())
+            .setTransitions(transitions)
+            .build();
+  }
+
+  private LazyMonolog read(IntermediateMonolog monolog) {
+    return serde.deserializer().deserialize("intermediate", serialize(monolog));
+  }
+
+  private byte[] serialize(IntermediateMonolog monolog) {
+    return monologSerde.serializer().serialize("intermediate", monolog);
+  }
+
+  private static void assertSameFields(LazyMonolog expected, LazyMonolog actual) {
+    Assert.assertEquals(expected.isLatchable(), actual.isLatchable());
+    Assert.assertEquals(expected.getOndelayseconds(), actual.getOndelayseconds());
+    Assert.assertEquals(expected.isLatched(), actual.isLatched());
+    Assert.assertEquals(expected.isOndelayed(), actual.isOndelayed());
+    Assert.assertEquals(expected.isOneshotShelved(), actual.isOneshotShelved());
+    Assert.assertEquals(expected.isTransitionToActive(), actual.isTransitionToActive());
+    Assert.assertEquals(expected.isTransitionToNormal(), actual.isTransitionToNormal());
+  }
+
+  @Test
+  public void projectedFields() {
+    LazyMonolog lazy = read(monolog1);
+
+    Assert.assertTrue(lazy.isLatchable());
+    Assert.assertEquals(5, lazy.getOndelayseconds());
+    Assert.assertTrue(lazy.isLatched());
+    Assert.assertFalse(lazy.isOndelayed());
+    Assert.assertFalse(lazy.isOneshotShelved());
+    Assert.assertTrue(lazy.isTransitionToActive());
+    Assert.assertFalse(lazy.isTransitionToNormal());
+
+    assertSameFields(LazyMonolog.of(monolog1), lazy);
+  }
+
+  @Test
+  public void noAction() {
+    IntermediateMonolog monolog2 = IntermediateMonolog.newBuilder(monolog1).build();
+    monolog2.getRegistration().setAction(null);
+
+    LazyMonolog lazy = read(monolog2);
+
+    Assert.assertFalse(lazy.isLatchable());
+    Assert.assertEquals(0, lazy.getOndelayseconds());
+    assertSameFields(LazyMonolog.of(monolog2), lazy);
+  }
+
+  @Test
+  public void oneshotShelved() {
+    IntermediateMonolog monolog2 = IntermediateMonolog.newBuilder(monolog1).build();
+    monolog2
+        .getNotification()
+        .getOverrides()
+        .setShelved(new ShelvedOverride(true, 12345L, ShelvedReason.Other, null));
+    monolog2.getTransitions().setTransitionToNormal(true);
+
+    LazyMonolog lazy = read(monolog2);
+
+    Assert.assertTrue(lazy.isOneshotShelved());
+    Assert.assertTrue(lazy.isTransitionToNormal());
+    assertSameFields(LazyMonolog.of(monolog2), lazy);
+  }
+
+  @Test
+  public void unmodifiedPassesBytes() {
+    byte[] bytes = serialize(monolog1);
+
+    LazyMonolog lazy = serde.deserializer().deserialize("intermediate", bytes);
+
+    lazy.isLatchable();
+
+    Assert.assertSame(bytes, serde.serializer().serialize("intermediate", lazy));
+  }
+
+  @Test
+  public void modifiedEncodedAnew() {
+    LazyMonolog lazy = read(monolog1);
+
+    lazy.modify().getTransitions().setLatching(true);
+
+    IntermediateMonolog output =
+        monologSerde
+            .deserializer()
+            .deserialize("intermediate", serde.serializer().serialize("intermediate", lazy));
+
+    Assert.assertTrue(output.getTransitions().getLatching());
+    Assert.assertEquals(monolog1.getRegistration(), output.getRegistration());
+  }
+
+  @Test
+  public void readsConfluentFormat() {
+    SpecificAvroSerde<IntermediateMonolog> confluent = new SpecificAvroSerde<>();
+    confluent.configure(CONFIG, false);
+
+    byte[] bytes = confluent.serializer().serialize("intermediate", monolog1);
+
+    LazyMonolog lazy = serde.deserializer().deserialize("intermediate", bytes);
+
+    Assert.assertEquals(monolog1, lazy.get());
+    assertSameFields(LazyMonolog.of(monolog1), lazy);
+  }
+
+  @Test
+  public void tombstone() {
+    Assert.assertNull(serde.serializer().serialize("intermediate", null));
+    Assert.assertNull(serde.deserializer().deserialize("intermediate", null));
+    Assert.assertNull(LazyMonolog.of(null));
+  }
+}
@@ -0,0 +1,109 @@
+package org.jlab.jaws;
+
+import com.sun.net.httpserver.HttpServer;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import org.apache.kafka.streams.processor.api.MockProcessorContext;
+import org.apache.kafka.streams.processor.api.Processor;
+import org.apache.kafka.streams.processor.api.ProcessorContext;
+import org.apache.kafka.streams.processor.api.Record;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class MetricsTest {
+
+  @Test
+  public void countsAndTimesProcessor() {
+    RuleMetrics metrics = Metrics.forRule("MetricsTestRule");
+
+    Processor<String, String, String, String> processor =
+        metrics
+            .timed(
+                "Test-Processor",
+                () ->
+                    new Processor<String, String, String, String>() {
+                      private ProcessorContext<String, String> context;
+
+                      @Override
+                      public void init(ProcessorContext<String, String> context) {
+                        this.context = context;
+                      }
+
+                      @Override
+                      public void process(Record<String, String> record) {
+                        if (record.value() == null) {
+                          metrics.dropped();
+                        } else {
+                          context.forward(record);
+                        }
+                      }
+                    })
+            .get();
+
+    MockProcessorContext<String, String> context = new MockProcessorContext<>();
+
+    processor.init(context);
+    processor.process(new Record<>("alarm1", "active", 0));
+    processor.process(new Record<>("alarm2", null, 0));
+
+    metrics.overrideEmitted();
+
+    Assert.assertEquals(1, context.forwarded().size());
+
+    String export = Metrics.scrape();
+
+    Assert.assertTrue(export.contains("jaws_rule_records_in_total{rule=\"MetricsTestRule\"} 2\n"));
+    Assert.assertTrue(export.contains("jaws_rule_records_out_total{rule=\"MetricsTestRule\"} 1\n"));
+    Assert.assertTrue(
+        export.contains("jaws_rule_records_dropped_total{rule=\"MetricsTestRule\"} 1\n"));
+    Assert.assertTrue(
+        export.contains("jaws_rule_overrides_emitted_total{rule=\"MetricsTestRule\"} 1\n"));
+    Assert.assertTrue(
+        export.contains(
+            "jaws_rule_process_latency_seconds_count"
+                + "{rule=\"MetricsTestRule\",processor=\"Test-Processor\"} 2\n"));
+    Assert.assertTrue(
+        export.contains(
+            "jaws_rule_process_latency_seconds"
+                + "{rule=\"MetricsTestRule\",processor=\"Test-Processor\",quantile=\"0.99\"} "));
+    Assert.assertEquals(1, count(export, "# TYPE jaws_rule_process_latency_seconds summary\n"));
+  }
+
+  @Test
+  public void servesExport() throws Exception {
+    Metrics.forRule("MetricsTestServedRule").dropped();
+
+    HttpServer server = Metrics.serve(0);
+
+    try {
+      URL url = new URL("http://localhost:" + server.getAddress().getPort() + Metrics.PATH);
+
+      HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+
+      Assert.assertEquals(200, connection.getResponseCode());
+      Assert.assertEquals(Metrics.CONTENT_TYPE, connection.getContentType());
+
+      try (InputStream in = connection.getInputStream()) {
+        String export = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+
+        Assert.assertTrue(
+            export.contains("jaws_rule_records_dropped_total{rule=\"MetricsTestServedRule\"} 1\n"));
+        Assert.assertTrue(export.contains("# TYPE jaws_ready gauge\n"));
+      }
+    } finally {
+      server.stop(0);
+    }
+  }
+
+  private static int count(String text, String part) {
+    int count = 0;
+
+    for (int i = text.indexOf(part); i >= 0; i = text.indexOf(part, i + 1)) {
+      count++;
+    }
+
+    return count;
+  }
+}
@@ -0,0 +1,196 @@
+package org.jlab.jaws;
+
+import static io.confluent.kafka.serializers.AbstractKafkaSchemaSerDeConfig.SCHEMA_REGISTRY_URL_CONFIG;
+
+import io.confluent.kafka.streams.serdes.avro.SpecificAvroSerde;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import org.apache.avro.Schema;
+import org.apache.avro.SchemaNormalization;
+import org.apache.kafka.common.config.ConfigException;
+import org.apache.kafka.common.errors.SerializationException;
+import org.jlab.jaws.entity.*;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class MonologSerdeTest {
+  private static final Map<String, String> CONFIG =
+      Map.of(SCHEMA_REGISTRY_URL_CONFIG, "mock://testing");
+
+  @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+  private MonologSerde serde;
+  private IntermediateMonolog monolog1;
+
+  @Before
+  public void setup() {
+    serde = new MonologSerde();
+    serde.configure(CONFIG, false);
+
+    Alarm instance1 = new Alarm();
+    instance1.setAction("base");
+    instance1.setSource(new Source());
+    instance1.setLocation(Arrays.asList("NL"));
+
+    AlarmAction class1 = new AlarmAction();
+    class1.setLatchable(true);
+    class1.setSystem("CAMAC");
+    class1.setFilterable(true);
+    class1.setCorrectiveaction("fix it");
+    class1.setPriority(AlarmPriority.P3_MINOR);
+    class1.setRationale("because");
+
+    AlarmActivationUnion active1 = new AlarmActivationUnion();
+    active1.setUnion(new Activation());
+
+    AlarmOverrideSet overrides = new AlarmOverrideSet();
+    overrides.setLatched(new LatchedOverride());
+
+    monolog1 =
+        IntermediateMonolog.newBuilder()
+            .setRegistration(
+                EffectiveRegistration.newBuilder().setAction(class1).setAlarm(instance1).build())
+            .setNotification(
+                EffectiveNotification.newBuilder()
+                    .setActivation(active1)
+                    .setOverrides(overrides)
+                    .setState(AlarmState.ActiveLatched)
+                    .build())
+            .setTransitions(new ProcessorTransitions())
+            .build();
+  }
+
+  @Test
+  public void roundTrip() {
+    byte[] bytes = serde.serializer().serialize("intermediate", monolog1);
+
+    Assert.assertEquals(MonologSerde.VERSION, bytes[0]);
+    Assert.assertEquals(monolog1, serde.deserializer().deserialize("intermediate", bytes));
+  }
+
+  @Test
+  public void bufferReuse() {
+    IntermediateMonolog monolog2 = IntermediateMonolog.newBuilder(monolog1).build();
+    monolog2.getNotification().setState(AlarmState.Normal);
+
+    byte[] first = serde.serializer().serialize("intermediate", monolog1);
+    byte[] second = serde.serializer().serialize("intermediate", monolog2);
+
+    Assert.assertEquals(monolog1, serde.deserializer().deserialize("intermediate", first));
+    Assert.assertEquals(monolog2, serde.deserializer().deserialize("intermediate", second));
+  }
+
+  @Test
+  public void tombstone() {
+    Assert.assertNull(serde.serializer().serialize("intermediate", null));
+    Assert.assertNull(serde.deserializer().deserialize("intermediate", null));
+  }
+
+  @Test
+  public void smallerThanConfluent() {
+    SpecificAvroSerde<IntermediateMonolog> confluent = new SpecificAvroSerde<>();
+    confluent.configure(CONFIG, false);
+
+    byte[] compact = serde.serializer().serialize("intermediate", monolog1);
+    byte[] framed = confluent.serializer().serialize("intermediate", monolog1);
+
+    Assert.assertTrue(compact.length < framed.length);
+  }
+
+  @Test
+  public void readsConfluentFormat() {
+    SpecificAvroSerde<IntermediateMonolog> confluent = new SpecificAvroSerde<>();
+    confluent.configure(CONFIG, false);
+
+    byte[] bytes = confluent.serializer().serialize("intermediate", monolog1);
+
+    Assert.assertEquals(monolog1, serde.deserializer().deserialize("intermediate", bytes));
+  }
+
+  @Test(expected = SerializationException.class)
+  public void unknownVersion() {
+    byte[] bytes = serde.serializer().serialize("intermediate", monolog1);
+
+    bytes[0] = 99;
+
+    serde.deserializer().deserialize("intermediate", bytes);
+  }
+
+  @Test
+  public void writerSchemaFingerprint() {
+    byte[] bytes = serde.serializer().serialize("intermediate", monolog1);
+
+    Assert.assertEquals(
+        SchemaNormalization.parsingFingerprint64(IntermediateMonolog.getClassSchema()),
+        ByteBuffer.wrap(bytes, 1, Long.BYTES).getLong());
+    Assert.assertTrue(MonologSerde.isCurrent(bytes));
+  }
+
+  @Test
+  public void resolvesKnownWriterSchema() throws IOException {
+    Schema compiled = IntermediateMonolog.getClassSchema();
+
+    // A writer schema with a trailing field the compiled schema does not have
+    List<Schema.Field> fields = new ArrayList<>();
+
+    for (Schema.Field field : compiled.getFields()) {
+      fields.add(new Schema.Field(field, field.schema()));
+    }
+
+    fields.add(new Schema.Field("extra", Schema.create(Schema.Type.LONG), null, 0L));
+
+    Schema writer =
+        Schema.createRecord(
+            compiled.getName(), compiled.getDoc(), compiled.getNamespace(), false, fields);
+
+    byte[] current = serde.serializer().serialize("intermediate", monolog1);
+
+    // The zigzag encoding of the extra field value 1 follows the compiled schema encoding
+    byte[] bytes =
+        ByteBuffer.allocate(current.length + 1)
+            .put(MonologSerde.VERSION)
+            .putLong(SchemaNormalization.parsingFingerprint64(writer))
+            .put(current, MonologSerde.HEADER_LENGTH, current.length - MonologSerde.HEADER_LENGTH)
+            .put((byte) 2)
+            .array();
+
+    Assert.assertFalse(MonologSerde.isCurrent(bytes));
+
+    try {
+      serde.deserializer().deserialize("intermediate", bytes);
+      Assert.fail("Expected SerializationException");
+    } catch (SerializationException e) {
+      // Unknown until added
+    }
+
+    File file = folder.newFile("IntermediateMonolog.avsc");
+    Files.writeString(file.toPath(), writer.toString());
+
+    MonologSerde.addWriterSchemas(file.getPath());
+
+    Assert.assertEquals(monolog1, serde.deserializer().deserialize("intermediate", bytes));
+  }
+
+  @Test(expected = SerializationException.class)
+  public void unknownWriterSchema() {
+    byte[] bytes = serde.serializer().serialize("intermediate", monolog1);
+
+    bytes[1] = (byte) ~bytes[1];
+
+    serde.deserializer().deserialize("intermediate", bytes);
+  }
+
+  @Test(expected = ConfigException.class)
+  public void unreadableWriterSchema() {
+    MonologSerde.addWriterSchemas(folder.getRoot().toPath().resolve("missing.avsc").toString());
+  }
+}
@@ -0,0 +1,263 @@
+package org.jlab.jaws;
+
+import static io.confluent.kafka.serializers.AbstractKafkaSchemaSerDeConfig.SCHEMA_REGISTRY_URL_CONFIG;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Random;
+import org.apache.kafka.streams.*;
+import org.apache.kafka.streams.test.TestRecord;
+import org.jlab.jaws.entity.*;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class OverrideExpirationRuleTest {
+  private TopologyTestDriver testDriver;
+  private Instant start;
+  private TestInputTopic<AlarmOverrideKey, AlarmOverrideUnion> inputTopic;
+  private TestOutputTopic<AlarmOverrideKey, AlarmOverrideUnion> outputTopic;
+  private ShelvedOverride override1;
+  private ShelvedOverride override2;
+  private OnDelayedOverride ondelayed1;
+
+  @Before
+  public void setup() {
+    final OverrideExpirationRule rule =
+        new OverrideExpirationRule("alarm-overrides", "alarm-overrides");
+
+    final Properties props = rule.constructProperties();
+    props.put(SCHEMA_REGISTRY_URL_CONFIG, "mock://testing");
+    final Topology top = rule.constructTopology(props);
+    start = Instant.now();
+    testDriver = new TopologyTestDriver(top, props, start);
+
+    // setup test topics
+    inputTopic =
+        testDriver.createInputTopic(
+            rule.inputTopic,
+            OverrideExpirationRule.INPUT_KEY_SERDE.serializer(),
+            OverrideExpirationRule.INPUT_VALUE_SERDE.serializer());
+    outputTopic =
+        testDriver.createOutputTopic(
+            rule.outputTopic,
+            OverrideExpirationRule.OUTPUT_KEY_SERDE.deserializer(),
+            OverrideExpirationRule.OUTPUT_VALUE_SERDE.deserializer());
+
+    override1 = new ShelvedOverride();
+    override1.setReason(ShelvedReason.Chattering_Fleeting_Alarm);
+    override1.setExpiration(start.plusSeconds(5).getEpochSecond() * 1000);
+
+    override2 = new ShelvedOverride();
+    override2.setReason(ShelvedReason.Chattering_Fleeting_Alarm);
+    override2.setExpiration(start.plusSeconds(5).getEpochSecond() * 1000);
+
+    ondelayed1 = new OnDelayedOverride();
+    ondelayed1.setExpiration(start.plusSeconds(5).getEpochSecond() * 1000);
+  }
+
+  @After
+  public void tearDown() {
+    testDriver.close();
+  }
+
+  @Test
+  public void tombstoneMsg() throws InterruptedException {
+    List<KeyValue<AlarmOverrideKey, AlarmOverrideUnion>> keyValues = new ArrayList<>();
+    keyValues.add(
+        KeyValue.pair(
+            new AlarmOverrideKey("alarm1", OverriddenAlarmType.Shelved),
+            new AlarmOverrideUnion(override1)));
+    keyValues.add(
+        KeyValue.pair(
+            new AlarmOverrideKey("alarm1", OverriddenAlarmType.Shelved),
+            new AlarmOverrideUnion(override2)));
+    inputTopic.pipeKeyValueList(keyValues, Instant.now(), Duration.ofSeconds(5));
+    testDriver.advanceWallClockTime(Duration.ofSeconds(5));
+    KeyValue<AlarmOverrideKey, AlarmOverrideUnion> result =
+        outputTopic.readKeyValuesToList().get(0);
+    Assert.assertNull(result.value);
+  }
+
+  @Test
+  public void notYetExpired() {
+    inputTopic.pipeInput(
+        new AlarmOverrideKey("alarm1", OverriddenAlarmType.Shelved),
+        new AlarmOverrideUnion(override1));
+    testDriver.advanceWallClockTime(Duration.ofSeconds(10));
+    inputTopic.pipeInput(
+        new AlarmOverrideKey("alarm2", OverriddenAlarmType.Shelved),
+        new AlarmOverrideUnion(override2));
+    KeyValue<AlarmOverrideKey, AlarmOverrideUnion> result =
+        outputTopic.readKeyValuesToList().get(0);
+    Assert.assertEquals("alarm1", result.key.getName());
+    Assert.assertNull(result.value);
+  }
+
+  @Test
+  public void expired() {
+    inputTopic.pipeInput(
+        new AlarmOverrideKey("alarm1", OverriddenAlarmType.Shelved),
+        new AlarmOverrideUnion(override1));
+    testDriver.advanceWallClockTime(Duration.ofSeconds(10));
+    KeyValue<AlarmOverrideKey, AlarmOverrideUnion> result = outputTopic.readKeyValue();
+    Assert.assertEquals("alarm1", result.key.getName());
+    Assert.assertNull(result.value);
+  }
+
+  @Test
+  public void removedBeforeExpiration() {
+    inputTopic.pipeInput(
+        new AlarmOverrideKey("alarm1", OverriddenAlarmType.Shelved),
+        new AlarmOverrideUnion(override1));
+    inputTopic.pipeInput(new AlarmOverrideKey("alarm1", OverriddenAlarmType.Shelved), null);
+    testDriver.advanceWallClockTime(Duration.ofSeconds(10));
+    Assert.assertTrue(outputTopic.isEmpty());
+  }
+
+  @Test
+  public void onlyDueExpire() {
+    override2.setExpiration(start.plusSeconds(60).getEpochSecond() * 1000);
+    inputTopic.pipeInput(
+        new AlarmOverrideKey("alarm1", OverriddenAlarmType.Shelved),
+        new AlarmOverrideUnion(override1));
+    inputTopic.pipeInput(
+        new AlarmOverrideKey("alarm2", OverriddenAlarmType.Shelved),
+        new AlarmOverrideUnion(override2));
+    testDriver.advanceWallClockTime(Duration.ofSeconds(10));
+    List<KeyValue<AlarmOverrideKey, AlarmOverrideUnion>> results =
+        outputTopic.readKeyValuesToList();
+    Assert.assertEquals(1, results.size());
+    Assert.assertEquals("alarm1", results.get(0).key.getName());
+  }
+
+  @Test
+  public void subSecond() {
+    ondelayed1.setExpiration(start.toEpochMilli() + 1900);
+    inputTopic.pipeInput(
+        new AlarmOverrideKey("alarm1", OverriddenAlarmType.OnDelayed),
+        new AlarmOverrideUnion(ondelayed1));
+    testDriver.advanceWallClockTime(Duration.ofMillis(1800));
+    Assert.assertTrue(outputTopic.isEmpty());
+    testDriver.advanceWallClockTime(Duration.ofMillis(100));
+    TestRecord<AlarmOverrideKey, AlarmOverrideUnion> result = outputTopic.readRecord();
+    Assert.assertEquals("alarm1", result.key().getName());
+    Assert.assertEquals(start.toEpochMilli() + 1900, result.timestamp().longValue());
+  }
+
+  @Test
+  public void firingErrorUnderLoad() {
+    final int count = 10000;
+    final long maxStep = 20;
+    final long resolution = OverrideExpirationRule.PUNCTUATION_INTERVAL.toMillis();
+    final Random random = new Random(1);
+    final Map<String, Long> expirations = new HashMap<>();
+
+    long now = start.toEpochMilli();
+
+    // Sub-second to few second on-delays arrive while the wall clock advances in uneven steps
+    for (int i = 0; i < count; i++) {
+      String name = "alarm" + i;
+      long expiration = now + random.nextInt(3000);
+
+      expirations.put(name, expiration);
+
+      inputTopic.pipeInput(
+          new AlarmOverrideKey(name, OverriddenAlarmType.OnDelayed),
+          new AlarmOverrideUnion(new OnDelayedOverride(expiration)));
+
+      if (i % 10 == 0) {
+        long step = 1 + random.nextInt((int) maxStep);
+        testDriver.advanceWallClockTime(Duration.ofMillis(step));
+        now = now + step;
+      }
+    }
+
+    for (long elapsed = 0; elapsed < 3000 + 2 * resolution; elapsed = elapsed + maxStep) {
+      testDriver.advanceWallClockTime(Duration.ofMillis(maxStep));
+    }
+
+    List<TestRecord<AlarmOverrideKey, AlarmOverrideUnion>> results =
+        outputTopic.readRecordsToList();
+
+    Assert.assertEquals(count, results.size());
+
+    long maxError = 0;
+    long totalError = 0;
+
+    for (TestRecord<AlarmOverrideKey, AlarmOverrideUnion> result : results) {
+      long error = result.timestamp() - expirations.get(result.key().getName());
+
+      Assert.assertTrue("Expired early by " + -error + " ms", error >= 0);
+
+      maxError = Math.max(maxError, error);
+      totalError = totalError + error;
+    }
+
+    System.err.println(
+        "Firing error (ms): max " + maxError + ", mean " + (double) totalError / count);
+
+    Assert.assertTrue("Expired late by " + maxError + " ms", maxError <= resolution + maxStep);
+  }
+
+  @Test
+  public void typesExpireIndependently() {
+    ondelayed1.setExpiration(start.plusSeconds(60).getEpochSecond() * 1000);
+    inputTopic.pipeInput(
+        new AlarmOverrideKey("alarm1", OverriddenAlarmType.Shelved),
+        new AlarmOverrideUnion(override1));
+    inputTopic.pipeInput(
+        new AlarmOverrideKey("alarm1", OverriddenAlarmType.OnDelayed),
+        new AlarmOverrideUnion(ondelayed1));
+    testDriver.advanceWallClockTime(Duration.ofSeconds(10));
+    List<KeyValue<AlarmOverrideKey, AlarmOverrideUnion>> results =
+        outputTopic.readKeyValuesToList();
+    Assert.assertEquals(1, results.size());
+    Assert.assertEquals(
+        new AlarmOverrideKey("alarm1", OverriddenAlarmType.Shelved), results.get(0).key);
+    testDriver.advanceWallClockTime(Duration.ofSeconds(60));
+    results = outputTopic.readKeyValuesToList();
+    Assert.assertEquals(1, results.size());
+    Assert.assertEquals(
+        new AlarmOverrideKey("alarm1", OverriddenAlarmType.OnDelayed), results.get(0).key);
+  }
+
+  @Test
+  public void offDelayed() {
+    OffDelayedOverride override = new OffDelayedOverride();
+    override.setExpiration(start.plusSeconds(5).getEpochSecond() * 1000);
+    inputTopic.pipeInput(
+        new AlarmOverrideKey("alarm1", OverriddenAlarmType.OffDelayed),
+        new AlarmOverrideUnion(override));
+    testDriver.advanceWallClockTime(Duration.ofSeconds(10));
+    KeyValue<AlarmOverrideKey, AlarmOverrideUnion> result = outputTopic.readKeyValue();
+    Assert.assertEquals(OverriddenAlarmType.OffDelayed, result.key.getType());
+    Assert.assertNull(result.value);
+  }
+
+  @Test
+  public void untimedIgnored() {
+    inputTopic.pipeInput(
+        new AlarmOverrideKey("alarm1", OverriddenAlarmType.Latched),
+        new AlarmOverrideUnion(new LatchedOverride()));
+    testDriver.advanceWallClockTime(Duration.ofSeconds(10));
+    Assert.assertTrue(outputTopic.isEmpty());
+  }
+
+  @Test
+  public void alarmNameWithColon() {
+    inputTopic.pipeInput(
+        new AlarmOverrideKey("IOC:alarm1", OverriddenAlarmType.Shelved),
+        new AlarmOverrideUnion(override1));
+    testDriver.advanceWallClockTime(Duration.ofSeconds(10));
+    KeyValue<AlarmOverrideKey, AlarmOverrideUnion> result = outputTopic.readKeyValue();
+    Assert.assertEquals(
+        new AlarmOverrideKey("IOC:alarm1", OverriddenAlarmType.Shelved), result.key);
+  }
+}
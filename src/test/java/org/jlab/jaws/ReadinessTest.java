@@ -0,0 +1,92 @@
+package org.jlab.jaws;
+
+import java.nio.file.Files;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.streams.KafkaStreams;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ReadinessTest {
+
+  @Test
+  public void heldUntilRestored() {
+    Readiness first = new Readiness("jaws-effective-processor-latch");
+    Readiness second = new Readiness("jaws-effective-processor-ondelay");
+
+    TopicPartition partition = new TopicPartition("changelog", 0);
+
+    try {
+      first.onChange(KafkaStreams.State.REBALANCING, KafkaStreams.State.CREATED);
+      second.onChange(KafkaStreams.State.REBALANCING, KafkaStreams.State.CREATED);
+
+      first.onRestoreStart(partition, TransitionFlags.STORE_NAME, 0, 100);
+      first.onBatchRestored(partition, TransitionFlags.STORE_NAME, 50, 50);
+
+      second.onChange(KafkaStreams.State.RUNNING, KafkaStreams.State.REBALANCING);
+
+      Assert.assertFalse(Readiness.isReady());
+      Assert.assertFalse(Files.exists(Readiness.readyFile()));
+
+      first.onChange(KafkaStreams.State.RUNNING, KafkaStreams.State.REBALANCING);
+
+      Assert.assertFalse(Readiness.isReady());
+
+      first.onRestoreEnd(partition, TransitionFlags.STORE_NAME, 100);
+
+      Assert.assertTrue(Readiness.isReady());
+      Assert.assertTrue(Files.exists(Readiness.readyFile()));
+
+      second.onChange(KafkaStreams.State.REBALANCING, KafkaStreams.State.RUNNING);
+
+      Assert.assertFalse(Readiness.isReady());
+      Assert.assertFalse(Files.exists(Readiness.readyFile()));
+    } finally {
+      first.close();
+      second.close();
+    }
+
+    Assert.assertFalse(Readiness.isReady());
+  }
+
+  @Test
+  public void suspendedRestoreNotHeld() {
+    Readiness readiness = new Readiness("jaws-effective-processor-activation");
+
+    TopicPartition partition = new TopicPartition("changelog", 1);
+
+    try {
+      readiness.onRestoreStart(partition, ActivationRule.ACTIVE_STORE, 10, 20);
+      readiness.onChange(KafkaStreams.State.RUNNING, KafkaStreams.State.REBALANCING);
+
+      Assert.assertFalse(Readiness.isReady());
+
+      readiness.onRestoreSuspended(partition, ActivationRule.ACTIVE_STORE, 5);
+
+      Assert.assertTrue(Readiness.isReady());
+    } finally {
+      readiness.close();
+    }
+  }
+
+  @Test
+  public void failedHeldWhileRunning() {
+    Readiness readiness = new Readiness("jaws-effective-processor-registration");
+
+    try {
+      readiness.onChange(KafkaStreams.State.RUNNING, KafkaStreams.State.REBALANCING);
+
+      Assert.assertTrue(Readiness.isReady());
+
+      readiness.fail();
+
+      Assert.assertFalse(Readiness.isReady());
+
+      // A late state change of the stopped streams does not make the rule ready again
+      readiness.onChange(KafkaStreams.State.RUNNING, KafkaStreams.State.REBALANCING);
+
+      Assert.assertFalse(Readiness.isReady());
+    } finally {
+      readiness.close();
+    }
+  }
+}
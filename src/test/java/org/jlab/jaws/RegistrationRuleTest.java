@@ -5,7 +5,9 @@ import static io.confluent.kafka.serializers.AbstractKafkaSchemaSerDeConfig.SCHE
 import java.util.Arrays;
 import java.util.List;
 import java.util.Properties;
+import org.apache.kafka.common.header.Header;
 import org.apache.kafka.streams.*;
+import org.apache.kafka.streams.test.TestRecord;
 import org.jlab.jaws.entity.*;
 import org.junit.After;
 import org.junit.Assert;
@@ -153,4 +155,24 @@ public class RegistrationRuleTest {
     Assert.assertEquals("alarm1", result2.key);
     Assert.assertNull(result2.value);
   }
+
+  @Test
+  public void effectiveHeaders() {
+    inputTopicClasses.pipeInput("base", class1);
+    inputTopicRegistered.pipeInput("alarm1", instance1);
+
+    TestRecord<String, EffectiveRegistration> effective = outputTopicEffective.readRecord();
+
+    // Not added a second time when the intermediate headers are enabled, as by default
+    int producers = 0;
+
+    for (Header header : effective.headers().headers("producer")) {
+      producers++;
+    }
+
+    Assert.assertEquals(1, producers);
+    Assert.assertNotNull(effective.headers().lastHeader("user"));
+    Assert.assertNotNull(effective.headers().lastHeader("host"));
+    Assert.assertNotNull(outputTopicMonolog.readRecord().headers().lastHeader("producer"));
+  }
 }
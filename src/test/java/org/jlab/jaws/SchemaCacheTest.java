@@ -0,0 +1,101 @@
+package org.jlab.jaws;
+
+import static io.confluent.kafka.serializers.AbstractKafkaSchemaSerDeConfig.SCHEMA_REGISTRY_URL_CONFIG;
+
+import io.confluent.kafka.schemaregistry.testutil.MockSchemaRegistry;
+import java.io.File;
+import java.util.Map;
+import org.apache.avro.Schema;
+import org.jlab.jaws.entity.AlarmOverrideKey;
+import org.jlab.jaws.entity.AlarmOverrideUnion;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class SchemaCacheTest {
+  private static final String SCOPE = "schema-cache-test";
+  private static final String URL = "mock://" + SCOPE;
+  private static final Map<String, String> CONFIG = Map.of(SCHEMA_REGISTRY_URL_CONFIG, URL);
+
+  private static final Schema KEY_SCHEMA = AlarmOverrideKey.getClassSchema();
+  private static final long KEY_FINGERPRINT = SchemaCache.fingerprint(KEY_SCHEMA);
+
+  @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+  private File file;
+
+  @Before
+  public void setup() {
+    file = new File(folder.getRoot(), SchemaCache.FILE_NAME);
+  }
+
+  @After
+  public void tearDown() {
+    MockSchemaRegistry.dropScope(SCOPE);
+  }
+
+  @Test
+  public void registerAndResolve() throws Exception {
+    SchemaCache cache = new SchemaCache(URL, CONFIG, file);
+
+    int id = cache.id("overrides-key", KEY_SCHEMA, KEY_FINGERPRINT);
+
+    Assert.assertEquals(id, cache.id("overrides-key", KEY_SCHEMA, KEY_FINGERPRINT));
+    Assert.assertEquals(KEY_SCHEMA, cache.schema(id));
+  }
+
+  @Test
+  public void resolvesAfterRestartWithoutRegistry() throws Exception {
+    SchemaCache cache = new SchemaCache(URL, CONFIG, file);
+
+    Schema valueSchema = AlarmOverrideUnion.getClassSchema();
+
+    cache.id("overrides-value", valueSchema, SchemaCache.fingerprint(valueSchema));
+    int id = cache.id("overrides-key", KEY_SCHEMA, KEY_FINGERPRINT);
+
+    Assert.assertTrue(file.exists());
+
+    // An empty registry would assign the key schema the first id, so only the file has this one
+    MockSchemaRegistry.dropScope(SCOPE);
+
+    SchemaCache restarted = new SchemaCache(URL, CONFIG, file);
+
+    Assert.assertEquals(id, restarted.id("overrides-key", KEY_SCHEMA, KEY_FINGERPRINT));
+    Assert.assertEquals(KEY_SCHEMA, restarted.schema(id));
+  }
+
+  @Test
+  public void subjectsCachedSeparately() throws Exception {
+    SchemaCache cache = new SchemaCache(URL, CONFIG, file);
+
+    Schema valueSchema = AlarmOverrideUnion.getClassSchema();
+
+    int keyId = cache.id("overrides-key", KEY_SCHEMA, KEY_FINGERPRINT);
+    int valueId = cache.id("overrides-value", valueSchema, SchemaCache.fingerprint(valueSchema));
+
+    Assert.assertNotEquals(keyId, valueId);
+    Assert.assertEquals(valueSchema, new SchemaCache(URL, CONFIG, file).schema(valueId));
+  }
+
+  @Test
+  public void otherRegistryIgnored() throws Exception {
+    int id = new SchemaCache(URL, CONFIG, file).id("overrides-key", KEY_SCHEMA, KEY_FINGERPRINT);
+
+    String otherUrl = "mock://schema-cache-test-other";
+
+    SchemaCache other =
+        new SchemaCache(otherUrl, Map.of(SCHEMA_REGISTRY_URL_CONFIG, otherUrl), file);
+
+    try {
+      other.schema(id);
+      Assert.fail("Expected the other registry to be asked, and not know the id");
+    } catch (Exception e) {
+      // expected
+    } finally {
+      MockSchemaRegistry.dropScope("schema-cache-test-other");
+    }
+  }
+}
@@ -0,0 +1,84 @@
+package org.jlab.jaws;
+
+import static io.confluent.kafka.serializers.AbstractKafkaSchemaSerDeConfig.SCHEMA_REGISTRY_URL_CONFIG;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+import org.apache.kafka.streams.*;
+import org.jlab.jaws.entity.*;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class SharedRuntimeRuleTest {
+  private TopologyTestDriver testDriver;
+  private TestInputTopic<AlarmOverrideKey, AlarmOverrideUnion> inputTopicOverridden;
+  private TestOutputTopic<String, IntermediateMonolog> outputTopic;
+  private ShelvedOverride override1;
+
+  @Before
+  public void setup() {
+    final ActivationRule activation =
+        new ActivationRule(
+            "effective-registrations", "active-alarms", "overridden-alarms", "monolog");
+    final OverrideExpirationRule expiration =
+        new OverrideExpirationRule("overridden-alarms", "overridden-alarms");
+
+    final SharedRuntimeRule rule = new SharedRuntimeRule(Arrays.asList(activation, expiration));
+
+    final Properties props = rule.constructProperties();
+    props.put(SCHEMA_REGISTRY_URL_CONFIG, "mock://testing");
+    final Topology top = rule.constructTopology(props);
+
+    // System.err.println(top.describe());
+
+    testDriver = new TopologyTestDriver(top, props);
+
+    // setup test topics
+    inputTopicOverridden =
+        testDriver.createInputTopic(
+            activation.inputTopicOverridden,
+            ActivationRule.OVERRIDE_KEY_SERDE.serializer(),
+            ActivationRule.OVERRIDE_VALUE_SERDE.serializer());
+    outputTopic =
+        testDriver.createOutputTopic(
+            activation.outputTopic,
+            ActivationRule.MONOLOG_KEY_SERDE.deserializer(),
+            ActivationRule.MONOLOG_VALUE_SERDE.deserializer());
+
+    override1 = new ShelvedOverride();
+    override1.setReason(ShelvedReason.Chattering_Fleeting_Alarm);
+    override1.setExpiration(Instant.now().plusSeconds(5).getEpochSecond() * 1000);
+  }
+
+  @After
+  public void tearDown() {
+    testDriver.close();
+  }
+
+  @Test
+  public void sharedOverridesSource() {
+    inputTopicOverridden.pipeInput(
+        new AlarmOverrideKey("alarm1", OverriddenAlarmType.Shelved),
+        new AlarmOverrideUnion(override1));
+
+    List<KeyValue<String, IntermediateMonolog>> results = outputTopic.readKeyValuesToList();
+
+    Assert.assertEquals(1, results.size());
+    Assert.assertEquals(
+        override1, results.get(0).value.getNotification().getOverrides().getShelved());
+
+    // The expiration tombstone is fed back into the activation rule of the same application
+    testDriver.advanceWallClockTime(Duration.ofSeconds(10));
+
+    results = outputTopic.readKeyValuesToList();
+
+    Assert.assertFalse(results.isEmpty());
+    Assert.assertNull(
+        results.get(results.size() - 1).value.getNotification().getOverrides().getShelved());
+  }
+}
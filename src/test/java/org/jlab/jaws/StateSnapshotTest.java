@@ -0,0 +1,118 @@
+package org.jlab.jaws;
+
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class StateSnapshotTest {
+  @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+  private static final String PROCESS_METADATA = "kafka-streams-process-metadata";
+
+  private Path stateDir;
+  private Path file;
+
+  @Before
+  public void setup() throws Exception {
+    stateDir = folder.newFolder("state", "jaws-effective-processor-latch").toPath();
+    file = StateSnapshot.file(folder.newFolder("snapshots").toPath(), "latch");
+
+    Path task = Files.createDirectories(stateDir.resolve("0_0"));
+    Path store = Files.createDirectories(task.resolve("rocksdb").resolve("TransitionFlagStore"));
+
+    Files.write(task.resolve(".checkpoint"), "0\n1\nchangelog 0 42\n".getBytes());
+    Files.write(task.resolve(".lock"), new byte[0]);
+    Files.write(stateDir.resolve(PROCESS_METADATA), "processId".getBytes());
+    Files.write(store.resolve("000005.sst"), "flags".getBytes());
+    Files.write(store.resolve("LOCK"), new byte[0]);
+  }
+
+  @Test
+  public void restoresFreshState() throws Exception {
+    Assert.assertTrue(StateSnapshot.write(stateDir, file));
+
+    Path fresh = folder.getRoot().toPath().resolve("fresh");
+
+    Assert.assertTrue(StateSnapshot.restore(file, fresh));
+
+    Assert.assertEquals(
+        "0\n1\nchangelog 0 42\n",
+        new String(Files.readAllBytes(fresh.resolve("0_0/.checkpoint")), StandardCharsets.UTF_8));
+    Assert.assertEquals(
+        "flags",
+        new String(
+            Files.readAllBytes(fresh.resolve("0_0/rocksdb/TransitionFlagStore/000005.sst")),
+            StandardCharsets.UTF_8));
+    Assert.assertFalse(Files.exists(fresh.resolve("0_0/.lock")));
+    Assert.assertFalse(Files.exists(fresh.resolve("0_0/rocksdb/TransitionFlagStore/LOCK")));
+  }
+
+  @Test
+  public void existingStateKept() throws Exception {
+    Assert.assertTrue(StateSnapshot.write(stateDir, file));
+
+    Assert.assertFalse(StateSnapshot.restore(file, stateDir));
+  }
+
+  @Test
+  public void corruptSnapshotIgnored() throws Exception {
+    Assert.assertTrue(StateSnapshot.write(stateDir, file));
+
+    byte[] bytes = Files.readAllBytes(file);
+    bytes[bytes.length / 2] ^= 1;
+    Files.write(file, bytes);
+
+    Path fresh = folder.getRoot().toPath().resolve("fresh");
+
+    Assert.assertFalse(StateSnapshot.restore(file, fresh));
+    Assert.assertFalse(Files.exists(fresh));
+  }
+
+  @Test
+  public void missingSnapshotIgnored() {
+    Assert.assertFalse(StateSnapshot.restore(file, folder.getRoot().toPath().resolve("fresh")));
+  }
+
+  @Test
+  public void processMetadataExcluded() throws Exception {
+    Assert.assertTrue(StateSnapshot.write(stateDir, file));
+
+    try (ZipFile zip = new ZipFile(file.toFile())) {
+      Assert.assertNull(zip.getEntry(PROCESS_METADATA));
+      Assert.assertNotNull(zip.getEntry("0_0/.checkpoint"));
+    }
+
+    // A snapshot written before the metadata was excluded
+    try (ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(file))) {
+      out.putNextEntry(new ZipEntry(PROCESS_METADATA));
+      out.write("processId".getBytes());
+      out.closeEntry();
+      out.putNextEntry(new ZipEntry("0_0/.checkpoint"));
+      out.write("0\n0\n".getBytes());
+      out.closeEntry();
+    }
+
+    byte[] sha256 = MessageDigest.getInstance("SHA-256").digest(Files.readAllBytes(file));
+
+    Files.write(
+        Paths.get(file + StateSnapshot.CHECKSUM_SUFFIX),
+        String.format("%064x", new BigInteger(1, sha256)).getBytes(StandardCharsets.US_ASCII));
+
+    Path fresh = folder.getRoot().toPath().resolve("fresh");
+
+    Assert.assertTrue(StateSnapshot.restore(file, fresh));
+    Assert.assertTrue(Files.exists(fresh.resolve("0_0/.checkpoint")));
+    Assert.assertFalse(Files.exists(fresh.resolve(PROCESS_METADATA)));
+  }
+}
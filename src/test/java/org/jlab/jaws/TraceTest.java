@@ -0,0 +1,87 @@
+package org.jlab.jaws;
+
+import java.nio.charset.StandardCharsets;
+import org.apache.kafka.common.header.Header;
+import org.apache.kafka.streams.processor.api.Record;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TraceTest {
+
+  @Test
+  public void startsTrace() {
+    Trace trace = Metrics.trace("trace-test-start");
+
+    Record<String, String> input = new Record<>("alarm1", "value", 1000);
+    Record<String, String> output = new Record<>("alarm1", "value", 2000);
+
+    trace.hop(input, output);
+
+    Assert.assertEquals("1000", value(output.headers().lastHeader(Trace.ORIGIN)));
+    Assert.assertTrue(
+        value(output.headers().lastHeader(Trace.HOP)).startsWith("trace-test-start@"));
+    Assert.assertEquals(1, trace.sinceOrigin.interval().getTotalCount());
+  }
+
+  @Test
+  public void appendsHop() {
+    Trace first = Metrics.trace("trace-test-first");
+    Trace second = Metrics.trace("trace-test-second");
+
+    Record<String, String> input = new Record<>("alarm1", "value", 1000);
+    Record<String, String> middle = new Record<>("alarm1", "value", 2000);
+    Record<String, String> output = new Record<>("alarm1", "value", 3000);
+
+    first.hop(input, middle);
+    second.hop(middle, output);
+
+    Header[] hops = output.headers().toArray();
+
+    Assert.assertEquals(3, hops.length);
+    Assert.assertEquals(Trace.ORIGIN, hops[0].key());
+    Assert.assertEquals("1000", value(hops[0]));
+    Assert.assertTrue(value(hops[1]).startsWith("trace-test-first@"));
+    Assert.assertTrue(value(hops[2]).startsWith("trace-test-second@"));
+  }
+
+  @Test
+  public void sharedHeaders() {
+    Trace trace = Metrics.trace("trace-test-shared");
+
+    Record<String, String> input = new Record<>("alarm1", "value", 1000);
+
+    trace.hop(input, input);
+    trace.hop(input, input);
+
+    Assert.assertEquals(1, count(input.headers().headers(Trace.ORIGIN)));
+    Assert.assertEquals(2, count(input.headers().headers(Trace.HOP)));
+  }
+
+  @Test
+  public void exported() {
+    Record<String, String> record = new Record<>("alarm1", "value", 0);
+
+    Metrics.trace("trace-test-export").hop(record, record);
+
+    String export = Metrics.scrape();
+
+    Assert.assertTrue(
+        export.contains("jaws_trace_latency_seconds_count{stage=\"trace-test-export\"} 1\n"));
+    Assert.assertTrue(
+        export.contains("jaws_trace_hop_latency_seconds_count{stage=\"trace-test-export\"} 1\n"));
+  }
+
+  private static String value(Header header) {
+    return new String(header.value(), StandardCharsets.UTF_8);
+  }
+
+  private static int count(Iterable<Header> headers) {
+    int count = 0;
+
+    for (Header ignored : headers) {
+      count++;
+    }
+
+    return count;
+  }
+}
@@ -0,0 +1,88 @@
+package org.jlab.jaws;
+
+import org.apache.kafka.common.serialization.Serdes;
+import org.apache.kafka.streams.processor.api.MockProcessorContext;
+import org.apache.kafka.streams.state.KeyValueStore;
+import org.apache.kafka.streams.state.Stores;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TransitionFlagsTest {
+  private KeyValueStore<String, Byte> store;
+
+  @Before
+  public void setup() {
+    store =
+        Stores.keyValueStoreBuilder(
+                Stores.inMemoryKeyValueStore(TransitionFlags.STORE_NAME),
+                Serdes.String(),
+                TransitionFlags.SERDE)
+            .withLoggingDisabled()
+            .build();
+
+    store.init(new MockProcessorContext<>().getStateStoreContext(), store);
+  }
+
+  @After
+  public void tearDown() {
+    store.close();
+  }
+
+  @Test
+  public void flagsAreIndependent() {
+    byte flags = TransitionFlags.get(store, "alarm1");
+
+    Assert.assertEquals(0, flags);
+
+    TransitionFlags.update(store, "alarm1", flags, TransitionFlags.LATCHING, true);
+
+    flags = TransitionFlags.get(store, "alarm1");
+
+    TransitionFlags.update(store, "alarm1", flags, TransitionFlags.UNSHELVING, true);
+
+    flags = TransitionFlags.get(store, "alarm1");
+
+    Assert.assertTrue(TransitionFlags.isSet(flags, TransitionFlags.LATCHING));
+    Assert.assertFalse(TransitionFlags.isSet(flags, TransitionFlags.ONDELAYING));
+    Assert.assertTrue(TransitionFlags.isSet(flags, TransitionFlags.UNSHELVING));
+    Assert.assertFalse(TransitionFlags.isSet(flags, TransitionFlags.MASKING));
+
+    TransitionFlags.update(store, "alarm1", flags, TransitionFlags.LATCHING, false);
+
+    flags = TransitionFlags.get(store, "alarm1");
+
+    Assert.assertFalse(TransitionFlags.isSet(flags, TransitionFlags.LATCHING));
+    Assert.assertTrue(TransitionFlags.isSet(flags, TransitionFlags.UNSHELVING));
+  }
+
+  @Test
+  public void noFlagsNoEntry() {
+    TransitionFlags.update(store, "alarm1", (byte) 0, TransitionFlags.MASKING, false);
+
+    Assert.assertEquals(0, store.approximateNumEntries());
+
+    TransitionFlags.update(store, "alarm1", (byte) 0, TransitionFlags.MASKING, true);
+
+    Assert.assertEquals(1, store.approximateNumEntries());
+
+    TransitionFlags.update(
+        store, "alarm1", TransitionFlags.get(store, "alarm1"), TransitionFlags.MASKING, false);
+
+    Assert.assertNull(store.get("alarm1"));
+    Assert.assertEquals(0, store.approximateNumEntries());
+  }
+
+  @Test
+  public void serializedAsOneByte() {
+    byte[] bytes =
+        TransitionFlags.SERDE.serializer().serialize("topic", TransitionFlags.ONDELAYING);
+
+    Assert.assertArrayEquals(new byte[] {TransitionFlags.ONDELAYING}, bytes);
+    Assert.assertEquals(
+        Byte.valueOf(TransitionFlags.ONDELAYING),
+        TransitionFlags.SERDE.deserializer().deserialize("topic", bytes));
+    Assert.assertNull(TransitionFlags.SERDE.serializer().serialize("topic", (byte) 0));
+  }
+}
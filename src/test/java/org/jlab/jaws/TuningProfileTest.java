@@ -0,0 +1,36 @@
+package org.jlab.jaws;
+
+import java.util.Properties;
+import org.apache.kafka.streams.StreamsConfig;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TuningProfileTest {
+
+  @Test
+  public void profilesSetSameKeys() {
+    for (TuningProfile profile : TuningProfile.values()) {
+      Assert.assertEquals(TuningProfile.DEFAULT.settings().keySet(), profile.settings().keySet());
+    }
+  }
+
+  @Test
+  public void profileReplacesAnother() {
+    Properties props = new Properties();
+
+    TuningProfile.HIGH_THROUGHPUT.apply(props);
+    TuningProfile.LOW_LATENCY.apply(props);
+
+    Assert.assertEquals(0L, props.get(StreamsConfig.STATESTORE_CACHE_MAX_BYTES_CONFIG));
+    Assert.assertEquals("none", props.get(StreamsConfig.producerPrefix("compression.type")));
+  }
+
+  @Test
+  public void rulePropertiesDisableCaching() {
+    Properties props =
+        new LatchRule("intermediate-activation", "intermediate-latch", "alarm-overrides")
+            .constructProperties();
+
+    Assert.assertEquals(0L, props.get(StreamsConfig.STATESTORE_CACHE_MAX_BYTES_CONFIG));
+  }
+}